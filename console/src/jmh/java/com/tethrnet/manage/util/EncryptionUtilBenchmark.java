@@ -0,0 +1,86 @@
+package com.tethrnet.manage.util;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares EncryptionUtil with the old path, which created and initialized an AES/ECB cipher on every
+ * call. The value is the size of an encrypted session id or auth token.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EncryptionUtilBenchmark {
+
+    private static final byte[] key = new byte[]{'d', '3', '2', 't', 'p', 'd', 'M', 'o', 'I', '8', 'x', 'z', 'a', 'P', 'o', 'd'};
+
+    private static final String value = "4d8e1c2a-0c7b-4e0b-9f3a-7a1f2f9e6b11";
+
+    private String legacyEncrypted;
+    private String encrypted;
+
+    @Setup
+    public void setup() throws Exception {
+        legacyEncrypted = oldEncrypt(value);
+        encrypted = EncryptionUtil.encrypt(value);
+    }
+
+    @Benchmark
+    public String oldEncryptDecrypt() throws Exception {
+        return oldDecrypt(oldEncrypt(value));
+    }
+
+    @Benchmark
+    public String encryptDecrypt() {
+        return EncryptionUtil.decrypt(EncryptionUtil.encrypt(value));
+    }
+
+    @Benchmark
+    public String oldDecrypt() throws Exception {
+        return oldDecrypt(legacyEncrypted);
+    }
+
+    @Benchmark
+    public String decrypt() {
+        return EncryptionUtil.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public String decryptLegacy() {
+        return EncryptionUtil.decrypt(legacyEncrypted);
+    }
+
+    /**
+     * encrypt as EncryptionUtil did before ciphers were reused
+     */
+    private static String oldEncrypt(String str) throws Exception {
+        Cipher c = Cipher.getInstance("AES");
+        c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        return new String(Base64.encodeBase64(c.doFinal(str.getBytes())));
+    }
+
+    /**
+     * decrypt as EncryptionUtil did before ciphers were reused
+     */
+    private static String oldDecrypt(String str) throws Exception {
+        Cipher c = Cipher.getInstance("AES");
+        c.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"));
+        return new String(c.doFinal(Base64.decodeBase64(str.getBytes())));
+    }
+}
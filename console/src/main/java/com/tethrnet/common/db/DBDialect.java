@@ -0,0 +1,95 @@
+package com.tethrnet.common.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Databases the console can run on. DAO SQL is kept to what H2 and PostgreSQL both accept, so only
+ * the DDL in the migrations has to be translated.
+ */
+public enum DBDialect {
+
+    H2("org.h2.Driver"),
+    POSTGRESQL("org.postgresql.Driver");
+
+    private final String driverClass;
+
+    DBDialect(String driverClass) {
+        this.driverClass = driverClass;
+    }
+
+    /**
+     * returns the dialect for a JDBC URL, H2 embedded and H2 server URLs are both H2
+     *
+     * @param url JDBC URL
+     * @return dialect
+     */
+    public static DBDialect forUrl(String url) {
+        if (url != null && url.toLowerCase().startsWith("jdbc:postgresql:")) {
+            return POSTGRESQL;
+        }
+        return H2;
+    }
+
+    /**
+     * returns the dialect of the DB a connection is open to
+     *
+     * @param con DB connection
+     * @return dialect
+     */
+    public static DBDialect forConnection(Connection con) throws SQLException {
+        return forUrl(con.getMetaData().getURL());
+    }
+
+    /**
+     * translates DDL written for H2 to this dialect
+     *
+     * @param sql H2 statement
+     * @return statement for this dialect
+     */
+    public String translate(String sql) {
+        if (this == POSTGRESQL) {
+            sql = sql.replaceAll("(?i)\\bBIGINT PRIMARY KEY AUTO_INCREMENT\\b", "BIGSERIAL PRIMARY KEY")
+                    .replaceAll("(?i)\\bINTEGER PRIMARY KEY AUTO_INCREMENT\\b", "SERIAL PRIMARY KEY")
+                    .replaceAll("(?i)\\bBIGINT AUTO_INCREMENT\\b", "BIGSERIAL")
+                    .replaceAll("(?i)\\bCURRENT_TIMESTAMP\\(\\)", "CURRENT_TIMESTAMP");
+        }
+        return sql;
+    }
+
+    /**
+     * moves the id sequence of a table past rows that were inserted with explicit ids. H2 advances
+     * identity columns on such inserts, PostgreSQL serial sequences have to be set.
+     *
+     * @param con   DB connection
+     * @param table table with an auto increment id column
+     */
+    public void resetIdentity(Connection con, String table) throws SQLException {
+        if (this == POSTGRESQL) {
+            Statement stmt = con.createStatement();
+            try {
+                stmt.executeQuery("select setval(pg_get_serial_sequence('" + table + "', 'id'), coalesce(max(id), 0) + 1, false) from " + table).close();
+            } finally {
+                stmt.close();
+            }
+        }
+    }
+
+    /**
+     * true if a statement failed because it timed out waiting for a lock held by another connection
+     *
+     * @param ex SQL exception
+     * @return true on lock timeout
+     */
+    public boolean isLockTimeout(SQLException ex) {
+        if (this == POSTGRESQL) {
+            return "55P03".equals(ex.getSQLState());
+        }
+        return ex.getErrorCode() == 50200;
+    }
+
+    public String getDriverClass() {
+        return driverClass;
+    }
+}
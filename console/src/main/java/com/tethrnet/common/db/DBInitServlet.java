@@ -16,12 +16,23 @@
 package com.tethrnet.common.db;
 
 import com.tethrnet.common.util.AppConfig;
-import com.tethrnet.manage.model.Auth;
 import com.tethrnet.manage.model.SessionOutput;
+import com.tethrnet.manage.util.AuditIndexUtil;
+import com.tethrnet.manage.util.AuditRetentionUtil;
+import com.tethrnet.manage.util.AuditWriterUtil;
 import com.tethrnet.manage.util.DBUtils;
+import com.tethrnet.manage.util.DSPool;
 import com.tethrnet.manage.util.EncryptionUtil;
+import com.tethrnet.manage.util.InventorySyncUtil;
+import com.tethrnet.manage.util.InventoryUtil;
+import com.tethrnet.manage.util.KeyPoolUtil;
 import com.tethrnet.manage.util.RefreshAuthKeyUtil;
 import com.tethrnet.manage.util.SSHUtil;
+import com.tethrnet.manage.util.SessionActivityUtil;
+import com.tethrnet.manage.util.SystemAuditUtil;
+import com.tethrnet.manage.util.SystemStatusUtil;
+
+import org.apache.commons.lang3.StringUtils;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -55,47 +66,24 @@ public class DBInitServlet extends javax.servlet.http.HttpServlet {
 		super.init(config);
 
 		Connection connection = null;
-		Statement statement = null;
 		//check if reset ssh application key is set
 		boolean resetSSHKey = "true".equals(AppConfig.getProperty("resetApplicationSSHKey"));
 		try {
+			DSPool.startDBServer();
 			connection = DBUtils.getConn();
-			statement = connection.createStatement();
 
-			ResultSet rs = statement.executeQuery("select * from information_schema.tables where upper(table_name) = 'USERS' and table_schema='PUBLIC'");
-			if (rs == null || !rs.next()) {
+			//new DB, generate the application key
+			if (!tableExists(connection, "USERS")) {
 				resetSSHKey = true;
-				statement.executeUpdate("create table if not exists users (id INTEGER PRIMARY KEY AUTO_INCREMENT, email varchar, username varchar not null, password varchar, auth_token varchar, enabled boolean not null default true, auth_type varchar not null default '" + Auth.AUTH_BASIC+ "', user_type varchar not null default '" + Auth.ADMINISTRATOR + "', salt varchar, otp_secret varchar)");
-				
-				statement.executeUpdate("create table if not exists user_theme (user_id INTEGER PRIMARY KEY, bg varchar(7), fg varchar(7), d1 varchar(7), d2 varchar(7), d3 varchar(7), d4 varchar(7), d5 varchar(7), d6 varchar(7), d7 varchar(7), d8 varchar(7), b1 varchar(7), b2 varchar(7), b3 varchar(7), b4 varchar(7), b5 varchar(7), b6 varchar(7), b7 varchar(7), b8 varchar(7), foreign key (user_id) references users(id) on delete cascade) ");
-
-				statement.executeUpdate("create table if not exists system (id INTEGER PRIMARY KEY AUTO_INCREMENT, display_nm varchar not null, user varchar not null, host varchar not null, port INTEGER not null, authorized_keys varchar not null, status_cd varchar not null default 'INITIAL')");
-				statement.executeUpdate("create table if not exists profiles (id INTEGER PRIMARY KEY AUTO_INCREMENT, nm varchar not null, desc varchar not null)");
-				statement.executeUpdate("create table if not exists system_map (profile_id INTEGER, system_id INTEGER, foreign key (profile_id) references profiles(id) on delete cascade , foreign key (system_id) references system(id) on delete cascade, primary key (profile_id, system_id))");
-				statement.executeUpdate("create table if not exists user_map (user_id INTEGER, profile_id INTEGER, foreign key (user_id) references users(id) on delete cascade, foreign key (profile_id) references profiles(id) on delete cascade, primary key (user_id, profile_id))");
-				statement.executeUpdate("create table if not exists application_key (id INTEGER PRIMARY KEY AUTO_INCREMENT, public_key varchar not null, private_key varchar not null, passphrase varchar)");
-
-				statement.executeUpdate("create table if not exists status (id INTEGER, user_id INTEGER, status_cd varchar not null default 'INITIAL', foreign key (id) references system(id) on delete cascade, foreign key (user_id) references users(id) on delete cascade, primary key(id, user_id))");
-				statement.executeUpdate("create table if not exists scripts (id INTEGER PRIMARY KEY AUTO_INCREMENT, user_id INTEGER, display_nm varchar not null, script varchar not null, foreign key (user_id) references users(id) on delete cascade)");
-
-
-				statement.executeUpdate("create table if not exists public_keys (id INTEGER PRIMARY KEY AUTO_INCREMENT, key_nm varchar not null, type varchar, fingerprint varchar, public_key varchar, enabled boolean not null default true, create_dt timestamp not null default CURRENT_TIMESTAMP(),  user_id INTEGER, profile_id INTEGER, foreign key (profile_id) references profiles(id) on delete cascade, foreign key (user_id) references users(id) on delete cascade)");
-
-				statement.executeUpdate("create table if not exists session_log (id BIGINT PRIMARY KEY AUTO_INCREMENT, user_id INTEGER, session_tm timestamp default CURRENT_TIMESTAMP, foreign key (user_id) references users(id) on delete cascade )");
-				statement.executeUpdate("create table if not exists terminal_log (session_id BIGINT, instance_id INTEGER, system_id INTEGER, output varchar not null, log_tm timestamp default CURRENT_TIMESTAMP, foreign key (session_id) references session_log(id) on delete cascade, foreign key (system_id) references system(id) on delete cascade)");
-
-				//insert default admin user
-				String salt = EncryptionUtil.generateSalt();
-				PreparedStatement pStmt = connection.prepareStatement("insert into users (username, password, user_type, salt) values(?,?,?,?)");
-				pStmt.setString(1, "admin");
-				pStmt.setString(2, EncryptionUtil.hash("changeme" + salt));
-				pStmt.setString(3, Auth.MANAGER);
-				pStmt.setString(4, salt);
-				pStmt.execute();
-				DBUtils.closeStmt(pStmt);
-
 			}
-			DBUtils.closeRs(rs);
+			Connection lockConnection = DBUtils.getConn();
+			try {
+				MigrationUtil.migrate(connection, lockConnection, MigrationUtil.CONTROL_DB, MigrationUtil.CONTROL_MIGRATIONS);
+			} finally {
+				DBUtils.closeConn(lockConnection);
+			}
+
+			initAuditDB(connection);
 
 			//if reset ssh application key then generate new key
 			if (resetSSHKey) {
@@ -146,10 +134,169 @@ public class DBInitServlet extends javax.servlet.http.HttpServlet {
             log.error(ex.toString(), ex);
 		}
 
-		DBUtils.closeStmt(statement);
 		DBUtils.closeConn(connection);
 
 		RefreshAuthKeyUtil.startRefreshAllSystemsTimerTask();
+		AuditIndexUtil.startIndexTask();
+		AuditRetentionUtil.startRetentionTask();
+		SystemAuditUtil.startAuditStream();
+		AuditWriterUtil.startAuditWriter();
+		SystemStatusUtil.startStatusWriter();
+		SessionActivityUtil.startSweeper();
+		if ("true".equals(AppConfig.getProperty("forceUserKeyGeneration"))) {
+			KeyPoolUtil.startGenerator();
+		}
+		InventoryUtil.startInventory();
+		InventorySyncUtil.startListener();
+	}
+
+	/**
+	 * closes the inventory provider on shutdown
+	 */
+	@Override
+	public void destroy() {
+		InventorySyncUtil.stopListener();
+		InventoryUtil.stopInventory();
+		AuditWriterUtil.stopAuditWriter();
+		super.destroy();
+	}
+
+	/**
+	 * applies the audit DB migrations. When audit data is kept in its own DB there are no foreign keys
+	 * to users or systems, and audit history is moved out of the application DB on the first start.
+	 *
+	 * @param connection application DB connection
+	 */
+	private void initAuditDB(Connection connection) throws Exception {
+
+		Connection auditConnection = DSPool.isSeparateAuditDB() ? DBUtils.getAuditConn() : connection;
+		Connection lockConnection = DSPool.isSeparateAuditDB() ? DBUtils.getAuditConn() : DBUtils.getConn();
+		try {
+			MigrationUtil.migrate(auditConnection, lockConnection, MigrationUtil.AUDIT_DB, MigrationUtil.AUDIT_MIGRATIONS);
+
+			if (DSPool.isSeparateAuditDB() && tableExists(connection, "SESSION_LOG")) {
+				moveAuditData(connection, auditConnection);
+			}
+		} finally {
+			DBUtils.closeConn(lockConnection);
+			if (auditConnection != connection) {
+				DBUtils.closeConn(auditConnection);
+			}
+		}
+	}
+
+	/**
+	 * copies audit history from the application DB to the audit DB in one transaction and then
+	 * drops it from the application DB. Nothing is copied if the audit DB already has sessions.
+	 *
+	 * @param connection      application DB connection
+	 * @param auditConnection audit DB connection
+	 */
+	void moveAuditData(Connection connection, Connection auditConnection) throws Exception {
+
+		Statement statement = auditConnection.createStatement();
+		ResultSet rs = statement.executeQuery("select id from session_log limit 1");
+		boolean hasSessions = rs.next();
+		DBUtils.closeRs(rs);
+		DBUtils.closeStmt(statement);
+		if (hasSessions) {
+			log.warn("Audit DB already has sessions, audit history left in the application DB was not copied");
+			return;
+		}
+
+		System.out.println("Moving audit history to the audit DB");
+		statement = connection.createStatement();
+		statement.executeUpdate(DBDialect.forConnection(connection).translate("alter table terminal_log add column if not exists id BIGINT AUTO_INCREMENT"));
+
+		boolean autoCommit = auditConnection.getAutoCommit();
+		auditConnection.setAutoCommit(false);
+		try {
+			DBDialect auditDialect = DBDialect.forConnection(auditConnection);
+			copyTable(connection, auditConnection, "session_log", "id, user_id, session_tm");
+			auditDialect.resetIdentity(auditConnection, "session_log");
+			copyTable(connection, auditConnection, "terminal_log", "id, session_id, instance_id, system_id, output, log_tm");
+			auditDialect.resetIdentity(auditConnection, "terminal_log");
+			if (tableExists(connection, "TERMINAL_LOG_META")) {
+				copyTable(connection, auditConnection, "terminal_log_meta", "session_id, instance_id, system_id, audit_policy, output_size, input_size, start_tm, last_tm");
+			}
+			if (tableExists(connection, "TERMINAL_LOG_TERM")) {
+				copyTable(connection, auditConnection, "terminal_log_term", "term, session_id, instance_id, system_id, term_pos, output_offset, log_tm");
+			}
+			Statement auditStatement = auditConnection.createStatement();
+			if (tableExists(connection, "AUDIT_INDEX_STATE")) {
+				auditStatement.executeUpdate("delete from audit_index_state");
+				copyTable(connection, auditConnection, "audit_index_state", "id, last_log_id");
+				auditStatement.executeUpdate(MigrationUtil.INDEX_STATE_SQL);
+			}
+			//index positions are rebuilt from the copied output and terms
+			auditStatement.executeUpdate("delete from terminal_log_index");
+			auditStatement.executeUpdate(MigrationUtil.INDEX_POSITION_SQL);
+			DBUtils.closeStmt(auditStatement);
+			auditConnection.commit();
+		} catch (Exception ex) {
+			auditConnection.rollback();
+			DBUtils.closeStmt(statement);
+			throw ex;
+		} finally {
+			auditConnection.setAutoCommit(autoCommit);
+		}
+
+		statement.executeUpdate("drop table if exists terminal_log_index");
+		statement.executeUpdate("drop table if exists terminal_log_meta");
+		statement.executeUpdate("drop table if exists terminal_log_term");
+		statement.executeUpdate("drop table if exists terminal_log");
+		statement.executeUpdate("drop table if exists session_log");
+		statement.executeUpdate("drop table if exists audit_index_state");
+		DBUtils.closeStmt(statement);
+	}
+
+	/**
+	 * copies all rows of a table between DBs with batched inserts
+	 *
+	 * @param from    source DB connection
+	 * @param to      target DB connection
+	 * @param table   table name
+	 * @param columns comma separated column names
+	 */
+	private void copyTable(Connection from, Connection to, String table, String columns) throws Exception {
+
+		int columnCount = columns.split(",").length;
+		PreparedStatement insertStmt = to.prepareStatement("insert into " + table + " (" + columns + ") values (" + StringUtils.repeat("?", ",", columnCount) + ")");
+		Statement selectStmt = from.createStatement();
+		selectStmt.setFetchSize(1000);
+		ResultSet rs = selectStmt.executeQuery("select " + columns + " from " + table);
+		int count = 0;
+		while (rs.next()) {
+			for (int i = 1; i <= columnCount; i++) {
+				insertStmt.setObject(i, rs.getObject(i));
+			}
+			insertStmt.addBatch();
+			if (++count % 1000 == 0) {
+				insertStmt.executeBatch();
+			}
+		}
+		insertStmt.executeBatch();
+		DBUtils.closeRs(rs);
+		DBUtils.closeStmt(selectStmt);
+		DBUtils.closeStmt(insertStmt);
+		System.out.println("Copied " + count + " rows from " + table);
+	}
+
+	/**
+	 * returns true if a table exists
+	 *
+	 * @param con   DB connection
+	 * @param table upper case table name
+	 * @return true if the table exists
+	 */
+	private boolean tableExists(Connection con, String table) throws Exception {
+		PreparedStatement stmt = con.prepareStatement("select * from information_schema.tables where upper(table_name) = ? and upper(table_schema)='PUBLIC'");
+		stmt.setString(1, table);
+		ResultSet rs = stmt.executeQuery();
+		boolean exists = rs.next();
+		DBUtils.closeRs(rs);
+		DBUtils.closeStmt(stmt);
+		return exists;
 	}
 
 }
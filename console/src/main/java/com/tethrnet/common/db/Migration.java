@@ -0,0 +1,61 @@
+package com.tethrnet.common.db;
+
+import com.tethrnet.manage.util.DBUtils;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * Numbered schema change. Steps must be safe to run against a DB that already has the change, since
+ * DBs created before versioning was added run every step once.
+ */
+public abstract class Migration {
+
+    int version;
+    String description;
+
+    public Migration(int version, String description) {
+        this.version = version;
+        this.description = description;
+    }
+
+    /**
+     * applies the change
+     *
+     * @param con DB connection
+     */
+    public abstract void migrate(Connection con) throws Exception;
+
+    /**
+     * returns a step that runs SQL statements in order, translated to the dialect of the DB
+     *
+     * @param version     step number
+     * @param description what the step changes
+     * @param sqlList     statements to run
+     * @return migration step
+     */
+    public static Migration sql(int version, String description, final String... sqlList) {
+        return new Migration(version, description) {
+            @Override
+            public void migrate(Connection con) throws Exception {
+                DBDialect dialect = DBDialect.forConnection(con);
+                Statement statement = con.createStatement();
+                try {
+                    for (String sql : sqlList) {
+                        statement.executeUpdate(dialect.translate(sql));
+                    }
+                } finally {
+                    DBUtils.closeStmt(statement);
+                }
+            }
+        };
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
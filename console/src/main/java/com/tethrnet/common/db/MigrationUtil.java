@@ -0,0 +1,294 @@
+package com.tethrnet.common.db;
+
+import com.tethrnet.manage.model.Auth;
+import com.tethrnet.manage.util.DBUtils;
+import com.tethrnet.manage.util.EncryptionUtil;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies the numbered schema changes for the application and audit DBs at startup. Applied steps
+ * are recorded in schema_version, keyed by DB name so both sets can share one DB.
+ */
+public class MigrationUtil {
+
+    private static Logger log = LoggerFactory.getLogger(MigrationUtil.class);
+
+    public static final String CONTROL_DB = "control";
+    public static final String AUDIT_DB = "audit";
+
+    /**
+     * application DB steps, new steps are added to the end with the next number
+     */
+    public static final List<Migration> CONTROL_MIGRATIONS = Arrays.asList(
+            Migration.sql(1, "application tables",
+                    "create table if not exists users (id INTEGER PRIMARY KEY AUTO_INCREMENT, email varchar, username varchar not null, password varchar, auth_token varchar, enabled boolean not null default true, auth_type varchar not null default '" + Auth.AUTH_BASIC + "', user_type varchar not null default '" + Auth.ADMINISTRATOR + "', salt varchar, otp_secret varchar)",
+                    "create table if not exists user_theme (user_id INTEGER PRIMARY KEY, bg varchar(7), fg varchar(7), d1 varchar(7), d2 varchar(7), d3 varchar(7), d4 varchar(7), d5 varchar(7), d6 varchar(7), d7 varchar(7), d8 varchar(7), b1 varchar(7), b2 varchar(7), b3 varchar(7), b4 varchar(7), b5 varchar(7), b6 varchar(7), b7 varchar(7), b8 varchar(7), foreign key (user_id) references users(id) on delete cascade) ",
+                    "create table if not exists system (id INTEGER PRIMARY KEY AUTO_INCREMENT, display_nm varchar not null, user_nm varchar not null, host varchar not null, port INTEGER not null, authorized_keys varchar not null, status_cd varchar not null default 'INITIAL')",
+                    "create table if not exists profiles (id INTEGER PRIMARY KEY AUTO_INCREMENT, nm varchar not null, description varchar not null)",
+                    "create table if not exists system_map (profile_id INTEGER, system_id INTEGER, foreign key (profile_id) references profiles(id) on delete cascade , foreign key (system_id) references system(id) on delete cascade, primary key (profile_id, system_id))",
+                    "create table if not exists user_map (user_id INTEGER, profile_id INTEGER, foreign key (user_id) references users(id) on delete cascade, foreign key (profile_id) references profiles(id) on delete cascade, primary key (user_id, profile_id))",
+                    "create table if not exists application_key (id INTEGER PRIMARY KEY AUTO_INCREMENT, public_key varchar not null, private_key varchar not null, passphrase varchar)",
+                    "create table if not exists status (id INTEGER, user_id INTEGER, status_cd varchar not null default 'INITIAL', foreign key (id) references system(id) on delete cascade, foreign key (user_id) references users(id) on delete cascade, primary key(id, user_id))",
+                    "create table if not exists scripts (id INTEGER PRIMARY KEY AUTO_INCREMENT, user_id INTEGER, display_nm varchar not null, script varchar not null, foreign key (user_id) references users(id) on delete cascade)",
+                    "create table if not exists public_keys (id INTEGER PRIMARY KEY AUTO_INCREMENT, key_nm varchar not null, type varchar, fingerprint varchar, public_key varchar, enabled boolean not null default true, create_dt timestamp not null default CURRENT_TIMESTAMP(),  user_id INTEGER, profile_id INTEGER, foreign key (profile_id) references profiles(id) on delete cascade, foreign key (user_id) references users(id) on delete cascade)"),
+            new Migration(2, "default admin user") {
+                @Override
+                public void migrate(Connection con) throws Exception {
+                    Statement statement = con.createStatement();
+                    ResultSet rs = statement.executeQuery("select id from users limit 1");
+                    boolean hasUsers = rs.next();
+                    DBUtils.closeRs(rs);
+                    DBUtils.closeStmt(statement);
+                    if (!hasUsers) {
+                        String salt = EncryptionUtil.generateSalt();
+                        PreparedStatement stmt = con.prepareStatement("insert into users (username, password, user_type, salt) values(?,?,?,?)");
+                        stmt.setString(1, "admin");
+                        stmt.setString(2, EncryptionUtil.hash("changeme" + salt));
+                        stmt.setString(3, Auth.MANAGER);
+                        stmt.setString(4, salt);
+                        stmt.execute();
+                        DBUtils.closeStmt(stmt);
+                    }
+                }
+            },
+            Migration.sql(3, "audit policy for systems and profiles",
+                    "alter table system add column if not exists audit_policy varchar",
+                    "alter table profiles add column if not exists audit_policy varchar"),
+            Migration.sql(4, "indexes for login, key and status lookups",
+                    "create index if not exists users_auth_token_idx on users (auth_token)",
+                    "create index if not exists users_username_idx on users (username)",
+                    "create index if not exists status_user_status_idx on status (user_id, status_cd)",
+                    "create index if not exists public_keys_fingerprint_idx on public_keys (fingerprint)",
+                    "create index if not exists public_keys_profile_idx on public_keys (profile_id)"),
+            Migration.sql(5, "connection progress is kept in memory",
+                    "drop table if exists status"),
+            new Migration(6, "rename columns that are reserved words") {
+                @Override
+                public void migrate(Connection con) throws Exception {
+                    //only DBs created by H2 before the rename have the old columns
+                    Statement statement = con.createStatement();
+                    if (columnExists(con, "SYSTEM", "USER")) {
+                        statement.executeUpdate("alter table system alter column user rename to user_nm");
+                    }
+                    if (columnExists(con, "PROFILES", "DESC")) {
+                        statement.executeUpdate("alter table profiles alter column desc rename to description");
+                    }
+                    DBUtils.closeStmt(statement);
+                }
+            },
+            new Migration(7, "encrypt stored secrets with AES/GCM") {
+                @Override
+                public void migrate(Connection con) throws Exception {
+                    reEncrypt(con, "application_key", "private_key");
+                    reEncrypt(con, "application_key", "passphrase");
+                    reEncrypt(con, "users", "otp_secret");
+                }
+            },
+            Migration.sql(8, "stable key for systems synced from the inventory",
+                    "alter table system add column if not exists inventory_key varchar",
+                    "create index if not exists system_inventory_key_idx on system (inventory_key)")
+    );
+
+    /**
+     * audit DB steps, new steps are added to the end with the next number
+     */
+    //sets the index position of terminals from the output indexed so far
+    public static final String INDEX_POSITION_SQL = "insert into terminal_log_index (session_id, instance_id, next_pos, output_offset) select l.session_id, l.instance_id, coalesce((select max(t.term_pos) + 1 from terminal_log_term t where t.session_id=l.session_id and t.instance_id=l.instance_id), 0), sum(length(l.output)) from terminal_log l where l.id <= (select coalesce(max(last_log_id), 0) from audit_index_state) group by l.session_id, l.instance_id";
+
+    //adds the index state row, locked by the node that is indexing
+    public static final String INDEX_STATE_SQL = "insert into audit_index_state (id, last_log_id) select 1, 0 from audit_index_state where id=1 having count(*) = 0";
+
+    public static final List<Migration> AUDIT_MIGRATIONS = Arrays.asList(
+            Migration.sql(1, "audit tables",
+                    "create table if not exists session_log (id BIGINT PRIMARY KEY AUTO_INCREMENT, user_id INTEGER, session_tm timestamp default CURRENT_TIMESTAMP)",
+                    "create table if not exists terminal_log (id BIGINT AUTO_INCREMENT, session_id BIGINT, instance_id INTEGER, system_id INTEGER, output varchar not null, log_tm timestamp default CURRENT_TIMESTAMP, foreign key (session_id) references session_log(id) on delete cascade)",
+                    "create index if not exists session_log_user_idx on session_log (user_id)"),
+            Migration.sql(2, "index for audit purges and session paging",
+                    "drop index if exists session_log_tm_idx",
+                    "create index if not exists session_log_tm_id_idx on session_log (session_tm desc, id desc)"),
+            Migration.sql(3, "search index over terminal output",
+                    "alter table terminal_log add column if not exists id BIGINT AUTO_INCREMENT",
+                    "create index if not exists terminal_log_id_idx on terminal_log (id)",
+                    "create table if not exists terminal_log_term (term varchar not null, session_id BIGINT not null, instance_id INTEGER not null, system_id INTEGER, term_pos BIGINT not null, output_offset BIGINT not null, log_tm timestamp, foreign key (session_id) references session_log(id) on delete cascade)",
+                    "create index if not exists terminal_log_term_idx on terminal_log_term (term, session_id, instance_id, term_pos)",
+                    "create index if not exists terminal_log_term_pos_idx on terminal_log_term (session_id, instance_id, term_pos)",
+                    "create table if not exists audit_index_state (id INTEGER PRIMARY KEY, last_log_id BIGINT not null default 0)"),
+            Migration.sql(4, "terminal metadata",
+                    "create table if not exists terminal_log_meta (session_id BIGINT not null, instance_id INTEGER not null, system_id INTEGER, audit_policy varchar, output_size BIGINT not null default 0, input_size BIGINT not null default 0, start_tm timestamp, last_tm timestamp, foreign key (session_id) references session_log(id) on delete cascade, primary key (session_id, instance_id))"),
+            Migration.sql(5, "indexes for terminal replay and system filters",
+                    "create index if not exists terminal_log_session_idx on terminal_log (session_id, instance_id, log_tm)",
+                    "create index if not exists terminal_log_system_idx on terminal_log (system_id)"),
+            Migration.sql(6, "index for search ordering and incremental index state",
+                    "create index if not exists terminal_log_term_tm_idx on terminal_log_term (term, log_tm desc, term_pos desc)",
+                    "create table if not exists terminal_log_index (session_id BIGINT not null, instance_id INTEGER not null, next_pos BIGINT not null default 0, output_offset BIGINT not null default 0, foreign key (session_id) references session_log(id) on delete cascade, primary key (session_id, instance_id))",
+                    INDEX_POSITION_SQL),
+            Migration.sql(7, "index state row locked by the indexing node",
+                    INDEX_STATE_SQL)
+    );
+
+
+    private MigrationUtil() {
+    }
+
+    /**
+     * encrypts the values of a column again if they were encrypted with the legacy transform
+     *
+     * @param con    DB connection
+     * @param table  table name
+     * @param column column of encrypted values
+     */
+    private static void reEncrypt(Connection con, String table, String column) throws Exception {
+        PreparedStatement updateStmt = con.prepareStatement("update " + table + " set " + column + "=? where id=?");
+        Statement statement = con.createStatement();
+        ResultSet rs = statement.executeQuery("select id, " + column + " from " + table + " where " + column + " is not null");
+        while (rs.next()) {
+            String value = rs.getString(column);
+            String decrypted = EncryptionUtil.isLegacy(value) ? EncryptionUtil.decrypt(value) : null;
+            //values that can not be decrypted are left as they are
+            if (decrypted != null) {
+                updateStmt.setString(1, EncryptionUtil.encrypt(decrypted));
+                updateStmt.setLong(2, rs.getLong("id"));
+                updateStmt.addBatch();
+            }
+        }
+        updateStmt.executeBatch();
+        DBUtils.closeRs(rs);
+        DBUtils.closeStmt(statement);
+        DBUtils.closeStmt(updateStmt);
+    }
+
+    /**
+     * returns true if a table has a column
+     *
+     * @param con    DB connection
+     * @param table  upper case table name
+     * @param column upper case column name
+     * @return true if the column exists
+     */
+    public static boolean columnExists(Connection con, String table, String column) throws Exception {
+        PreparedStatement stmt = con.prepareStatement("select * from information_schema.columns where upper(table_name)=? and upper(column_name)=? and upper(table_schema)='PUBLIC'");
+        stmt.setString(1, table);
+        stmt.setString(2, column);
+        ResultSet rs = stmt.executeQuery();
+        boolean exists = rs.next();
+        DBUtils.closeRs(rs);
+        DBUtils.closeStmt(stmt);
+        return exists;
+    }
+
+    /**
+     * applies the steps that have not been applied to the DB, in order. Stops at the first step that
+     * fails so later steps never run against a partly migrated schema. Nodes that share the DB wait
+     * for each other on a row lock held by a second connection, H2 commits on every DDL statement so
+     * the lock can not be held by the connection that migrates.
+     *
+     * @param con        DB connection
+     * @param lockCon    second connection to the same DB
+     * @param dbNm       name the steps are recorded under
+     * @param migrations steps ordered by version
+     */
+    public static void migrate(Connection con, Connection lockCon, String dbNm, List<Migration> migrations) throws Exception {
+
+        boolean autoCommit = lockCon.getAutoCommit();
+        lock(lockCon, dbNm);
+        try {
+            Statement statement = con.createStatement();
+            statement.executeUpdate("create table if not exists schema_version (db_nm varchar not null, version INTEGER not null, description varchar, applied_tm timestamp default CURRENT_TIMESTAMP, primary key (db_nm, version))");
+            DBUtils.closeStmt(statement);
+
+            Set<Integer> appliedSet = new HashSet<Integer>();
+            PreparedStatement stmt = con.prepareStatement("select version from schema_version where db_nm=?");
+            stmt.setString(1, dbNm);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                appliedSet.add(rs.getInt("version"));
+            }
+            DBUtils.closeRs(rs);
+            DBUtils.closeStmt(stmt);
+
+            for (Migration migration : migrations) {
+                if (!appliedSet.contains(migration.getVersion())) {
+                    System.out.println("Applying " + dbNm + " DB migration " + migration.getVersion() + ": " + migration.getDescription());
+                    try {
+                        migration.migrate(con);
+                    } catch (Exception ex) {
+                        log.error("Migration " + migration.getVersion() + " of the " + dbNm + " DB failed", ex);
+                        throw ex;
+                    }
+
+                    stmt = con.prepareStatement("insert into schema_version (db_nm, version, description) values (?,?,?)");
+                    stmt.setString(1, dbNm);
+                    stmt.setInt(2, migration.getVersion());
+                    stmt.setString(3, migration.getDescription());
+                    stmt.execute();
+                    DBUtils.closeStmt(stmt);
+                }
+            }
+        } finally {
+            lockCon.rollback();
+            lockCon.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * locks the schema_lock row of a DB name until the connection's transaction ends, waiting while
+     * another node migrates
+     *
+     * @param lockCon DB connection
+     * @param dbNm    name the steps are recorded under
+     */
+    private static void lock(Connection lockCon, String dbNm) throws Exception {
+
+        lockCon.setAutoCommit(true);
+        for (int i = 0; ; i++) {
+            try {
+                Statement statement = lockCon.createStatement();
+                statement.executeUpdate("create table if not exists schema_lock (db_nm varchar not null primary key)");
+                DBUtils.closeStmt(statement);
+
+                PreparedStatement stmt = lockCon.prepareStatement("insert into schema_lock (db_nm) select ? where not exists (select 1 from schema_lock where db_nm=?)");
+                stmt.setString(1, dbNm);
+                stmt.setString(2, dbNm);
+                stmt.execute();
+                DBUtils.closeStmt(stmt);
+                break;
+            } catch (SQLException ex) {
+                //another node created the table or row at the same time
+                if (i >= 2) {
+                    throw ex;
+                }
+            }
+        }
+
+        DBDialect dialect = DBDialect.forConnection(lockCon);
+        lockCon.setAutoCommit(false);
+        while (true) {
+            PreparedStatement stmt = lockCon.prepareStatement("select db_nm from schema_lock where db_nm=? for update");
+            try {
+                stmt.setString(1, dbNm);
+                DBUtils.closeRs(stmt.executeQuery());
+                return;
+            } catch (SQLException ex) {
+                if (!dialect.isLockTimeout(ex)) {
+                    throw ex;
+                }
+                lockCon.rollback();
+                log.info("Waiting for another node to migrate the " + dbNm + " DB");
+            } finally {
+                DBUtils.closeStmt(stmt);
+            }
+        }
+    }
+
+}
@@ -23,18 +23,12 @@ import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * Filter determines if admin user is authenticated
  */
 public class AuthFilter implements Filter {
 
-    private static Logger log = LoggerFactory.getLogger(AuthFilter.class);
-
     public void init(FilterConfig config) throws ServletException {
 
     }
@@ -70,32 +64,16 @@ public class AuthFilter implements Filter {
                 String uri = servletRequest.getRequestURI();
                 if (Auth.MANAGER.equals(userType)) {
                     isAdmin = true;
-                } else if (uri.matches("^"+servletRequest.getContextPath().replaceAll("/","\\\\/")+"\\/admin\\/.*") && Auth.ADMINISTRATOR.equals(userType)) {
+                } else if (uri.startsWith(servletRequest.getContextPath() + "/admin/") && Auth.ADMINISTRATOR.equals(userType)) {
                     isAdmin = true;
                 }
                 AuthUtil.setUserType(servletRequest.getSession(), userType);
 
                 //check to see if user has timed out
-                String timeStr = AuthUtil.getTimeout(servletRequest.getSession());
-                try {
-                    if (timeStr != null && !timeStr.trim().equals("")) {
-                        SimpleDateFormat sdf = new SimpleDateFormat("MMddyyyyHHmmss");
-                        Date cookieTimeout = sdf.parse(timeStr);
-                        Date currentTime = new Date();
-
-                        //if current time > timeout then redirect to login page
-                        if (cookieTimeout == null || currentTime.after(cookieTimeout)) {
-                            isAdmin = false;
-                        } else {
-                            AuthUtil.setTimeout(servletRequest.getSession());
-                        }
-                    } else {
-                        isAdmin = false;
-                    }
-
-                } catch (Exception ex) {
-                    log.error(ex.toString(), ex);
+                if (AuthUtil.isTimedOut(servletRequest.getSession())) {
                     isAdmin = false;
+                } else {
+                    AuthUtil.setTimeout(servletRequest.getSession());
                 }
             }
 
@@ -19,9 +19,9 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
 import com.tethrnet.manage.util.EncryptionUtil;
+import com.tethrnet.manage.util.SessionActivityUtil;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.io.Serializable;
 
 
 /**
@@ -121,11 +121,16 @@ public class AuthUtil {
      * @return user id
      */
     public static Long getUserId(HttpSession session) {
+        DecodedAuth decodedAuth = getDecodedAuth(session);
+        if (decodedAuth.userId != null) {
+            return decodedAuth.userId;
+        }
         Long userId=null;
         String userIdStr = EncryptionUtil.decrypt((String)session.getAttribute("userId"));
         if(userIdStr!=null && !userIdStr.trim().equals("")){
             userId=Long.parseLong(userIdStr);
         }
+        decodedAuth.userId = userId;
         return userId;
     }
 
@@ -136,8 +141,13 @@ public class AuthUtil {
      * @return authentication token
      */
     public static String getAuthToken( HttpSession session) {
+        DecodedAuth decodedAuth = getDecodedAuth(session);
+        if (decodedAuth.authToken != null) {
+            return decodedAuth.authToken;
+        }
         String authToken = (String) session.getAttribute("authToken");
         authToken = EncryptionUtil.decrypt(authToken);
+        decodedAuth.authToken = authToken;
         return authToken;
     }
 
@@ -145,11 +155,10 @@ public class AuthUtil {
      * query session for timeout
      *
      * @param session http session
-     * @return timeout string
+     * @return true if the session has been idle too long
      */
-    public static String getTimeout(HttpSession session) {
-        String timeout = (String) session.getAttribute("timeout");
-        return timeout;
+    public static boolean isTimedOut(HttpSession session) {
+        return SessionActivityUtil.isTimedOut(session);
     }
 
     /**
@@ -174,6 +183,7 @@ public class AuthUtil {
     public static void setUserId(HttpSession session, Long userId) {
         if (userId != null) {
             session.setAttribute("userId", EncryptionUtil.encrypt(userId.toString()));
+            getDecodedAuth(session).userId = userId;
         }
     }
 
@@ -186,6 +196,7 @@ public class AuthUtil {
     public static void setAuthToken(HttpSession session, String authToken) {
         if (authToken != null && !authToken.trim().equals("")) {
             session.setAttribute("authToken", EncryptionUtil.encrypt(authToken));
+            getDecodedAuth(session).authToken = authToken;
         }
     }
 
@@ -195,11 +206,8 @@ public class AuthUtil {
      * @param session http session
      */
     public static void setTimeout(HttpSession session) {
-        //set session timeout
-        SimpleDateFormat sdf = new SimpleDateFormat("MMddyyyyHHmmss");
-        Calendar timeout = Calendar.getInstance();
-        timeout.add(Calendar.MINUTE, 30);
-        session.setAttribute("timeout", sdf.format(timeout.getTime()));
+        //record activity, the session times out once it has been idle too long
+        SessionActivityUtil.touch(session);
     }
 
     /**
@@ -209,12 +217,39 @@ public class AuthUtil {
      */
     public static void deleteAllSession(HttpSession session) {
 
-        session.setAttribute("timeout", null);
+        SessionActivityUtil.remove(session);
+        session.setAttribute("activity", null);
         session.setAttribute("authToken", null);
         session.setAttribute("userId", null);
         session.setAttribute("sessionId",null);
+        session.setAttribute("decodedAuth", null);
 
         session.invalidate();
     }
 
+    /**
+     * returns the decoded user id and auth token kept in the session so the encrypted attributes are
+     * not decrypted on every request
+     *
+     * @param session http session
+     * @return decoded values
+     */
+    private static DecodedAuth getDecodedAuth(HttpSession session) {
+        DecodedAuth decodedAuth = (DecodedAuth) session.getAttribute("decodedAuth");
+        if (decodedAuth == null) {
+            decodedAuth = new DecodedAuth();
+            session.setAttribute("decodedAuth", decodedAuth);
+        }
+        return decodedAuth;
+    }
+
+    /**
+     * decoded session values, transient so they are never written out with the session and are
+     * decrypted again after the session is restored
+     */
+    private static class DecodedAuth implements Serializable {
+        transient volatile Long userId;
+        transient volatile String authToken;
+    }
+
 }
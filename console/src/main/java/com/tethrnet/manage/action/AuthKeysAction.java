@@ -15,7 +15,6 @@
  */
 package com.tethrnet.manage.action;
 
-import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.KeyPair;
 import com.opensymphony.xwork2.ActionSupport;
 import com.tethrnet.common.util.AppConfig;
@@ -23,6 +22,7 @@ import com.tethrnet.common.util.AuthUtil;
 import com.tethrnet.manage.db.*;
 import com.tethrnet.manage.model.*;
 import com.tethrnet.manage.util.EncryptionUtil;
+import com.tethrnet.manage.util.KeyPoolUtil;
 import com.tethrnet.manage.util.PasswordUtil;
 import com.tethrnet.manage.util.RefreshAuthKeyUtil;
 import com.tethrnet.manage.util.SSHUtil;
@@ -220,7 +220,7 @@ public class AuthKeysAction extends ActionSupport implements ServletRequestAware
 	}
 
 	/**
-	 * generates public private key from passphrase
+	 * generates public private key from passphrase, the key pair is taken from the key pool
 	 *  
 	 * @param username username to set in public key comment
 	 * @param keyname keyname to set in public key comment
@@ -228,20 +228,10 @@ public class AuthKeysAction extends ActionSupport implements ServletRequestAware
 	 */
 	public String generateUserKey(String username, String keyname) {
 
-		//set key type
-		int type = KeyPair.RSA;
-		if(SSHUtil.KEY_TYPE.equals("dsa")) {
-			type = KeyPair.DSA;
-		} else if(SSHUtil.KEY_TYPE.equals("ecdsa")) {
-			type = KeyPair.ECDSA;
-		}
-
-		JSch jsch = new JSch();
-				
 		String pubKey=null;
 		try {
 
-			KeyPair keyPair = KeyPair.genKeyPair(jsch, type, SSHUtil.KEY_LENGTH);
+			KeyPair keyPair = KeyPoolUtil.takeKeyPair();
 
 			OutputStream os = new ByteArrayOutputStream();
 			keyPair.writePrivateKey(os, publicKey.getPassphrase().getBytes());
@@ -18,7 +18,6 @@ package com.tethrnet.manage.action;
 import com.opensymphony.xwork2.ActionSupport;
 import com.tethrnet.common.util.AuthUtil;
 import com.tethrnet.manage.db.SystemDB;
-import com.tethrnet.manage.db.SystemStatusDB;
 import com.tethrnet.manage.model.Auth;
 import com.tethrnet.manage.model.HostSystem;
 import com.tethrnet.manage.model.SchSession;
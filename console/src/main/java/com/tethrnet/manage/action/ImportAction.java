@@ -0,0 +1,120 @@
+package com.tethrnet.manage.action;
+
+import com.opensymphony.xwork2.ActionSupport;
+import com.tethrnet.manage.model.ImportResult;
+import com.tethrnet.manage.util.ImportUtil;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.struts2.convention.annotation.Action;
+import org.apache.struts2.convention.annotation.Result;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Action to import systems and public keys from CSV or JSON files
+ */
+public class ImportAction extends ActionSupport {
+
+    private static Logger log = LoggerFactory.getLogger(ImportAction.class);
+
+    File upload;
+    String uploadContentType;
+    String uploadFileName;
+    ImportResult importResult;
+    //page to return to
+    String returnAction;
+
+
+    @Action(value = "/manage/importSystems",
+            results = {
+                    @Result(name = "success", location = "/manage/import_result.jsp")
+            }
+    )
+    public String importSystems() {
+
+        returnAction = "viewSystems.action";
+        List<Map<String, String>> recordList = readRecords();
+        if (recordList != null) {
+            importResult = ImportUtil.importSystems(recordList);
+        }
+        return SUCCESS;
+    }
+
+
+    @Action(value = "/manage/importPublicKeys",
+            results = {
+                    @Result(name = "success", location = "/manage/import_result.jsp")
+            }
+    )
+    public String importPublicKeys() {
+
+        returnAction = "viewKeys.action";
+        List<Map<String, String>> recordList = readRecords();
+        if (recordList != null) {
+            importResult = ImportUtil.importPublicKeys(recordList);
+        }
+        return SUCCESS;
+    }
+
+    /**
+     * reads the records from the uploaded file
+     *
+     * @return records or null if the file could not be read
+     */
+    private List<Map<String, String>> readRecords() {
+        if (upload == null) {
+            addActionError("Select a file to import");
+            return null;
+        }
+        try {
+            return ImportUtil.parseRecords(uploadFileName, FileUtils.readFileToString(upload, "UTF-8"));
+        } catch (IllegalArgumentException ex) {
+            addActionError(ex.getMessage());
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+            addActionError("The file could not be read");
+        }
+        return null;
+    }
+
+
+    public File getUpload() {
+        return upload;
+    }
+
+    public void setUpload(File upload) {
+        this.upload = upload;
+    }
+
+    public String getUploadContentType() {
+        return uploadContentType;
+    }
+
+    public void setUploadContentType(String uploadContentType) {
+        this.uploadContentType = uploadContentType;
+    }
+
+    public String getUploadFileName() {
+        return uploadFileName;
+    }
+
+    public void setUploadFileName(String uploadFileName) {
+        this.uploadFileName = uploadFileName;
+    }
+
+    public ImportResult getImportResult() {
+        return importResult;
+    }
+
+    public void setImportResult(ImportResult importResult) {
+        this.importResult = importResult;
+    }
+
+    public String getReturnAction() {
+        return returnAction;
+    }
+}
@@ -38,6 +38,7 @@ import com.tethrnet.manage.db.UserProfileDB;
 import com.tethrnet.manage.model.Auth;
 import com.tethrnet.manage.model.Profile;
 import com.tethrnet.manage.model.User;
+import com.tethrnet.manage.util.InventorySyncUtil;
 import com.tethrnet.manage.util.InventoryUtil;
 import com.tethrnet.manage.util.RefreshAuthKeyUtil;
 
@@ -143,6 +144,9 @@ public class LoginAction extends ActionSupport implements ServletRequestAware, S
                 List<Long> ids = new ArrayList<Long>();
                 ids.add(user.getId());
                 UserProfileDB.setUsersForProfile(profile.getId(), ids);
+                if (!Auth.MANAGER.equals(user.getUserType())) {
+                    InventorySyncUtil.requestSync(user.getId());
+                }
                 
                 loginAuditLogger.info(auth.getUsername() + " (" + clientIP + ") - Authentication Success");
                 
@@ -164,6 +168,7 @@ public class LoginAction extends ActionSupport implements ServletRequestAware, S
             }
     )
     public String logout() {
+        AuthDB.revokeToken(AuthUtil.getUserId(servletRequest.getSession()));
         AuthUtil.deleteAllSession(servletRequest.getSession());
         return SUCCESS;
     }
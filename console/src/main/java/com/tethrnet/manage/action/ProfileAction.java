@@ -17,10 +17,12 @@ package com.tethrnet.manage.action;
 
 import com.opensymphony.xwork2.ActionSupport;
 import com.tethrnet.manage.db.ProfileDB;
+import com.tethrnet.manage.model.AuditPolicy;
 import com.tethrnet.manage.model.Profile;
 import com.tethrnet.manage.model.Script;
 import com.tethrnet.manage.model.SortedSet;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.struts2.convention.annotation.Action;
 import org.apache.struts2.convention.annotation.Result;
 
@@ -87,6 +89,12 @@ public class ProfileAction extends ActionSupport {
             addFieldError("profile.nm", "Required");
         }
 
+        if (profile != null
+                && StringUtils.isNotEmpty(profile.getAuditPolicy())
+                && !AuditPolicy.isValid(profile.getAuditPolicy())) {
+            addFieldError("profile.auditPolicy", "Invalid");
+        }
+
         if (!this.getFieldErrors().isEmpty()) {
             sortedSet = ProfileDB.getProfileSet(sortedSet);
         }
@@ -22,6 +22,8 @@ import com.tethrnet.manage.db.*;
 import com.tethrnet.manage.model.*;
 import com.tethrnet.manage.model.SortedSet;
 import com.tethrnet.manage.util.SSHUtil;
+import com.tethrnet.manage.util.SessionOutputUtil;
+import com.tethrnet.manage.util.SystemStatusUtil;
 
 import org.apache.struts2.convention.annotation.Action;
 import org.apache.struts2.convention.annotation.Result;
@@ -80,7 +82,7 @@ public class SecureShellAction extends ActionSupport implements ServletRequestAw
 
 
             //get status
-            currentSystemStatus = SystemStatusDB.getSystemStatus(pendingSystemStatus.getId(), userId);
+            currentSystemStatus = SystemStatusUtil.getSystemStatus(pendingSystemStatus.getId(), userId);
             //if initial status run script
             if (currentSystemStatus != null
                     && (HostSystem.INITIAL_STATUS.equals(currentSystemStatus.getStatusCd())
@@ -100,11 +102,11 @@ public class SecureShellAction extends ActionSupport implements ServletRequestAw
 
             } else {
 
-                pendingSystemStatus = SystemStatusDB.getNextPendingSystem(userId);
+                pendingSystemStatus = SystemStatusUtil.getNextPendingSystem(userId);
                 //if success loop through systems until finished or need password
                 while (pendingSystemStatus != null && currentSystemStatus != null && HostSystem.SUCCESS_STATUS.equals(currentSystemStatus.getStatusCd())) {
                     currentSystemStatus = SSHUtil.openSSHTermOnSystem(passphrase, password, userId, sessionId, pendingSystemStatus, userSchSessionMap);
-                    pendingSystemStatus = SystemStatusDB.getNextPendingSystem(userId);
+                    pendingSystemStatus = SystemStatusUtil.getNextPendingSystem(userId);
                 }
 
 
@@ -112,7 +114,7 @@ public class SecureShellAction extends ActionSupport implements ServletRequestAw
 
         }
         //set system list if no pending systems
-        if (SystemStatusDB.getNextPendingSystem(userId) == null) {
+        if (SystemStatusUtil.getNextPendingSystem(userId) == null) {
             setSystemList(userId, sessionId);
             
             //set allocated systems for connect to
@@ -143,15 +145,14 @@ public class SecureShellAction extends ActionSupport implements ServletRequestAw
     )
     public String getNextPendingSystemForTerms() {
         Long userId = AuthUtil.getUserId(servletRequest.getSession());
-        currentSystemStatus = SystemStatusDB.getSystemStatus(pendingSystemStatus.getId(), userId);
+        currentSystemStatus = SystemStatusUtil.getSystemStatus(pendingSystemStatus.getId(), userId);
         currentSystemStatus.setErrorMsg("Auth fail");
         currentSystemStatus.setStatusCd(HostSystem.GENERIC_FAIL_STATUS);
 
 
-        SystemStatusDB.updateSystemStatus(currentSystemStatus, userId);
-        SystemDB.updateSystem(currentSystemStatus);
+        SystemStatusUtil.updateSystemStatus(currentSystemStatus, userId);
 
-        pendingSystemStatus = SystemStatusDB.getNextPendingSystem(userId);
+        pendingSystemStatus = SystemStatusUtil.getNextPendingSystem(userId);
 
         //set system list if no pending systems
         if (pendingSystemStatus == null) {
@@ -173,8 +174,8 @@ public class SecureShellAction extends ActionSupport implements ServletRequestAw
 
         if (systemSelectId != null && !systemSelectId.isEmpty()) {
 
-            SystemStatusDB.setInitialSystemStatus(systemSelectId, userId, AuthUtil.getUserType(servletRequest.getSession()));
-            pendingSystemStatus = SystemStatusDB.getNextPendingSystem(userId);
+            SystemStatusUtil.setInitialSystemStatus(systemSelectId, userId, true);
+            pendingSystemStatus = SystemStatusUtil.getNextPendingSystem(userId);
 
             AuthUtil.setSessionId(servletRequest.getSession(), SessionAuditDB.createSessionLog(userId));
 
@@ -240,9 +241,9 @@ public class SecureShellAction extends ActionSupport implements ServletRequestAw
 
         if (systemSelectId != null && !systemSelectId.isEmpty()) {
 
-            SystemStatusDB.setInitialSystemStatus(systemSelectId, userId, AuthUtil.getUserType(servletRequest.getSession()));
+            SystemStatusUtil.setInitialSystemStatus(systemSelectId, userId, true);
             
-            pendingSystemStatus = SystemStatusDB.getNextPendingSystem(userId);
+            pendingSystemStatus = SystemStatusUtil.getNextPendingSystem(userId);
 
             createTerms();
             
@@ -275,6 +276,35 @@ public class SecureShellAction extends ActionSupport implements ServletRequestAw
         return null;
     }
 
+    /**
+     * disconnects all terminals of a session and removes their output
+     *
+     * @param sessionId session id
+     */
+    public static void closeSchSessions(Long sessionId) {
+
+        UserSchSessions userSchSessions = sessionId != null ? userSchSessionMap.remove(sessionId) : null;
+        if (userSchSessions != null) {
+            Map<Integer, SchSession> schSessionMap = userSchSessions.getSchSessionMap();
+            for (Integer sessionKey : schSessionMap.keySet()) {
+                SchSession schSession = schSessionMap.remove(sessionKey);
+                if (schSession != null) {
+                    //disconnect ssh session
+                    if (schSession.getChannel() != null)
+                        schSession.getChannel().disconnect();
+                    if (schSession.getSession() != null)
+                        schSession.getSession().disconnect();
+                    schSession.setChannel(null);
+                    schSession.setSession(null);
+                    schSession.setInputToChannel(null);
+                    schSession.setCommander(null);
+                    schSession.setOutFromChannel(null);
+                }
+            }
+            SessionOutputUtil.removeUserSession(sessionId);
+        }
+    }
+
     /**
      * set system list once all connections have been attempted
      *
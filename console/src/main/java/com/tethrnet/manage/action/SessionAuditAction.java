@@ -17,18 +17,33 @@ package com.tethrnet.manage.action;
 
 import com.google.gson.Gson;
 import com.opensymphony.xwork2.ActionSupport;
+import com.tethrnet.common.util.AuthUtil;
 import com.tethrnet.manage.db.SessionAuditDB;
 import com.tethrnet.manage.db.SystemDB;
 import com.tethrnet.manage.db.UserDB;
+import com.tethrnet.manage.model.AuditExport;
+import com.tethrnet.manage.model.AuditMatch;
 import com.tethrnet.manage.model.HostSystem;
 import com.tethrnet.manage.model.SessionAudit;
 import com.tethrnet.manage.model.SortedSet;
 import com.tethrnet.manage.model.User;
+import com.tethrnet.manage.util.AuditExportUtil;
+import com.tethrnet.manage.util.AuditIndexUtil;
+import com.tethrnet.manage.util.SystemAuditUtil;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.struts2.convention.annotation.Action;
 import org.apache.struts2.convention.annotation.Result;
+import org.apache.struts2.interceptor.ServletRequestAware;
 import org.apache.struts2.interceptor.ServletResponseAware;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,17 +51,29 @@ import org.slf4j.LoggerFactory;
 /**
  * Action to audit sessions and terminal history
  */
-public class SessionAuditAction extends ActionSupport implements ServletResponseAware {
+public class SessionAuditAction extends ActionSupport implements ServletRequestAware, ServletResponseAware {
 
     private static Logger log = LoggerFactory.getLogger(SessionAuditAction.class);
 
+    //number of sessions listed per page
+    private static final int PAGE_SIZE = 50;
+
     SortedSet sortedSet=new SortedSet();
     Long sessionId;
     Integer instanceId;
+    Long outputOffset;
+    //line of the search match in the terminal output
+    Integer matchLine;
     SessionAudit sessionAudit;
+    HttpServletRequest servletRequest;
     HttpServletResponse servletResponse;
-    List<HostSystem> systemList= SystemDB.getSystemSet(new SortedSet(SystemDB.SORT_BY_NAME)).getItemList();
-    List<User> userList= UserDB.getUserSet(new SortedSet(SessionAuditDB.SORT_BY_USERNAME)).getItemList();
+    String exportId;
+    String searchQuery;
+    String filter;
+    List<AuditMatch> matchList;
+    //filter dropdowns, loaded when the page reads them
+    List<HostSystem> systemList;
+    List<User> userList;
 
     @Action(value = "/manage/viewSessions",
             results = {
@@ -61,6 +88,7 @@ public class SessionAuditAction extends ActionSupport implements ServletResponse
         }
 
 
+        sortedSet.setPageSize(PAGE_SIZE);
         sortedSet= SessionAuditDB.getSessions(sortedSet);
 
 
@@ -69,6 +97,144 @@ public class SessionAuditAction extends ActionSupport implements ServletResponse
     }
 
 
+    @Action(value = "/manage/searchSessions",
+            results = {
+                    @Result(name = "success", location = "/manage/view_sessions.jsp")
+            }
+    )
+    public String searchSessions() {
+
+        matchList = search();
+        return viewSessions();
+
+    }
+
+    @Action(value = "/manage/getJSONSearchResults")
+    public String getJSONSearchResults() {
+
+        String json = new Gson().toJson(search());
+        try {
+            servletResponse.getOutputStream().write(json.getBytes());
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+
+        return null;
+
+    }
+
+    /**
+     * searches audited terminal output using the user, system and date filters
+     *
+     * @return matches for the search query
+     */
+    private List<AuditMatch> search() {
+        List<AuditMatch> auditMatchList = null;
+        if (StringUtils.isNotEmpty(searchQuery)) {
+            SortedSet searchSet = new SortedSet();
+            searchSet.setFilterMap(sortedSet.getFilterMap());
+            auditMatchList = AuditIndexUtil.search(searchQuery, searchSet).getItemList();
+        }
+        return auditMatchList;
+    }
+
+    @Action(value = "/manage/startExport")
+    public String startExport() {
+
+        AuditExport auditExport = AuditExportUtil.startExport(AuthUtil.getUserId(servletRequest.getSession()), sortedSet.getFilterMap());
+        writeJSON(new Gson().toJson(auditExport));
+        return null;
+
+    }
+
+    @Action(value = "/manage/getJSONExportStatus")
+    public String getJSONExportStatus() {
+
+        writeJSON(new Gson().toJson(AuditExportUtil.getExport(AuthUtil.getUserId(servletRequest.getSession()), exportId)));
+        return null;
+
+    }
+
+    @Action(value = "/manage/downloadExport")
+    public String downloadExport() {
+
+        AuditExport auditExport = AuditExportUtil.getExport(AuthUtil.getUserId(servletRequest.getSession()), exportId);
+        File file = auditExport != null ? auditExport.getFile() : null;
+        if (file != null && file.exists()) {
+            InputStream in = null;
+            try {
+                setZipHeaders(auditExport.getStartTm());
+                servletResponse.setContentLength((int) Math.min(file.length(), Integer.MAX_VALUE));
+                in = new FileInputStream(file);
+                OutputStream out = servletResponse.getOutputStream();
+                byte[] buffer = new byte[8192];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+                out.flush();
+            } catch (Exception ex) {
+                log.error(ex.toString(), ex);
+            }
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (Exception ex) {
+                    log.error(ex.toString(), ex);
+                }
+            }
+        }
+        return null;
+
+    }
+
+    @Action(value = "/manage/streamExport")
+    public String streamExport() {
+
+        AuditExport auditExport = new AuditExport();
+        auditExport.setUserId(AuthUtil.getUserId(servletRequest.getSession()));
+        try {
+            setZipHeaders(auditExport.getStartTm());
+            AuditExportUtil.export(servletResponse.getOutputStream(), sortedSet, auditExport);
+            servletResponse.getOutputStream().flush();
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+        return null;
+
+    }
+
+    @Action(value = "/manage/getJSONSystemAuditStats")
+    public String getJSONSystemAuditStats() {
+
+        writeJSON(new Gson().toJson(SystemAuditUtil.getStats()));
+        return null;
+
+    }
+
+    /**
+     * sets the response headers for an export archive
+     *
+     * @param exportTm time of the export
+     */
+    private void setZipHeaders(Date exportTm) {
+        servletResponse.setContentType("application/zip");
+        servletResponse.setHeader("Content-Disposition", "attachment;filename=audit-export-" + new SimpleDateFormat("yyyyMMddHHmmss").format(exportTm) + ".zip");
+    }
+
+    /**
+     * writes json to the response
+     *
+     * @param json json string
+     */
+    private void writeJSON(String json) {
+        try {
+            servletResponse.getOutputStream().write(json.getBytes());
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+    }
+
     @Action(value = "/manage/getTermsForSession",
             results = {
                     @Result(name = "success", location = "/manage/view_terms.jsp")
@@ -77,6 +243,9 @@ public class SessionAuditAction extends ActionSupport implements ServletResponse
     public String getTermsForSession() {
 
         sessionAudit=SessionAuditDB.getSessionsTerminals(sessionId);
+        if (instanceId != null && outputOffset != null) {
+            matchLine = SessionAuditDB.getOutputLine(sessionId, instanceId, outputOffset);
+        }
         return SUCCESS;
 
     }
@@ -96,6 +265,9 @@ public class SessionAuditAction extends ActionSupport implements ServletResponse
     }
 
     public List<HostSystem> getSystemList() {
+        if (systemList == null) {
+            systemList = SystemDB.getSystemSet(new SortedSet(SystemDB.SORT_BY_NAME)).getItemList();
+        }
         return systemList;
     }
 
@@ -104,6 +276,9 @@ public class SessionAuditAction extends ActionSupport implements ServletResponse
     }
 
     public List<User> getUserList() {
+        if (userList == null) {
+            userList = UserDB.getUserSet(new SortedSet(SessionAuditDB.SORT_BY_USERNAME)).getItemList();
+        }
         return userList;
     }
 
@@ -135,6 +310,22 @@ public class SessionAuditAction extends ActionSupport implements ServletResponse
         this.sessionAudit = sessionAudit;
     }
 
+    public HttpServletRequest getServletRequest() {
+        return servletRequest;
+    }
+
+    public void setServletRequest(HttpServletRequest servletRequest) {
+        this.servletRequest = servletRequest;
+    }
+
+    public String getExportId() {
+        return exportId;
+    }
+
+    public void setExportId(String exportId) {
+        this.exportId = exportId;
+    }
+
     public HttpServletResponse getServletResponse() {
         return servletResponse;
     }
@@ -143,6 +334,30 @@ public class SessionAuditAction extends ActionSupport implements ServletResponse
         this.servletResponse = servletResponse;
     }
 
+    public String getSearchQuery() {
+        return searchQuery;
+    }
+
+    public void setSearchQuery(String searchQuery) {
+        this.searchQuery = searchQuery;
+    }
+
+    public String getFilter() {
+        return filter;
+    }
+
+    public void setFilter(String filter) {
+        this.filter = filter;
+    }
+
+    public List<AuditMatch> getMatchList() {
+        return matchList;
+    }
+
+    public void setMatchList(List<AuditMatch> matchList) {
+        this.matchList = matchList;
+    }
+
     public Integer getInstanceId() {
         return instanceId;
     }
@@ -150,4 +365,20 @@ public class SessionAuditAction extends ActionSupport implements ServletResponse
     public void setInstanceId(Integer instanceId) {
         this.instanceId = instanceId;
     }
+
+    public Long getOutputOffset() {
+        return outputOffset;
+    }
+
+    public void setOutputOffset(Long outputOffset) {
+        this.outputOffset = outputOffset;
+    }
+
+    public Integer getMatchLine() {
+        return matchLine;
+    }
+
+    public void setMatchLine(Integer matchLine) {
+        this.matchLine = matchLine;
+    }
 }
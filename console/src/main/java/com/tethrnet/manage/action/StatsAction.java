@@ -0,0 +1,81 @@
+package com.tethrnet.manage.action;
+
+import com.google.gson.Gson;
+import com.opensymphony.xwork2.ActionSupport;
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.manage.util.DSPool;
+import com.tethrnet.manage.util.EntityCache;
+import com.tethrnet.manage.util.InventoryUtil;
+import com.tethrnet.manage.util.KeyPoolUtil;
+
+import org.apache.struts2.convention.annotation.Action;
+import org.apache.struts2.interceptor.ServletResponseAware;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Action to report the state of the DB connection pools, entity caches, key pool and inventory provider
+ */
+public class StatsAction extends ActionSupport implements ServletResponseAware {
+
+    private static Logger log = LoggerFactory.getLogger(StatsAction.class);
+
+    HttpServletResponse servletResponse;
+
+
+    @Action(value = "/manage/getJSONPoolStats")
+    public String getJSONPoolStats() {
+
+        Map<String, Object> stats = new LinkedHashMap<String, Object>();
+        stats.put("pools", DSPool.getStats());
+
+        List<Map<String, Object>> cacheStatsList = new ArrayList<Map<String, Object>>();
+        for (EntityCache<?, ?> cache : EntityCache.getCacheList()) {
+            Map<String, Object> cacheStats = new LinkedHashMap<String, Object>();
+            cacheStats.put("name", cache.getName());
+            cacheStats.put("maxSize", cache.getMaxSize());
+            cacheStats.put("size", cache.getSize());
+            cacheStats.put("hits", cache.getHits());
+            cacheStats.put("misses", cache.getMisses());
+            cacheStats.put("evictions", cache.getEvictions());
+            cacheStats.put("expirations", cache.getExpirations());
+            cacheStatsList.add(cacheStats);
+        }
+        stats.put("caches", cacheStatsList);
+
+        Map<String, Object> keyPoolStats = new LinkedHashMap<String, Object>();
+        keyPoolStats.put("maxSize", KeyPoolUtil.getMaxSize());
+        keyPoolStats.put("size", KeyPoolUtil.getSize());
+        keyPoolStats.put("hits", KeyPoolUtil.getHits());
+        keyPoolStats.put("misses", KeyPoolUtil.getMisses());
+        stats.put("keyPool", keyPoolStats);
+
+        Map<String, Object> inventoryStats = new LinkedHashMap<String, Object>();
+        inventoryStats.put("module", AppConfig.getProperty("inventoryModule"));
+        inventoryStats.put("healthy", InventoryUtil.getInventory().isHealthy());
+        stats.put("inventory", inventoryStats);
+
+        servletResponse.setContentType("application/json");
+        try {
+            servletResponse.getOutputStream().write(new Gson().toJson(stats).getBytes());
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+        return null;
+    }
+
+
+    public HttpServletResponse getServletResponse() {
+        return servletResponse;
+    }
+
+    public void setServletResponse(HttpServletResponse servletResponse) {
+        this.servletResponse = servletResponse;
+    }
+}
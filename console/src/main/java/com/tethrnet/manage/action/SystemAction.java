@@ -16,18 +16,16 @@
 package com.tethrnet.manage.action;
 
 import com.opensymphony.xwork2.ActionSupport;
-import com.tethrnet.common.util.AppConfig;
 import com.tethrnet.common.util.AuthUtil;
 import com.tethrnet.manage.db.ProfileDB;
-import com.tethrnet.manage.db.ProfileSystemsDB;
 import com.tethrnet.manage.db.ScriptDB;
 import com.tethrnet.manage.db.SystemDB;
-import com.tethrnet.manage.db.UserDB;
 import com.tethrnet.manage.db.UserProfileDB;
 import com.tethrnet.manage.model.*;
-import com.tethrnet.manage.util.InventoryUtil;
+import com.tethrnet.manage.util.InventorySyncUtil;
 import com.tethrnet.manage.util.SSHUtil;
 
+import org.apache.commons.lang3.StringUtils;
 import org.apache.struts2.convention.annotation.Action;
 import org.apache.struts2.convention.annotation.Result;
 import org.apache.struts2.interceptor.ServletRequestAware;
@@ -35,6 +33,7 @@ import org.apache.struts2.interceptor.ServletRequestAware;
 import javax.servlet.http.HttpServletRequest;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * Action to manage systems
@@ -49,6 +48,9 @@ public class SystemAction extends ActionSupport implements ServletRequestAware {
     String passphrase;
     List<Profile> profileList= new ArrayList<>();
 
+    //max milliseconds to wait for the inventory when a user has no systems yet
+    static final long FIRST_SYNC_WAIT = 5000;
+
 
     @Action(value = "/admin/viewSystems",
             results = {
@@ -62,42 +64,17 @@ public class SystemAction extends ActionSupport implements ServletRequestAware {
             sortedSet = SystemDB.getSystemSet(sortedSet);
             profileList=ProfileDB.getAllProfiles();
         } else {
-            List<HostSystem> hosts = InventoryUtil.listHostSystem(UserDB.getUser(userId).getUsername());
-
+            //served from the DB, the systems are synced with the inventory in the background
+            Future<?> sync = InventorySyncUtil.requestSync(userId);
             sortedSet = SystemDB.getUserSystemSet(sortedSet, userId);
-            
-            List<HostSystem> oldhosts = sortedSet.getItemList();
-            
-            for (HostSystem host: oldhosts)
-            {
-            	SystemDB.deleteSystem(host.getId());
-            }
-            
-            List<Long> ids = new ArrayList<Long>();
-            
-            String key_path = AppConfig.getProperty("servicevm_keys");
-            
-            for(HostSystem host : hosts)
-            {
-            	host.setAuthorizedKeys(key_path);
-            	ids.add(SystemDB.insertSystem(host));
+            if (sync != null && sortedSet.getItemList().isEmpty()) {
+                //nothing to show yet, wait for the first sync
+                InventorySyncUtil.waitForSync(sync, FIRST_SYNC_WAIT);
+                sortedSet = SystemDB.getUserSystemSet(sortedSet, userId);
             }
-            
-            profileList =  UserProfileDB.getProfilesByUser(userId);
-           
-            User user = UserDB.getUser(userId);
-            for (Profile profile : profileList)
-            {
-            	if (profile.getNm().equals(user.getUsername() + "_" + "serviceVm"))
-            	{
-            		ProfileSystemsDB.setSystemsForProfile(profile.getId(), ids);
-            	}
-            }
-            
-            sortedSet = SystemDB.getUserSystemSet(sortedSet, userId);
-           
-         }
-        
+            profileList = UserProfileDB.getProfilesByUser(userId);
+        }
+
         return SUCCESS;
             
             
@@ -130,6 +107,7 @@ public class SystemAction extends ActionSupport implements ServletRequestAware {
 
         if (hostSystem.getId() != null) {
             SystemDB.updateSystem(hostSystem);
+            SystemDB.updateAuditPolicy(hostSystem.getId(), hostSystem.getAuditPolicy());
         } else {
             hostSystem.setId(SystemDB.insertSystem(hostSystem));
         }
@@ -186,6 +164,12 @@ public class SystemAction extends ActionSupport implements ServletRequestAware {
             addFieldError("hostSystem.authorizedKeys", "Required");
         }
 
+        if (hostSystem != null
+                && StringUtils.isNotEmpty(hostSystem.getAuditPolicy())
+                && !AuditPolicy.isValid(hostSystem.getAuditPolicy())) {
+            addFieldError("hostSystem.auditPolicy", "Invalid");
+        }
+
         if (!this.getFieldErrors().isEmpty()) {
 
             sortedSet = SystemDB.getSystemSet(sortedSet);
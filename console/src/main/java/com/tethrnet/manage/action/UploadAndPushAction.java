@@ -18,13 +18,13 @@ package com.tethrnet.manage.action;
 import com.opensymphony.xwork2.ActionSupport;
 import com.tethrnet.common.util.AuthUtil;
 import com.tethrnet.manage.db.SystemDB;
-import com.tethrnet.manage.db.SystemStatusDB;
 import com.tethrnet.manage.model.Auth;
 import com.tethrnet.manage.model.HostSystem;
 import com.tethrnet.manage.model.SchSession;
 import com.tethrnet.manage.model.UserSchSessions;
 import com.tethrnet.manage.util.DBUtils;
 import com.tethrnet.manage.util.SSHUtil;
+import com.tethrnet.manage.util.SystemStatusUtil;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.AgeFileFilter;
@@ -65,7 +65,7 @@ public class UploadAndPushAction extends ActionSupport implements ServletRequest
     public String setUpload() throws Exception {
         Long userId= AuthUtil.getUserId(servletRequest.getSession());
 
-        SystemStatusDB.setInitialSystemStatus(idList, userId, AuthUtil.getUserType(servletRequest.getSession()));
+        SystemStatusUtil.setInitialSystemStatus(idList, userId, false);
         return SUCCESS;
 
     }
@@ -84,9 +84,9 @@ public class UploadAndPushAction extends ActionSupport implements ServletRequest
             File destination = new File(UPLOAD_PATH, uploadFileName);
             FileUtils.copyFile(upload, destination);
 
-            pendingSystemStatus = SystemStatusDB.getNextPendingSystem(userId);
+            pendingSystemStatus = SystemStatusUtil.getNextPendingSystem(userId);
 
-            hostSystemList = SystemStatusDB.getAllSystemStatus(userId);
+            hostSystemList = SystemStatusUtil.getAllSystemStatus(userId);
 
 
 
@@ -110,7 +110,7 @@ public class UploadAndPushAction extends ActionSupport implements ServletRequest
         try {
 
             //get next pending system
-            pendingSystemStatus = SystemStatusDB.getNextPendingSystem(userId);
+            pendingSystemStatus = SystemStatusUtil.getNextPendingSystem(userId);
             if (pendingSystemStatus != null) {
                 //get session for system
                 SchSession session = null; 
@@ -128,9 +128,9 @@ public class UploadAndPushAction extends ActionSupport implements ServletRequest
                     currentSystemStatus = SSHUtil.pushUpload(pendingSystemStatus, session.getSession(), UPLOAD_PATH + "/" + uploadFileName, pushDir + "/" + uploadFileName);
 
                     //update system status
-                    SystemStatusDB.updateSystemStatus(currentSystemStatus, userId);
+                    SystemStatusUtil.updateSystemStatus(currentSystemStatus, userId);
 
-                    pendingSystemStatus = SystemStatusDB.getNextPendingSystem(userId);
+                    pendingSystemStatus = SystemStatusUtil.getNextPendingSystem(userId);
                 }
 
             }
@@ -158,7 +158,7 @@ public class UploadAndPushAction extends ActionSupport implements ServletRequest
                 }
 
             }
-            hostSystemList = SystemStatusDB.getAllSystemStatus(userId);
+            hostSystemList = SystemStatusUtil.getAllSystemStatus(userId);
 
 
         } catch (Exception e) {
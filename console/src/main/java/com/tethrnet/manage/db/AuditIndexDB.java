@@ -0,0 +1,363 @@
+package com.tethrnet.manage.db;
+
+import com.tethrnet.manage.model.AuditMatch;
+import com.tethrnet.manage.model.AuditTerm;
+import com.tethrnet.manage.model.HostSystem;
+import com.tethrnet.manage.model.SortedSet;
+import com.tethrnet.manage.model.TerminalLog;
+import com.tethrnet.manage.model.User;
+import com.tethrnet.manage.util.DBUtils;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * DAO for the inverted index over audited terminal output
+ */
+public class AuditIndexDB {
+
+    private static Logger log = LoggerFactory.getLogger(AuditIndexDB.class);
+
+    //max number of hits returned for a search
+    public static final int MAX_RESULTS = 500;
+
+
+    /**
+     * returns the id of the last terminal log entry that has been indexed and locks the index state
+     * until the transaction ends, so nodes sharing the audit DB index one at a time
+     *
+     * @param con DB connection, not in auto commit
+     * @return terminal log id
+     */
+    public static Long lockLastIndexedId(Connection con) throws Exception {
+
+        Long lastId = null;
+        PreparedStatement stmt = con.prepareStatement("select last_log_id from audit_index_state where id=1 for update");
+        ResultSet rs = stmt.executeQuery();
+        if (rs.next()) {
+            lastId = rs.getLong("last_log_id");
+        }
+        DBUtils.closeRs(rs);
+        DBUtils.closeStmt(stmt);
+
+        if (lastId == null) {
+            lastId = 0L;
+            setLastIndexedId(con, lastId);
+        }
+        return lastId;
+    }
+
+    /**
+     * returns the current time of the DB, terminal log times are set by the DB
+     *
+     * @param con DB connection
+     * @return DB time
+     */
+    public static Timestamp getDBTime(Connection con) throws Exception {
+
+        PreparedStatement stmt = con.prepareStatement("select CURRENT_TIMESTAMP");
+        ResultSet rs = stmt.executeQuery();
+        rs.next();
+        Timestamp dbTime = rs.getTimestamp(1);
+        DBUtils.closeRs(rs);
+        DBUtils.closeStmt(stmt);
+        return dbTime;
+    }
+
+    /**
+     * sets the id of the last terminal log entry that has been indexed
+     *
+     * @param con   DB connection
+     * @param lastId terminal log id
+     */
+    public static void setLastIndexedId(Connection con, Long lastId) throws Exception {
+
+        PreparedStatement stmt = con.prepareStatement("update audit_index_state set last_log_id=? where id=1");
+        stmt.setLong(1, lastId);
+        int updated = stmt.executeUpdate();
+        DBUtils.closeStmt(stmt);
+
+        if (updated == 0) {
+            stmt = con.prepareStatement("insert into audit_index_state (id, last_log_id) values (1, ?)");
+            stmt.setLong(1, lastId);
+            stmt.execute();
+            DBUtils.closeStmt(stmt);
+        }
+    }
+
+    /**
+     * returns terminal log entries that have not been indexed yet. Entries are returned up to the first
+     * one logged at or after the given time, as an entry with a lower id may not be committed yet.
+     *
+     * @param con    DB connection
+     * @param lastId id of the last indexed entry
+     * @param before entries are returned while logged before this time
+     * @param limit  max number of entries to return
+     * @return terminal log entries ordered by id
+     */
+    public static List<TerminalLog> getTerminalLogsAfter(Connection con, Long lastId, Timestamp before, int limit) {
+
+        List<TerminalLog> terminalLogList = new ArrayList<TerminalLog>();
+        try {
+            PreparedStatement stmt = con.prepareStatement("select id, session_id, instance_id, system_id, output, log_tm from terminal_log where id > ? order by id asc limit ?");
+            stmt.setLong(1, lastId);
+            stmt.setInt(2, limit);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                Timestamp logTm = rs.getTimestamp("log_tm");
+                if (logTm != null && !logTm.before(before)) {
+                    break;
+                }
+                TerminalLog terminalLog = new TerminalLog();
+                terminalLog.setId(rs.getLong("id"));
+                terminalLog.setSessionId(rs.getLong("session_id"));
+                terminalLog.setInstanceId(rs.getInt("instance_id"));
+                terminalLog.setSystemId(rs.getLong("system_id"));
+                terminalLog.setOutput(rs.getString("output"));
+                terminalLog.setLogTm(logTm);
+                terminalLogList.add(terminalLog);
+            }
+            DBUtils.closeRs(rs);
+            DBUtils.closeStmt(stmt);
+
+        } catch (Exception e) {
+            log.error(e.toString(), e);
+        }
+        return terminalLogList;
+    }
+
+    /**
+     * returns the next term position and the transcript offset of the output indexed so far for a
+     * terminal, used to resume indexing after a restart
+     *
+     * @param con        DB connection
+     * @param sessionId  session id
+     * @param instanceId terminal instance id
+     * @return next term position and number of characters indexed for the terminal
+     */
+    public static long[] getIndexPosition(Connection con, Long sessionId, Integer instanceId) {
+
+        long[] position = new long[]{0L, 0L};
+        try {
+            PreparedStatement stmt = con.prepareStatement("select next_pos, output_offset from terminal_log_index where session_id=? and instance_id=?");
+            stmt.setLong(1, sessionId);
+            stmt.setInt(2, instanceId);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                position[0] = rs.getLong("next_pos");
+                position[1] = rs.getLong("output_offset");
+            }
+            DBUtils.closeRs(rs);
+            DBUtils.closeStmt(stmt);
+
+        } catch (Exception e) {
+            log.error(e.toString(), e);
+        }
+        return position;
+    }
+
+    /**
+     * sets the next term position and transcript offset of a terminal, written in the same
+     * transaction as its terms
+     *
+     * @param con        DB connection
+     * @param sessionId  session id
+     * @param instanceId terminal instance id
+     * @param nextPos    next term position
+     * @param offset     number of characters indexed for the terminal
+     */
+    public static void setIndexPosition(Connection con, Long sessionId, Integer instanceId, long nextPos, long offset) throws Exception {
+
+        PreparedStatement stmt = con.prepareStatement("update terminal_log_index set next_pos=?, output_offset=? where session_id=? and instance_id=?");
+        stmt.setLong(1, nextPos);
+        stmt.setLong(2, offset);
+        stmt.setLong(3, sessionId);
+        stmt.setInt(4, instanceId);
+        int updated = stmt.executeUpdate();
+        DBUtils.closeStmt(stmt);
+
+        if (updated == 0) {
+            stmt = con.prepareStatement("insert into terminal_log_index (session_id, instance_id, next_pos, output_offset) values (?,?,?,?)");
+            stmt.setLong(1, sessionId);
+            stmt.setInt(2, instanceId);
+            stmt.setLong(3, nextPos);
+            stmt.setLong(4, offset);
+            stmt.execute();
+            DBUtils.closeStmt(stmt);
+        }
+    }
+
+    /**
+     * inserts terms into the index
+     *
+     * @param con      DB connection
+     * @param termList terms to insert
+     */
+    public static void insertTerms(Connection con, List<AuditTerm> termList) throws Exception {
+
+        if (termList.isEmpty()) {
+            return;
+        }
+        PreparedStatement stmt = con.prepareStatement("insert into terminal_log_term (term, session_id, instance_id, system_id, term_pos, output_offset, log_tm) values (?,?,?,?,?,?,?)");
+        for (AuditTerm auditTerm : termList) {
+            stmt.setString(1, auditTerm.getTerm());
+            stmt.setLong(2, auditTerm.getSessionId());
+            stmt.setInt(3, auditTerm.getInstanceId());
+            stmt.setLong(4, auditTerm.getSystemId());
+            stmt.setLong(5, auditTerm.getTermPos());
+            stmt.setLong(6, auditTerm.getOutputOffset());
+            stmt.setTimestamp(7, auditTerm.getLogTm() != null ? new Timestamp(auditTerm.getLogTm().getTime()) : null);
+            stmt.addBatch();
+        }
+        stmt.executeBatch();
+        DBUtils.closeStmt(stmt);
+    }
+
+    /**
+     * searches audited terminal output. A phrase requires the terms to be adjacent in the transcript,
+     * otherwise all terms must appear in the same terminal.
+     *
+     * @param termList  query terms
+     * @param phrase    true to match the terms as a phrase
+     * @param sortedSet object that defines the user, system and date filters
+     * @return sortedSet with list of matches
+     */
+    public static SortedSet search(List<String> termList, boolean phrase, SortedSet sortedSet) {
+
+        List<AuditMatch> matchList = new ArrayList<AuditMatch>();
+        if (termList == null || termList.isEmpty()) {
+            sortedSet.setItemList(matchList);
+            return sortedSet;
+        }
+
+        String userId = sortedSet.getFilterMap().get(SessionAuditDB.FILTER_BY_USER_ID);
+        String systemId = sortedSet.getFilterMap().get(SessionAuditDB.FILTER_BY_SYSTEM_ID);
+        Timestamp startTm = SessionAuditDB.getFilterTm(sortedSet, SessionAuditDB.FILTER_BY_START_DT);
+        Timestamp endTm = SessionAuditDB.getFilterTm(sortedSet, SessionAuditDB.FILTER_BY_END_DT);
+
+        String sql = "select t0.session_id, t0.instance_id, t0.system_id, t0.output_offset, t0.log_tm, s.user_id from terminal_log_term t0 ";
+        for (int i = 1; i < termList.size(); i++) {
+            if (phrase) {
+                sql += "join terminal_log_term t" + i + " on t" + i + ".session_id=t0.session_id and t" + i + ".instance_id=t0.instance_id and t" + i + ".term_pos=t0.term_pos+" + i + " and t" + i + ".term=? ";
+            }
+        }
+        sql += "join session_log s on s.id=t0.session_id where t0.term=? ";
+        if (!phrase) {
+            for (int i = 1; i < termList.size(); i++) {
+                sql += "and exists (select 1 from terminal_log_term t" + i + " where t" + i + ".session_id=t0.session_id and t" + i + ".instance_id=t0.instance_id and t" + i + ".term=?) ";
+            }
+        }
+        sql += StringUtils.isNotEmpty(userId) ? "and s.user_id=? " : "";
+        sql += StringUtils.isNotEmpty(systemId) ? "and t0.system_id=? " : "";
+        sql += startTm != null ? "and t0.log_tm >= ? " : "";
+        sql += endTm != null ? "and t0.log_tm < ? " : "";
+        sql += "order by t0.log_tm desc, t0.term_pos desc limit " + MAX_RESULTS;
+
+        Connection con = null;
+        try {
+            con = DBUtils.getAuditConn();
+            PreparedStatement stmt = con.prepareStatement(sql);
+            int i = 1;
+            if (phrase) {
+                for (int j = 1; j < termList.size(); j++) {
+                    stmt.setString(i++, termList.get(j));
+                }
+                stmt.setString(i++, termList.get(0));
+            } else {
+                stmt.setString(i++, termList.get(0));
+                for (int j = 1; j < termList.size(); j++) {
+                    stmt.setString(i++, termList.get(j));
+                }
+            }
+            if (StringUtils.isNotEmpty(userId)) {
+                stmt.setLong(i++, Long.valueOf(userId));
+            }
+            if (StringUtils.isNotEmpty(systemId)) {
+                stmt.setLong(i++, Long.valueOf(systemId));
+            }
+            if (startTm != null) {
+                stmt.setTimestamp(i++, startTm);
+            }
+            if (endTm != null) {
+                stmt.setTimestamp(i++, endTm);
+            }
+
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                AuditMatch auditMatch = new AuditMatch();
+                auditMatch.setSessionId(rs.getLong("session_id"));
+                auditMatch.setInstanceId(rs.getInt("instance_id"));
+                auditMatch.setSystemId(rs.getLong("system_id"));
+                auditMatch.setOutputOffset(rs.getLong("output_offset"));
+                auditMatch.setLogTm(rs.getTimestamp("log_tm"));
+                auditMatch.setUserId(rs.getLong("user_id"));
+                matchList.add(auditMatch);
+            }
+            DBUtils.closeRs(rs);
+            DBUtils.closeStmt(stmt);
+            DBUtils.closeConn(con);
+            con = null;
+
+            setUsersAndSystems(matchList);
+
+        } catch (Exception e) {
+            log.error(e.toString(), e);
+        }
+        DBUtils.closeConn(con);
+
+        sortedSet.setItemList(matchList);
+        return sortedSet;
+    }
+
+    /**
+     * sets user and system names for matches from the application DB
+     *
+     * @param matchList search matches
+     */
+    private static void setUsersAndSystems(List<AuditMatch> matchList) throws SQLException {
+        if (matchList.isEmpty()) {
+            return;
+        }
+        Set<Long> userIdSet = new HashSet<Long>();
+        Set<Long> systemIdSet = new HashSet<Long>();
+        for (AuditMatch auditMatch : matchList) {
+            userIdSet.add(auditMatch.getUserId());
+            systemIdSet.add(auditMatch.getSystemId());
+        }
+
+        Map<Long, User> userMap;
+        Map<Long, HostSystem> hostSystemMap;
+        Connection con = DBUtils.getConn();
+        try {
+            userMap = UserDB.getUserMap(con, userIdSet);
+            hostSystemMap = SystemDB.getSystemMap(con, systemIdSet);
+        } finally {
+            DBUtils.closeConn(con);
+        }
+
+        for (AuditMatch auditMatch : matchList) {
+            User user = userMap.get(auditMatch.getUserId());
+            if (user != null) {
+                auditMatch.setUsername(user.getUsername());
+            }
+            HostSystem hostSystem = hostSystemMap.get(auditMatch.getSystemId());
+            if (hostSystem != null) {
+                auditMatch.setDisplayNm(hostSystem.getDisplayNm());
+                auditMatch.setHost(hostSystem.getHost());
+            }
+        }
+    }
+
+}
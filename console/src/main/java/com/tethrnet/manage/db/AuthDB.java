@@ -18,12 +18,16 @@ package com.tethrnet.manage.db;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tethrnet.common.util.AppConfig;
 import com.tethrnet.manage.model.Auth;
 import com.tethrnet.manage.model.User;
 import com.tethrnet.manage.util.DBUtils;
@@ -37,6 +41,15 @@ public class AuthDB {
 
     private static Logger log = LoggerFactory.getLogger(AuthDB.class);
 
+    //milliseconds a validated auth token is trusted before it is checked against the DB again
+    private static final long TOKEN_CACHE_TTL = StringUtils.isNumeric(AppConfig.getProperty("authTokenCacheTtl")) ? Long.parseLong(AppConfig.getProperty("authTokenCacheTtl")) * 1000 : 30000;
+
+    //validated auth tokens by user id
+    private static final Map<Long, AuthorizedToken> tokenCache = new ConcurrentHashMap<Long, AuthorizedToken>();
+
+    //incremented on every revocation so a token read from the DB before a revocation is not cached
+    private static final AtomicLong tokenVersion = new AtomicLong();
+
     /**
      * auth user and return auth token if valid auth
      *
@@ -106,8 +119,14 @@ public class AuthDB {
         String authorized = null;
 
         Connection con = null;
-        if (authToken != null && !authToken.trim().equals("")) {
+        if (userId != null && authToken != null && !authToken.trim().equals("")) {
 
+            AuthorizedToken cached = tokenCache.get(userId);
+            if (cached != null && cached.authToken.equals(authToken) && System.currentTimeMillis() < cached.expireTm) {
+                return cached.userType;
+            }
+
+            long version = tokenVersion.get();
             try {
                 con = DBUtils.getConn();
                 PreparedStatement stmt = con.prepareStatement("select * from users where enabled=true and id=? and auth_token=?");
@@ -126,6 +145,14 @@ public class AuthDB {
             } catch (Exception e) {
                 log.error(e.toString(), e);
             }
+
+            if (authorized != null && TOKEN_CACHE_TTL > 0) {
+                tokenCache.put(userId, new AuthorizedToken(authToken, authorized, System.currentTimeMillis() + TOKEN_CACHE_TTL));
+                //drop the entry if the token was revoked while it was read
+                if (tokenVersion.get() != version) {
+                    tokenCache.remove(userId);
+                }
+            }
         }
         DBUtils.closeConn(con);
         return authorized;
@@ -133,6 +160,21 @@ public class AuthDB {
 
     }
 
+    /**
+     * removes a validated auth token so the next request is checked against the DB. Called when a
+     * user logs in or out, is changed or disabled, or changes password
+     *
+     * @param userId user id, null removes all tokens
+     */
+    public static void revokeToken(Long userId) {
+        tokenVersion.incrementAndGet();
+        if (userId != null) {
+            tokenCache.remove(userId);
+        } else {
+            tokenCache.clear();
+        }
+    }
+
     /**
      * updates the admin table based on auth id
      *
@@ -163,6 +205,7 @@ public class AuthDB {
         } catch (Exception e) {
             log.error(e.toString(), e);
         }
+        UserDB.invalidate(auth.getId());
 
 
     }
@@ -201,6 +244,10 @@ public class AuthDB {
             log.error(e.toString(), e);
         }
         DBUtils.closeConn(con);
+        //the user is found by auth token so the id is not known here
+        if (success) {
+            UserDB.invalidate(null);
+        }
         return success;
     }
 
@@ -220,9 +267,15 @@ public class AuthDB {
             stmt.setString(1, authToken);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
-                Long userId = rs.getLong("id");
-                
-                user=UserDB.getUser(con, userId);
+                user = new User();
+                user.setId(rs.getLong("id"));
+                user.setEmail(rs.getString("email"));
+                user.setUsername(rs.getString("username"));
+                user.setPassword(rs.getString("password"));
+                user.setAuthType(rs.getString("auth_type"));
+                user.setUserType(rs.getString("user_type"));
+                user.setSalt(rs.getString("salt"));
+                user.setProfileList(UserProfileDB.getProfilesByUser(con, user.getId()));
             }
             DBUtils.closeRs(rs);
             DBUtils.closeStmt(stmt);
@@ -270,7 +323,7 @@ public class AuthDB {
         Connection con = null;
         try {
             con = DBUtils.getConn();
-            PreparedStatement stmt = con.prepareStatement("select * from users where id like ?");
+            PreparedStatement stmt = con.prepareStatement("select * from users where id=?");
             stmt.setLong(1, userId);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
@@ -399,4 +452,20 @@ public class AuthDB {
 
         return user;
     }
+
+    /**
+     * auth token that has been checked against the DB
+     */
+    private static class AuthorizedToken {
+        final String authToken;
+        final String userType;
+        final long expireTm;
+
+        AuthorizedToken(String authToken, String userType, long expireTm) {
+            this.authToken = authToken;
+            this.userType = userType;
+            this.expireTm = expireTm;
+        }
+    }
+
 }
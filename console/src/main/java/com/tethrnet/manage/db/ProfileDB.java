@@ -15,9 +15,13 @@
  */
 package com.tethrnet.manage.db;
 
+import com.tethrnet.manage.model.HostSystem;
 import com.tethrnet.manage.model.Profile;
 import com.tethrnet.manage.model.SortedSet;
 import com.tethrnet.manage.util.DBUtils;
+import com.tethrnet.manage.util.EntityCache;
+
+import org.apache.commons.lang3.StringUtils;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -37,6 +41,14 @@ public class ProfileDB {
 
     public static final String SORT_BY_PROFILE_NM="nm";
 
+    //profiles by id without their system list, which is cached by ProfileSystemsDB
+    static final EntityCache<Long, Profile> profileCache = new EntityCache<Long, Profile>("profile", EntityCache.DEFAULT_SIZE) {
+        @Override
+        protected Profile copy(Profile profile) {
+            return copyProfile(profile);
+        }
+    };
+
     /**
      * method to do order by based on the sorted set object for profiles
      * @return list of profiles
@@ -61,7 +73,8 @@ public class ProfileDB {
                 Profile profile = new Profile();
                 profile.setId(rs.getLong("id"));
                 profile.setNm(rs.getString("nm"));
-                profile.setDesc(rs.getString("desc"));
+                profile.setDesc(rs.getString("description"));
+                profile.setAuditPolicy(rs.getString("audit_policy"));
                 profileList.add(profile);
 
             }
@@ -96,7 +109,8 @@ public class ProfileDB {
                 Profile profile = new Profile();
                 profile.setId(rs.getLong("id"));
                 profile.setNm(rs.getString("nm"));
-                profile.setDesc(rs.getString("desc"));
+                profile.setDesc(rs.getString("description"));
+                profile.setAuditPolicy(rs.getString("audit_policy"));
                 profileList.add(profile);
 
             }
@@ -119,7 +133,15 @@ public class ProfileDB {
      */
     public static Profile getProfile(Long profileId) {
 
-        Profile profile = null;
+        Profile profile = profileCache.get(profileId);
+        if (profile != null) {
+            List<HostSystem> hostSystemList = ProfileSystemsDB.profileSystemsCache.get(profileId);
+            if (hostSystemList != null) {
+                profile.setHostSystemList(hostSystemList);
+                return profile;
+            }
+        }
+
         Connection con = null;
         try {
             con = DBUtils.getConn();
@@ -141,22 +163,29 @@ public class ProfileDB {
      */
     public static Profile getProfile(Connection con, Long profileId) {
 
-        Profile profile = null;
+        long version = profileCache.getVersion();
+        Profile profile = profileCache.get(profileId);
         try {
-            PreparedStatement stmt = con.prepareStatement("select * from profiles where id=?");
-            stmt.setLong(1, profileId);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                profile = new Profile();
-                profile.setId(rs.getLong("id"));
-                profile.setNm(rs.getString("nm"));
-                profile.setDesc(rs.getString("desc"));
+            if (profile == null) {
+                PreparedStatement stmt = con.prepareStatement("select * from profiles where id=?");
+                stmt.setLong(1, profileId);
+                ResultSet rs = stmt.executeQuery();
+
+                while (rs.next()) {
+                    profile = new Profile();
+                    profile.setId(rs.getLong("id"));
+                    profile.setNm(rs.getString("nm"));
+                    profile.setDesc(rs.getString("description"));
+                    profile.setAuditPolicy(rs.getString("audit_policy"));
+                }
+                DBUtils.closeRs(rs);
+                DBUtils.closeStmt(stmt);
+
+                profileCache.put(profileId, profile, version);
+            }
+            if (profile != null) {
                 profile.setHostSystemList(ProfileSystemsDB.getSystemsByProfile(con, profileId));
-
             }
-            DBUtils.closeRs(rs);
-            DBUtils.closeStmt(stmt);
 
         } catch (Exception e) {
             log.error(e.toString(), e);
@@ -165,6 +194,21 @@ public class ProfileDB {
         return profile;
     }
 
+    /**
+     * returns a copy of the DB fields of a profile, the system list is not copied
+     *
+     * @param profile profile
+     * @return copy of the profile
+     */
+    static Profile copyProfile(Profile profile) {
+        Profile copy = new Profile();
+        copy.setId(profile.getId());
+        copy.setNm(profile.getNm());
+        copy.setDesc(profile.getDesc());
+        copy.setAuditPolicy(profile.getAuditPolicy());
+        return copy;
+    }
+
     /**
      * inserts new profile
      *
@@ -176,9 +220,10 @@ public class ProfileDB {
         Connection con = null;
         try {
             con = DBUtils.getConn();
-            PreparedStatement stmt = con.prepareStatement("insert into profiles (nm, desc) values (?,?)");
+            PreparedStatement stmt = con.prepareStatement("insert into profiles (nm, description, audit_policy) values (?,?,?)");
             stmt.setString(1, profile.getNm());
             stmt.setString(2, profile.getDesc());
+            stmt.setString(3, StringUtils.isNotEmpty(profile.getAuditPolicy()) ? profile.getAuditPolicy() : null);
             stmt.execute();
             DBUtils.closeStmt(stmt);
 
@@ -202,7 +247,8 @@ public class ProfileDB {
     			Profile profile = new Profile();
     			profile.setId(rs.getLong("id"));
     			profile.setNm(rs.getString("nm"));
-    			profile.setDesc(rs.getString("desc"));
+    			profile.setDesc(rs.getString("description"));
+    			profile.setAuditPolicy(rs.getString("audit_policy"));
     			return profile;
     		}
     		DBUtils.closeRs(rs);
@@ -229,10 +275,11 @@ public class ProfileDB {
         Connection con = null;
         try {
             con = DBUtils.getConn();
-            PreparedStatement stmt = con.prepareStatement("update profiles set nm=?, desc=? where id=?");
+            PreparedStatement stmt = con.prepareStatement("update profiles set nm=?, description=?, audit_policy=? where id=?");
             stmt.setString(1, profile.getNm());
             stmt.setString(2, profile.getDesc());
-            stmt.setLong(3, profile.getId());
+            stmt.setString(3, StringUtils.isNotEmpty(profile.getAuditPolicy()) ? profile.getAuditPolicy() : null);
+            stmt.setLong(4, profile.getId());
             stmt.execute();
             DBUtils.closeStmt(stmt);
 
@@ -240,6 +287,8 @@ public class ProfileDB {
             log.error(e.toString(), e);
         }
         DBUtils.closeConn(con);
+        profileCache.remove(profile.getId());
+        UserProfileDB.userProfilesCache.clear();
 
     }
 
@@ -263,6 +312,9 @@ public class ProfileDB {
             log.error(e.toString(), e);
         }
         DBUtils.closeConn(con);
+        profileCache.remove(profileId);
+        ProfileSystemsDB.profileSystemsCache.remove(profileId);
+        UserProfileDB.userProfilesCache.clear();
 
     }
 
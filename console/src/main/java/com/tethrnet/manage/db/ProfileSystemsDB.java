@@ -17,12 +17,17 @@ package com.tethrnet.manage.db;
 
 import com.tethrnet.manage.model.HostSystem;
 import com.tethrnet.manage.util.DBUtils;
+import com.tethrnet.manage.util.EntityCache;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,10 +37,22 @@ import org.slf4j.LoggerFactory;
 public class ProfileSystemsDB {
 
     private static Logger log = LoggerFactory.getLogger(ProfileSystemsDB.class);
+
+	//systems by profile id, cleared when a system is changed
+	static final EntityCache<Long, List<HostSystem>> profileSystemsCache = new EntityCache<Long, List<HostSystem>>("profile systems", EntityCache.DEFAULT_SIZE) {
+		@Override
+		protected List<HostSystem> copy(List<HostSystem> hostSystemList) {
+			List<HostSystem> copyList = new ArrayList<HostSystem>(hostSystemList.size());
+			for (HostSystem hostSystem : hostSystemList) {
+				copyList.add(SystemDB.copySystem(hostSystem));
+			}
+			return copyList;
+		}
+	};
 	
 	
 	/**
-	 * sets host systems for profile
+	 * sets host systems for profile, only the mappings that changed are written
 	 * 
 	 * @param profileId profile id
 	 * @param systemIdList list of host system ids
@@ -48,26 +65,74 @@ public class ProfileSystemsDB {
 		try {
 
 			con = DBUtils.getConn();
-			PreparedStatement stmt = con.prepareStatement("delete from system_map where profile_id=?");
-			stmt.setLong(1, profileId);
-			stmt.execute();
-			DBUtils.closeStmt(stmt);
-
-
-			for(Long systemId : systemIdList) {
-				stmt = con.prepareStatement("insert into system_map (profile_id, system_id) values (?,?)");
-				stmt.setLong(1, profileId);
-				stmt.setLong(2, systemId);
-				stmt.execute();
-				DBUtils.closeStmt(stmt);
+			boolean autoCommit = con.getAutoCommit();
+			con.setAutoCommit(false);
+			try {
+				setSystemsForProfile(con, profileId, systemIdList);
+				con.commit();
+			} catch (Exception ex) {
+				con.rollback();
+				throw ex;
+			} finally {
+				con.setAutoCommit(autoCommit);
 			}
 
 		} catch (Exception e) {
 			log.error(e.toString(), e);
 		}
 		DBUtils.closeConn(con);
+		profileSystemsCache.remove(profileId);
+
+
+	}
+
+	/**
+	 * sets host systems for profile by deleting the systems that were removed and inserting the
+	 * systems that were added, each with a single batch. The caller invalidates the profile once committed
+	 *
+	 * @param con          DB connection
+	 * @param profileId    profile id
+	 * @param systemIdList list of host system ids
+	 */
+	public static void setSystemsForProfile(Connection con, Long profileId, List<Long> systemIdList) throws SQLException {
+
+		Set<Long> currentIdSet = new HashSet<Long>(getSystemIdsByProfile(con, profileId));
+		Set<Long> newIdSet = new LinkedHashSet<Long>(systemIdList);
+
+		List<Long> removeIdList = new ArrayList<Long>(currentIdSet);
+		removeIdList.removeAll(newIdSet);
+		List<Long> addIdList = new ArrayList<Long>(newIdSet);
+		addIdList.removeAll(currentIdSet);
 
+		if (!removeIdList.isEmpty()) {
+			PreparedStatement stmt = con.prepareStatement("delete from system_map where profile_id=? and system_id=?");
+			for (Long systemId : removeIdList) {
+				stmt.setLong(1, profileId);
+				stmt.setLong(2, systemId);
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+			DBUtils.closeStmt(stmt);
+		}
+		if (!addIdList.isEmpty()) {
+			PreparedStatement stmt = con.prepareStatement("insert into system_map (profile_id, system_id) values (?,?)");
+			for (Long systemId : addIdList) {
+				stmt.setLong(1, profileId);
+				stmt.setLong(2, systemId);
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+			DBUtils.closeStmt(stmt);
+		}
+	}
 
+	/**
+	 * removes the systems of a profile from the cache after they were set with a caller's connection
+	 *
+	 * @param profileId profile id
+	 */
+	public static void invalidate(Long profileId) {
+		profileSystemsCache.remove(profileId);
 	}
 
 	/**
@@ -79,8 +144,12 @@ public class ProfileSystemsDB {
 	 */
 	public static List<HostSystem> getSystemsByProfile(Connection con, Long profileId) {
 
-		List<HostSystem> hostSystemList = new ArrayList<HostSystem>();
-
+		long version = profileSystemsCache.getVersion();
+		List<HostSystem> hostSystemList = profileSystemsCache.get(profileId);
+		if (hostSystemList != null) {
+			return hostSystemList;
+		}
+		hostSystemList = new ArrayList<HostSystem>();
 
 		try {
 			PreparedStatement stmt = con.prepareStatement("select * from  system s, system_map m where s.id=m.system_id and m.profile_id=? order by display_nm asc");
@@ -91,7 +160,7 @@ public class ProfileSystemsDB {
 				HostSystem hostSystem = new HostSystem();
 				hostSystem.setId(rs.getLong("id"));
 				hostSystem.setDisplayNm(rs.getString("display_nm"));
-				hostSystem.setUser(rs.getString("user"));
+				hostSystem.setUser(rs.getString("user_nm"));
 				hostSystem.setHost(rs.getString("host"));
 				hostSystem.setPort(rs.getInt("port"));
 				hostSystem.setAuthorizedKeys(rs.getString("authorized_keys"));
@@ -100,6 +169,8 @@ public class ProfileSystemsDB {
 			DBUtils.closeRs(rs);
 			DBUtils.closeStmt(stmt);
 
+			profileSystemsCache.put(profileId, hostSystemList, version);
+
 		} catch (Exception e) {
 			log.error(e.toString(), e);
 		}
@@ -115,7 +186,11 @@ public class ProfileSystemsDB {
 	 */
 	public static List<HostSystem> getSystemsByProfile(Long profileId) {
 
-		List<HostSystem> hostSystemList = new ArrayList<HostSystem>();
+		List<HostSystem> hostSystemList = profileSystemsCache.get(profileId);
+		if (hostSystemList != null) {
+			return hostSystemList;
+		}
+		hostSystemList = new ArrayList<HostSystem>();
 
 		Connection con = null;
 
@@ -15,6 +15,7 @@
  */
 package com.tethrnet.manage.db;
 
+import com.tethrnet.manage.model.Profile;
 import com.tethrnet.manage.model.PublicKey;
 import com.tethrnet.manage.model.SortedSet;
 import com.tethrnet.manage.util.DBUtils;
@@ -25,6 +26,7 @@ import org.apache.commons.lang3.StringUtils;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -169,6 +171,24 @@ public class PublicKeyDB {
     }
 
 
+    /**
+     * returns the profile of a key row joined with profile_nm and profile_desc
+     *
+     * @param rs result set positioned on a key row
+     * @return profile or null if the key is not assigned to a profile
+     */
+    private static Profile getProfile(ResultSet rs) throws SQLException {
+        Long profileId = rs.getLong("profile_id");
+        if (rs.wasNull()) {
+            return null;
+        }
+        Profile profile = new Profile();
+        profile.setId(profileId);
+        profile.setNm(rs.getString("profile_nm"));
+        profile.setDesc(rs.getString("profile_desc"));
+        return profile;
+    }
+
     /**
      * returns public keys based on sort order defined
      *
@@ -184,7 +204,7 @@ public class PublicKeyDB {
         if (sortedSet.getOrderByField() != null && !sortedSet.getOrderByField().trim().equals("")) {
             orderBy = " order by " + sortedSet.getOrderByField() + " " + sortedSet.getOrderByDirection();
         }
-        String sql = "select p.*, u.username from public_keys p, users u where u.id=p.user_id  ";
+        String sql = "select p.*, u.username, pr.nm as profile_nm, pr.description as profile_desc from public_keys p inner join users u on u.id=p.user_id left join profiles pr on pr.id=p.profile_id where 1=1 ";
 
         sql+= StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_USER_ID)) ? " and p.user_id=? " : "";
         sql+= StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_PROFILE_ID)) ? " and p.profile_id=? " : "";
@@ -213,7 +233,7 @@ public class PublicKeyDB {
                 publicKey.setId(rs.getLong("id"));
                 publicKey.setKeyNm(rs.getString("key_nm"));
                 publicKey.setPublicKey(rs.getString("public_key"));
-                publicKey.setProfile(ProfileDB.getProfile(con, rs.getLong("profile_id")));
+                publicKey.setProfile(getProfile(rs));
                 publicKey.setType(SSHUtil.getKeyType(publicKey.getPublicKey()));
                 publicKey.setFingerprint(SSHUtil.getFingerprint(publicKey.getPublicKey()));
                 publicKey.setCreateDt(rs.getTimestamp("create_dt"));
@@ -251,7 +271,7 @@ public class PublicKeyDB {
         if (sortedSet.getOrderByField() != null && !sortedSet.getOrderByField().trim().equals("")) {
             orderBy = "order by " + sortedSet.getOrderByField() + " " + sortedSet.getOrderByDirection();
         }
-        String sql = "select * from public_keys where user_id = ? and enabled=true " + orderBy;
+        String sql = "select p.*, pr.nm as profile_nm, pr.description as profile_desc from public_keys p left join profiles pr on pr.id=p.profile_id where p.user_id = ? and p.enabled=true " + orderBy;
 
         Connection con = null;
         try {
@@ -265,7 +285,7 @@ public class PublicKeyDB {
                 publicKey.setId(rs.getLong("id"));
                 publicKey.setKeyNm(rs.getString("key_nm"));
                 publicKey.setPublicKey(rs.getString("public_key"));
-                publicKey.setProfile(ProfileDB.getProfile(con, rs.getLong("profile_id")));
+                publicKey.setProfile(getProfile(rs));
                 publicKey.setType(SSHUtil.getKeyType(publicKey.getPublicKey()));
                 publicKey.setFingerprint(SSHUtil.getFingerprint(publicKey.getPublicKey()));
                 publicKey.setCreateDt(rs.getTimestamp("create_dt"));
@@ -359,7 +379,7 @@ public class PublicKeyDB {
             stmt.setString(3, SSHUtil.getFingerprint(publicKey.getPublicKey()));
             stmt.setString(4, publicKey.getPublicKey().trim());
             if (publicKey.getProfile() == null || publicKey.getProfile().getId() == null) {
-                stmt.setNull(5, Types.NULL);
+                stmt.setNull(5, Types.INTEGER);
             } else {
                 stmt.setLong(5, publicKey.getProfile().getId());
             }
@@ -376,6 +396,67 @@ public class PublicKeyDB {
     }
 
 
+    /**
+     * inserts public keys with a single batch
+     *
+     * @param con           DB connection
+     * @param publicKeyList key objects
+     */
+    public static void insertPublicKeys(Connection con, List<PublicKey> publicKeyList) throws SQLException {
+
+        if (publicKeyList.isEmpty()) {
+            return;
+        }
+        PreparedStatement stmt = con.prepareStatement("insert into public_keys(key_nm, type, fingerprint, public_key, profile_id, user_id) values (?,?,?,?,?,?)");
+        try {
+            for (PublicKey publicKey : publicKeyList) {
+                stmt.setString(1, publicKey.getKeyNm());
+                stmt.setString(2, SSHUtil.getKeyType(publicKey.getPublicKey()));
+                stmt.setString(3, SSHUtil.getFingerprint(publicKey.getPublicKey()));
+                stmt.setString(4, publicKey.getPublicKey().trim());
+                if (publicKey.getProfile() == null || publicKey.getProfile().getId() == null) {
+                    stmt.setNull(5, Types.INTEGER);
+                } else {
+                    stmt.setLong(5, publicKey.getProfile().getId());
+                }
+                stmt.setLong(6, publicKey.getUserId());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        } finally {
+            DBUtils.closeStmt(stmt);
+        }
+
+    }
+
+    /**
+     * returns the user, fingerprint and enabled flag of every key with a single query
+     *
+     * @param con DB connection
+     * @return key list without the key text
+     */
+    public static List<PublicKey> getKeyFingerprints(Connection con) {
+
+        List<PublicKey> publicKeyList = new ArrayList<PublicKey>();
+        try {
+            PreparedStatement stmt = con.prepareStatement("select user_id, fingerprint, enabled from public_keys");
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                PublicKey publicKey = new PublicKey();
+                publicKey.setUserId(rs.getLong("user_id"));
+                publicKey.setFingerprint(rs.getString("fingerprint"));
+                publicKey.setEnabled(rs.getBoolean("enabled"));
+                publicKeyList.add(publicKey);
+            }
+            DBUtils.closeRs(rs);
+            DBUtils.closeStmt(stmt);
+
+        } catch (Exception e) {
+            log.error(e.toString(), e);
+        }
+        return publicKeyList;
+    }
+
     /**
      * updates existing public key
      *
@@ -393,7 +474,7 @@ public class PublicKeyDB {
             stmt.setString(3, SSHUtil.getFingerprint(publicKey.getPublicKey()));
             stmt.setString(4, publicKey.getPublicKey().trim());
             if (publicKey.getProfile() == null || publicKey.getProfile().getId() == null) {
-                stmt.setNull(5, Types.NULL);
+                stmt.setNull(5, Types.INTEGER);
             } else {
                 stmt.setLong(5, publicKey.getProfile().getId());
             }
@@ -540,18 +621,19 @@ public class PublicKeyDB {
         try {
           con = DBUtils.getConn();
 
-          stmt = con.prepareStatement("select * from public_keys where user_id=? and fingerprint like ? and profile_id is ? and id is not ?");
-          stmt.setLong(1, userId);
-          stmt.setString(2, SSHUtil.getFingerprint(publicKey.getPublicKey()));
-          if(publicKey.getProfile()!=null && publicKey.getProfile().getId()!=null){
-            stmt.setLong(3, publicKey.getProfile().getId());
-          } else {
-            stmt.setNull(3,Types.NULL);
+          boolean hasProfile = publicKey.getProfile() != null && publicKey.getProfile().getId() != null;
+          String sql = "select * from public_keys where user_id=? and fingerprint like ?";
+          sql += hasProfile ? " and profile_id=?" : " and profile_id is null";
+          sql += publicKey.getId() != null ? " and id<>?" : "";
+          stmt = con.prepareStatement(sql);
+          int i = 1;
+          stmt.setLong(i++, userId);
+          stmt.setString(i++, SSHUtil.getFingerprint(publicKey.getPublicKey()));
+          if (hasProfile) {
+            stmt.setLong(i++, publicKey.getProfile().getId());
           }
-          if(publicKey.getId()!=null ){
-            stmt.setLong(4, publicKey.getId());
-          } else {
-            stmt.setNull(4,Types.NULL);
+          if (publicKey.getId() != null) {
+            stmt.setLong(i, publicKey.getId());
           }
 
           ResultSet rs = stmt.executeQuery();
@@ -583,7 +665,7 @@ public class PublicKeyDB {
         Map<String, PublicKey> keyMap = new LinkedHashMap();
         try {
             con = DBUtils.getConn();
-            PreparedStatement stmt = con.prepareStatement("select * from public_keys where user_id=? and enabled=true order by key_nm asc");
+            PreparedStatement stmt = con.prepareStatement("select p.*, pr.nm as profile_nm, pr.description as profile_desc from public_keys p left join profiles pr on pr.id=p.profile_id where p.user_id=? and p.enabled=true order by p.key_nm asc");
             stmt.setLong(1, userId);
             ResultSet rs = stmt.executeQuery();
             while(rs.next()){
@@ -592,7 +674,7 @@ public class PublicKeyDB {
                 publicKey.setId(rs.getLong("id"));
                 publicKey.setKeyNm(rs.getString("key_nm"));
                 publicKey.setPublicKey(rs.getString("public_key"));
-                publicKey.setProfile(ProfileDB.getProfile(con, rs.getLong("profile_id")));
+                publicKey.setProfile(getProfile(rs));
                 publicKey.setType(SSHUtil.getKeyType(publicKey.getPublicKey()));
                 publicKey.setFingerprint(SSHUtil.getFingerprint(publicKey.getPublicKey()));
                 publicKey.setCreateDt(rs.getTimestamp("create_dt"));
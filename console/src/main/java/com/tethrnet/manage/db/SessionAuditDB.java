@@ -21,6 +21,9 @@ import com.tethrnet.manage.model.HostSystem;
 import com.tethrnet.manage.model.SessionAudit;
 import com.tethrnet.manage.model.SessionOutput;
 import com.tethrnet.manage.model.SortedSet;
+import com.tethrnet.manage.model.TerminalAudit;
+import com.tethrnet.manage.model.TerminalLog;
+import com.tethrnet.manage.model.User;
 import com.tethrnet.manage.util.DBUtils;
 
 import org.apache.commons.lang3.StringUtils;
@@ -28,11 +31,18 @@ import org.apache.commons.lang3.StringUtils;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +55,8 @@ public class SessionAuditDB {
 
     public static final String FILTER_BY_USER_ID = "user_id";
     public static final String FILTER_BY_SYSTEM_ID = "system_id";
+    public static final String FILTER_BY_START_DT = "start_dt";
+    public static final String FILTER_BY_END_DT = "end_dt";
     
     public static final String SORT_BY_FIRST_NM = "first_nm";
     public static final String SORT_BY_LAST_NM = "last_nm";
@@ -52,42 +64,290 @@ public class SessionAuditDB {
     public static final String SORT_BY_USERNAME = "username";
     public static final String SORT_BY_SESSION_TM = "session_tm";
 
+    //session counts above this are shown as an estimate
+    public static final long MAX_SESSION_COUNT = 1000;
+
 
     /**
-     * deletes audit history for users if after time set in properties file
+     * returns the timestamp for a date filter (yyyy-mm-dd), end dates include the whole day
      *
-     * @param con DB connection
+     * @param sortedSet object that defines the filters
+     * @param filter    date filter name
+     * @return timestamp or null if not set
      */
-    public static void deleteAuditHistory(Connection con) {
-
-        try {
+    static Timestamp getFilterTm(SortedSet sortedSet, String filter) {
+        Timestamp filterTm = null;
+        String value = sortedSet.getFilterMap().get(filter);
+        if (StringUtils.isNotEmpty(value)) {
+            try {
+                Calendar cal = Calendar.getInstance();
+                cal.setTime(java.sql.Date.valueOf(value.trim()));
+                if (FILTER_BY_END_DT.equals(filter)) {
+                    cal.add(Calendar.DATE, 1);
+                }
+                filterTm = new Timestamp(cal.getTimeInMillis());
+            } catch (IllegalArgumentException ex) {
+                log.warn("Invalid date filter " + filter + ": " + value);
+            }
+        }
+        return filterTm;
+    }
 
-            //delete logs with no terminal entries
-            PreparedStatement stmt = con.prepareStatement("delete from session_log where id not in (select session_id from terminal_log)");
-            stmt.execute();
+    /**
+     * deletes audit history older than the retention period set in the properties file. Sessions are
+     * removed one day at a time, oldest first, in batches. Terminal output and search terms of a batch are
+     * deleted before its sessions with statements of at most batchSize rows each, and no connection is
+     * held while waiting between statements.
+     *
+     * @param batchSize max number of rows removed per statement
+     * @param pause     milliseconds to wait after each batchSize rows
+     * @return number of sessions deleted
+     */
+    public static int deleteAuditHistory(int batchSize, long pause) {
 
+        int deleted = 0;
+        Purge purge = new Purge(batchSize, pause);
+        try {
 
             //take today's date and subtract how many days to keep history
             Calendar cal = Calendar.getInstance();
             cal.add(Calendar.DATE, (-1 * Integer.parseInt(AppConfig.getProperty("deleteAuditLogAfter")))); //subtract
-            java.sql.Date date = new java.sql.Date(cal.getTimeInMillis());
+            Timestamp cutoffTm = new Timestamp(cal.getTimeInMillis());
+
+            Timestamp windowTm = null;
+            Connection con = DBUtils.getAuditConn();
+            try {
+                PreparedStatement stmt = con.prepareStatement("select min(session_tm) from session_log");
+                ResultSet rs = stmt.executeQuery();
+                if (rs.next()) {
+                    windowTm = rs.getTimestamp(1);
+                }
+                DBUtils.closeRs(rs);
+                DBUtils.closeStmt(stmt);
+            } finally {
+                DBUtils.closeConn(con);
+            }
 
+            while (windowTm != null && windowTm.before(cutoffTm)) {
+                cal.setTime(windowTm);
+                cal.add(Calendar.DATE, 1);
+                windowTm = cal.getTime().before(cutoffTm) ? new Timestamp(cal.getTimeInMillis()) : cutoffTm;
 
-            stmt = con.prepareStatement("delete from session_log where session_tm < ?");
-            stmt.setDate(1, date);
-            stmt.execute();
+                List<Long> sessionIdList;
+                do {
+                    sessionIdList = purge.select("select id from session_log where session_tm < ? order by id limit ?", windowTm);
+                    deleted += purge.deleteSessions(sessionIdList);
+                } while (sessionIdList.size() >= batchSize);
+            }
 
-            DBUtils.closeStmt(stmt);
+            //delete logs with no terminal entries, recent sessions may still be waiting on output
+            cal = Calendar.getInstance();
+            cal.add(Calendar.DATE, -1);
+            List<Long> sessionIdList;
+            do {
+                sessionIdList = purge.select("select s.id from session_log s where s.session_tm < ? and not exists (select 1 from terminal_log t where t.session_id=s.id) and not exists (select 1 from terminal_log_meta m where m.session_id=s.id) order by s.id limit ?", new Timestamp(cal.getTimeInMillis()));
+                deleted += purge.deleteSessions(sessionIdList);
+            } while (sessionIdList.size() >= batchSize);
 
         } catch (Exception e) {
             log.error(e.toString(), e);
         }
+        return deleted;
+
+    }
+
+    /**
+     * bounded delete statements of an audit purge, each on a connection of its own
+     */
+    private static class Purge {
+
+        private final int batchSize;
+        private final long pause;
+        //rows deleted since the last pause
+        private int pending = 0;
+
+        Purge(int batchSize, long pause) {
+            this.batchSize = batchSize;
+            this.pause = pause;
+        }
+
+        /**
+         * returns up to batchSize session ids
+         */
+        List<Long> select(String sql, Timestamp tm) throws Exception {
+            List<Long> idList = new ArrayList<Long>();
+            Connection con = DBUtils.getAuditConn();
+            try {
+                PreparedStatement stmt = con.prepareStatement(sql);
+                stmt.setTimestamp(1, tm);
+                stmt.setInt(2, batchSize);
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    idList.add(rs.getLong(1));
+                }
+                DBUtils.closeRs(rs);
+                DBUtils.closeStmt(stmt);
+            } finally {
+                DBUtils.closeConn(con);
+            }
+            return idList;
+        }
 
+        /**
+         * deletes sessions after their terminal output and search terms
+         *
+         * @return number of sessions deleted
+         */
+        int deleteSessions(List<Long> sessionIdList) throws Exception {
+            if (sessionIdList.isEmpty()) {
+                return 0;
+            }
+            String ids = StringUtils.repeat("?", ",", sessionIdList.size());
+
+            //terminal output, batchSize rows at a time
+            int count;
+            do {
+                count = update("delete from terminal_log where id in (select id from terminal_log where session_id in (" + ids + ") order by id limit " + batchSize + ")", sessionIdList);
+            } while (count >= batchSize);
+
+            //search terms, by term position ranges of each terminal
+            List<Long[]> termList = new ArrayList<Long[]>();
+            Connection con = DBUtils.getAuditConn();
+            try {
+                PreparedStatement stmt = con.prepareStatement("select session_id, instance_id, max(term_pos) from terminal_log_term where session_id in (" + ids + ") group by session_id, instance_id");
+                for (int i = 0; i < sessionIdList.size(); i++) {
+                    stmt.setLong(i + 1, sessionIdList.get(i));
+                }
+                ResultSet rs = stmt.executeQuery();
+                while (rs.next()) {
+                    termList.add(new Long[]{rs.getLong(1), rs.getLong(2), rs.getLong(3)});
+                }
+                DBUtils.closeRs(rs);
+                DBUtils.closeStmt(stmt);
+            } finally {
+                DBUtils.closeConn(con);
+            }
+            for (Long[] term : termList) {
+                for (long pos = 0; pos <= term[2]; pos += batchSize) {
+                    update("delete from terminal_log_term where session_id=? and instance_id=? and term_pos >= ? and term_pos < ?",
+                            Arrays.asList(term[0], term[1], pos, pos + batchSize));
+                }
+            }
+
+            //sessions and their terminal metadata
+            return update("delete from session_log where id in (" + ids + ")", sessionIdList);
+        }
+
+        /**
+         * runs a delete and waits once batchSize rows were deleted since the last wait
+         */
+        private int update(String sql, List<Long> paramList) throws Exception {
+            int count;
+            Connection con = DBUtils.getAuditConn();
+            try {
+                PreparedStatement stmt = con.prepareStatement(sql);
+                for (int i = 0; i < paramList.size(); i++) {
+                    stmt.setLong(i + 1, paramList.get(i));
+                }
+                count = stmt.executeUpdate();
+                DBUtils.closeStmt(stmt);
+            } finally {
+                DBUtils.closeConn(con);
+            }
+            pending += count;
+            if (pending >= batchSize && pause > 0) {
+                pending = 0;
+                Thread.sleep(pause);
+            }
+            return count;
+        }
     }
 
 
     /**
-     * returns sessions based on sort order defined
+     * returns the where clause for the user, system and date filters
+     *
+     * @param sortedSet object that defines the filters
+     * @return where clause
+     */
+    private static String getFilterClause(SortedSet sortedSet) {
+        String sql = " where 1=1 ";
+        sql += StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_USER_ID)) ? " and s.user_id=? " : "";
+        sql += StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_SYSTEM_ID)) ? " and (exists (select 1 from terminal_log t where t.session_id=s.id and t.system_id=?) or exists (select 1 from terminal_log_meta m where m.session_id=s.id and m.system_id=?)) " : "";
+        sql += getFilterTm(sortedSet, FILTER_BY_START_DT) != null ? " and s.session_tm >= ? " : "";
+        sql += getFilterTm(sortedSet, FILTER_BY_END_DT) != null ? " and s.session_tm < ? " : "";
+        return sql;
+    }
+
+    /**
+     * sets the user, system and date filters in a prepared statement
+     *
+     * @param stmt      prepared statement
+     * @param sortedSet object that defines the filters
+     * @return index of the next parameter
+     */
+    private static int setFilterParams(PreparedStatement stmt, SortedSet sortedSet) throws Exception {
+        int i = 1;
+        if (StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_USER_ID))) {
+            stmt.setLong(i++, Long.valueOf(sortedSet.getFilterMap().get(FILTER_BY_USER_ID)));
+        }
+        if (StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_SYSTEM_ID))) {
+            stmt.setLong(i++, Long.valueOf(sortedSet.getFilterMap().get(FILTER_BY_SYSTEM_ID)));
+            stmt.setLong(i++, Long.valueOf(sortedSet.getFilterMap().get(FILTER_BY_SYSTEM_ID)));
+        }
+        Timestamp startTm = getFilterTm(sortedSet, FILTER_BY_START_DT);
+        if (startTm != null) {
+            stmt.setTimestamp(i++, startTm);
+        }
+        Timestamp endTm = getFilterTm(sortedSet, FILTER_BY_END_DT);
+        if (endTm != null) {
+            stmt.setTimestamp(i++, endTm);
+        }
+        return i;
+    }
+
+    /**
+     * returns the paging cursor for a session, the session time followed by the session id
+     *
+     * @param sessionAudit session
+     * @return cursor
+     */
+    private static String getCursor(SessionAudit sessionAudit) {
+        return sessionAudit.getSessionTm().getTime() + "|" + sessionAudit.getId();
+    }
+
+    /**
+     * sets the users for a list of sessions from the application DB, sessions of users that have
+     * since been deleted only get the user id
+     *
+     * @param sessionAuditList sessions
+     */
+    private static void setUsers(List<SessionAudit> sessionAuditList) throws SQLException {
+        Set<Long> userIdSet = new HashSet<Long>();
+        for (SessionAudit sessionAudit : sessionAuditList) {
+            userIdSet.add(sessionAudit.getUser().getId());
+        }
+        if (!userIdSet.isEmpty()) {
+            Map<Long, User> userMap;
+            Connection con = DBUtils.getConn();
+            try {
+                userMap = UserDB.getUserMap(con, userIdSet);
+            } finally {
+                DBUtils.closeConn(con);
+            }
+            for (SessionAudit sessionAudit : sessionAuditList) {
+                User user = userMap.get(sessionAudit.getUser().getId());
+                if (user != null) {
+                    sessionAudit.setUser(user);
+                }
+            }
+        }
+    }
+
+    /**
+     * returns a page of sessions based on the sort order, filters and paging cursor defined. Sessions are
+     * sorted by session time and paged on session time and id, so a page costs the same however much
+     * history there is.
      *
      * @param sortedSet object that defines sort order
      * @return session list
@@ -95,59 +355,154 @@ public class SessionAuditDB {
     public static SortedSet getSessions(SortedSet sortedSet) {
         //get db connection
         Connection con = null;
+        try {
+            con = DBUtils.getAuditConn();
+            getSessions(con, sortedSet, true);
+        } catch (Exception e) {
+            log.error(e.toString(), e);
+            sortedSet.setItemList(new LinkedList<SessionAudit>());
+        }
+        //close db connection
+        DBUtils.closeConn(con);
+
+        return sortedSet;
+    }
+
+    /**
+     * returns a page of sessions as {@link #getSessions(SortedSet)} does, but a DB error is thrown instead
+     * of ending the page early
+     *
+     * @param con       DB connection
+     * @param sortedSet object that defines sort order
+     * @param count     true to also count the sessions matching the filters
+     * @return session list
+     */
+    public static SortedSet getSessions(Connection con, SortedSet sortedSet, boolean count) throws Exception {
+
         List<SessionAudit> outputList = new LinkedList<SessionAudit>();
 
-        String orderBy = "";
-        if (sortedSet.getOrderByField() != null && !sortedSet.getOrderByField().trim().equals("")) {
-            orderBy = " order by " + sortedSet.getOrderByField() + " " + sortedSet.getOrderByDirection();
+        Timestamp cursorTm = null;
+        Long cursorId = null;
+        String cursor = sortedSet.getPageSize() > 0 ? sortedSet.getCursor() : null;
+        if (StringUtils.isNotEmpty(cursor) && cursor.indexOf('|') >= 0) {
+            try {
+                cursorTm = new Timestamp(Long.valueOf(cursor.substring(0, cursor.indexOf('|'))));
+                cursorId = Long.valueOf(cursor.substring(cursor.indexOf('|') + 1));
+            } catch (NumberFormatException ex) {
+                log.warn("Invalid paging cursor " + cursor);
+                cursorTm = null;
+                cursorId = null;
+            }
         }
 
+        //without a cursor the first page is read whatever the direction
+        boolean prev = cursorId != null && SortedSet.PAGE_PREV.equals(sortedSet.getPageDirection());
+        //paging backwards reads in the opposite order
+        boolean desc = "desc".equals(sortedSet.getOrderByDirection()) != prev;
 
-        String sql = "select * from session_log, users where users.id= session_log.user_id ";
-        sql+= StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_USER_ID)) ? " and session_log.user_id=? " : "";
-        sql+= StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_SYSTEM_ID)) ? " and session_log.id in ( select session_id from terminal_log where terminal_log.system_id=? ) " : "";
-        sql+= orderBy;
+        String sql = "select s.id, s.session_tm, s.user_id from session_log s ";
+        sql += getFilterClause(sortedSet);
+        if (cursorId != null) {
+            sql += desc ? " and s.session_tm <= ? and (s.session_tm < ? or s.id < ?) "
+                    : " and s.session_tm >= ? and (s.session_tm > ? or s.id > ?) ";
+        }
+        sql += desc ? " order by s.session_tm desc, s.id desc" : " order by s.session_tm asc, s.id asc";
+        if (sortedSet.getPageSize() > 0) {
+            sql += " limit " + (sortedSet.getPageSize() + 1);
+        }
 
+        PreparedStatement stmt = con.prepareStatement(sql);
         try {
-
-            con = DBUtils.getConn();
-            deleteAuditHistory(con);
-
-            PreparedStatement stmt = con.prepareStatement(sql);
-            int i=1;
             //set filters in prepared statement
-            if(StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_USER_ID))){
-                stmt.setLong(i++, Long.valueOf(sortedSet.getFilterMap().get(FILTER_BY_USER_ID)));
-            }
-            if(StringUtils.isNotEmpty(sortedSet.getFilterMap().get(FILTER_BY_SYSTEM_ID))){
-                stmt.setLong(i++, Long.valueOf(sortedSet.getFilterMap().get(FILTER_BY_SYSTEM_ID)));
+            int i = setFilterParams(stmt, sortedSet);
+            if (cursorId != null) {
+                stmt.setTimestamp(i++, cursorTm);
+                stmt.setTimestamp(i++, cursorTm);
+                stmt.setLong(i, cursorId);
             }
 
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
                 SessionAudit sessionAudit = new SessionAudit();
-                sessionAudit.setId(rs.getLong("session_log.id"));
+                sessionAudit.setId(rs.getLong("id"));
                 sessionAudit.setSessionTm(rs.getTimestamp("session_tm"));
-                sessionAudit.setUser(UserDB.getUser(con, rs.getLong("user_id")));
+                User user = new User();
+                user.setId(rs.getLong("user_id"));
+                sessionAudit.setUser(user);
                 outputList.add(sessionAudit);
-
-
             }
-
-
+            DBUtils.closeRs(rs);
+        } finally {
             DBUtils.closeStmt(stmt);
+        }
 
-        } catch (Exception e) {
-            log.error(e.toString(), e);
+        if (sortedSet.getPageSize() > 0) {
+            boolean more = outputList.size() > sortedSet.getPageSize();
+            if (more) {
+                outputList.remove(outputList.size() - 1);
+            }
+            if (prev) {
+                Collections.reverse(outputList);
+            }
+            sortedSet.setPrevCursor(null);
+            sortedSet.setNextCursor(null);
+            if (!outputList.isEmpty()) {
+                if (prev ? more : cursorId != null) {
+                    sortedSet.setPrevCursor(getCursor(outputList.get(0)));
+                }
+                if (prev ? cursorId != null : more) {
+                    sortedSet.setNextCursor(getCursor(outputList.get(outputList.size() - 1)));
+                }
+            }
+            if (count) {
+                setSessionCount(con, sortedSet);
+            }
         }
-        //close db connection
-        DBUtils.closeConn(con);
 
+        setUsers(outputList);
         sortedSet.setItemList(outputList);
 
         return sortedSet;
+    }
 
+    /**
+     * sets the number of sessions matching the filters, counting stops at {@link #MAX_SESSION_COUNT}
+     *
+     * @param con       DB connection
+     * @param sortedSet object that defines the filters
+     */
+    private static void setSessionCount(Connection con, SortedSet sortedSet) throws Exception {
+        long count = getSessionCount(con, sortedSet, MAX_SESSION_COUNT + 1);
+        sortedSet.setItemCountCapped(count > MAX_SESSION_COUNT);
+        sortedSet.setItemCount(Math.min(count, MAX_SESSION_COUNT));
+    }
 
+    /**
+     * returns the number of sessions matching the filters
+     *
+     * @param con       DB connection
+     * @param sortedSet object that defines the filters
+     * @param limit     max number of sessions to count (no limit for <=0)
+     * @return number of sessions
+     */
+    public static long getSessionCount(Connection con, SortedSet sortedSet, long limit) throws Exception {
+
+        long count = 0;
+        String sql = "select s.id from session_log s " + getFilterClause(sortedSet);
+        if (limit > 0) {
+            sql = "select count(*) from (" + sql + " limit " + limit + ") c";
+        } else {
+            sql = sql.replaceFirst("select s.id", "select count(*)");
+        }
+        PreparedStatement stmt = con.prepareStatement(sql);
+        setFilterParams(stmt, sortedSet);
+        ResultSet rs = stmt.executeQuery();
+        if (rs.next()) {
+            count = rs.getLong(1);
+        }
+        DBUtils.closeRs(rs);
+        DBUtils.closeStmt(stmt);
+        return count;
     }
 
     /**
@@ -158,7 +513,7 @@ public class SessionAuditDB {
      */
     public static Long createSessionLog(Long userId) {
         //get db connection
-        Connection con = DBUtils.getConn();
+        Connection con = DBUtils.getAuditConn();
 
         Long sessionId = null;
         try {
@@ -212,7 +567,7 @@ public class SessionAuditDB {
      */
     public static void insertTerminalLog(SessionOutput sessionOutput) {
         //get db connection
-        Connection con = DBUtils.getConn();
+        Connection con = DBUtils.getAuditConn();
 
         try {
 
@@ -226,6 +581,74 @@ public class SessionAuditDB {
         DBUtils.closeConn(con);
     }
 
+    /**
+     * inserts terminal output with a single batch statement
+     *
+     * @param con            DB connection
+     * @param sessionOutputs output from session terminals
+     */
+    public static void insertTerminalLogs(Connection con, List<SessionOutput> sessionOutputs) {
+
+        try {
+
+            PreparedStatement stmt = con.prepareStatement("insert into terminal_log (session_id, instance_id, system_id, output) values(?,?,?,?)");
+            for (SessionOutput sessionOutput : sessionOutputs) {
+                if (sessionOutput.getSessionId() != null && sessionOutput.getInstanceId() != null && sessionOutput.getOutput() != null && sessionOutput.getOutput().length() > 0) {
+                    stmt.setLong(1, sessionOutput.getSessionId());
+                    stmt.setLong(2, sessionOutput.getInstanceId());
+                    stmt.setLong(3, sessionOutput.getId());
+                    stmt.setString(4, sessionOutput.getOutput().toString());
+                    stmt.addBatch();
+                }
+            }
+            stmt.executeBatch();
+            DBUtils.closeStmt(stmt);
+
+        } catch (Exception e) {
+            log.error(e.toString(), e);
+        }
+
+    }
+
+    /**
+     * saves the metadata for an audited terminal, the row is added the first time it is saved
+     *
+     * @param con           DB connection
+     * @param terminalAudit terminal audit state
+     */
+    public static void saveTerminalAudit(Connection con, TerminalAudit terminalAudit) {
+
+        try {
+
+            PreparedStatement stmt = con.prepareStatement("update terminal_log_meta set output_size=?, input_size=?, last_tm=? where session_id=? and instance_id=?");
+            stmt.setLong(1, terminalAudit.getOutputSize());
+            stmt.setLong(2, terminalAudit.getInputSize());
+            stmt.setTimestamp(3, new Timestamp(terminalAudit.getLastTm().getTime()));
+            stmt.setLong(4, terminalAudit.getSessionId());
+            stmt.setInt(5, terminalAudit.getInstanceId());
+            int count = stmt.executeUpdate();
+            DBUtils.closeStmt(stmt);
+
+            if (count == 0) {
+                stmt = con.prepareStatement("insert into terminal_log_meta (session_id, instance_id, system_id, audit_policy, output_size, input_size, start_tm, last_tm) values(?,?,?,?,?,?,?,?)");
+                stmt.setLong(1, terminalAudit.getSessionId());
+                stmt.setInt(2, terminalAudit.getInstanceId());
+                stmt.setLong(3, terminalAudit.getSystemId());
+                stmt.setString(4, terminalAudit.getAuditPolicy());
+                stmt.setLong(5, terminalAudit.getOutputSize());
+                stmt.setLong(6, terminalAudit.getInputSize());
+                stmt.setTimestamp(7, new Timestamp(terminalAudit.getStartTm().getTime()));
+                stmt.setTimestamp(8, new Timestamp(terminalAudit.getLastTm().getTime()));
+                stmt.execute();
+                DBUtils.closeStmt(stmt);
+            }
+
+        } catch (Exception e) {
+            log.error(e.toString(), e);
+        }
+
+    }
+
     /**
      * insert new terminal history for user
      *
@@ -264,7 +687,7 @@ public class SessionAuditDB {
      */
     public static List<SessionOutput> getTerminalLogsForSession(Long sessionId, Integer instanceId) {
         //get db connection
-        Connection con = DBUtils.getConn();
+        Connection con = DBUtils.getAuditConn();
         List<SessionOutput> outputList = null;
 
         try {
@@ -302,10 +725,7 @@ public class SessionAuditDB {
                 output = output + rs.getString("output");
             }
 
-            output = output.replaceAll("\\u0007|\u001B\\[K|\\]0;|\\[\\d\\d;\\d\\dm|\\[\\dm","");
-            while (output.contains("\b")) {
-                output = output.replaceFirst(".\b", "");
-            }
+            output = cleanOutput(output);
             DBUtils.closeRs(rs);
 
             SessionOutput sessionOutput = new SessionOutput();
@@ -329,30 +749,145 @@ public class SessionAuditDB {
     }
 
     /**
-     * returns terminal logs for user session for host system
+     * returns the line of the displayed terminal output that contains a transcript offset, used to
+     * jump to a search match
      *
-     * @param con       DB connection
-     * @param sessionId session id
-     * @return session output for session
+     * @param sessionId    session id
+     * @param instanceId   instance id for terminal session
+     * @param outputOffset offset of the match in the terminal transcript
+     * @return line number starting at 0
      */
-    public static List<HostSystem> getHostSystemsForSession(Connection con, Long sessionId) {
+    public static Integer getOutputLine(Long sessionId, Integer instanceId, Long outputOffset) {
 
-        List<HostSystem> hostSystemList = new ArrayList<HostSystem>();
+        Integer line = null;
+        Connection con = null;
         try {
-            PreparedStatement stmt = con.prepareStatement("select distinct instance_id, system_id from terminal_log where session_id=?");
+            con = DBUtils.getAuditConn();
+            PreparedStatement stmt = con.prepareStatement("select output from terminal_log where session_id=? and instance_id=? order by id asc");
             stmt.setLong(1, sessionId);
+            stmt.setInt(2, instanceId);
             ResultSet rs = stmt.executeQuery();
-            while (rs.next()) {
-                HostSystem hostSystem = SystemDB.getSystem(con, rs.getLong("system_id"));
-                hostSystem.setInstanceId(rs.getInt("instance_id"));
-                hostSystemList.add(hostSystem);
+            //only the output before the match is read
+            StringBuilder output = new StringBuilder();
+            while (output.length() < outputOffset && rs.next()) {
+                output.append(rs.getString("output"));
             }
-
             DBUtils.closeRs(rs);
             DBUtils.closeStmt(stmt);
 
-        } catch (Exception ex) {
-            log.error(ex.toString(), ex);
+            String prefix = cleanOutput(output.substring(0, (int) Math.min(output.length(), outputOffset)));
+            line = StringUtils.countMatches(prefix, "\r\n");
+
+        } catch (Exception e) {
+            log.error(e.toString(), e);
+        }
+        DBUtils.closeConn(con);
+        return line;
+    }
+
+    /**
+     * removes terminal control sequences and applies backspaces for display
+     *
+     * @param output terminal output
+     * @return output for display
+     */
+    private static String cleanOutput(String output) {
+        output = output.replaceAll("\\u0007|\u001B\\[K|\\]0;|\\[\\d\\d;\\d\\dm|\\[\\dm","");
+        while (output.contains("\b")) {
+            output = output.replaceFirst(".\b", "");
+        }
+        return output;
+    }
+
+    /**
+     * returns the next batch of terminal log entries for a session ordered by terminal, used to
+     * read through a session without loading all of its output
+     *
+     * @param con        DB connection
+     * @param sessionId  session id
+     * @param instanceId instance id of the last entry read (0 to start)
+     * @param lastId     id of the last entry read (0 to start)
+     * @param limit      max number of entries to return
+     * @return terminal log entries ordered by instance id and id
+     */
+    public static List<TerminalLog> getTerminalLogs(Connection con, Long sessionId, Integer instanceId, Long lastId, int limit) throws SQLException {
+
+        List<TerminalLog> terminalLogList = new ArrayList<TerminalLog>();
+        PreparedStatement stmt = con.prepareStatement("select id, session_id, instance_id, system_id, output, log_tm from terminal_log where session_id=? and (instance_id > ? or (instance_id = ? and id > ?)) order by instance_id asc, id asc limit ?");
+        stmt.setLong(1, sessionId);
+        stmt.setInt(2, instanceId);
+        stmt.setInt(3, instanceId);
+        stmt.setLong(4, lastId);
+        stmt.setInt(5, limit);
+        ResultSet rs = stmt.executeQuery();
+        while (rs.next()) {
+            TerminalLog terminalLog = new TerminalLog();
+            terminalLog.setId(rs.getLong("id"));
+            terminalLog.setSessionId(rs.getLong("session_id"));
+            terminalLog.setInstanceId(rs.getInt("instance_id"));
+            terminalLog.setSystemId(rs.getLong("system_id"));
+            terminalLog.setOutput(rs.getString("output"));
+            terminalLog.setLogTm(rs.getTimestamp("log_tm"));
+            terminalLogList.add(terminalLog);
+        }
+        DBUtils.closeRs(rs);
+        DBUtils.closeStmt(stmt);
+
+        return terminalLogList;
+    }
+
+    /**
+     * returns the systems and terminal instances for a session, systems are loaded from the
+     * application DB and systems that have since been deleted only get the system id
+     *
+     * @param con       audit DB connection
+     * @param sessionId session id
+     * @return systems with instance id set
+     */
+    public static List<HostSystem> getHostSystemsForSession(Connection con, Long sessionId) throws SQLException {
+
+        List<HostSystem> hostSystemList = new ArrayList<HostSystem>();
+        //terminals with output or commands, and terminals where only metadata was kept
+        PreparedStatement stmt = con.prepareStatement("select t.instance_id, t.system_id, m.audit_policy from (select distinct instance_id, system_id from terminal_log where session_id=? union select instance_id, system_id from terminal_log_meta where session_id=?) t left join terminal_log_meta m on m.session_id=? and m.instance_id=t.instance_id order by t.instance_id");
+        stmt.setLong(1, sessionId);
+        stmt.setLong(2, sessionId);
+        stmt.setLong(3, sessionId);
+        ResultSet rs = stmt.executeQuery();
+        while (rs.next()) {
+            HostSystem hostSystem = new HostSystem();
+            hostSystem.setId(rs.getLong("system_id"));
+            hostSystem.setInstanceId(rs.getInt("instance_id"));
+            hostSystem.setAuditPolicy(rs.getString("audit_policy"));
+            hostSystemList.add(hostSystem);
+        }
+        DBUtils.closeRs(rs);
+        DBUtils.closeStmt(stmt);
+
+        if (!hostSystemList.isEmpty()) {
+            Set<Long> systemIdSet = new HashSet<Long>();
+            for (HostSystem hostSystem : hostSystemList) {
+                systemIdSet.add(hostSystem.getId());
+            }
+            Map<Long, HostSystem> hostSystemMap;
+            Connection appCon = DBUtils.getConn();
+            try {
+                hostSystemMap = SystemDB.getSystemMap(appCon, systemIdSet);
+            } finally {
+                DBUtils.closeConn(appCon);
+            }
+
+            //a system can have more than one terminal in the session
+            for (HostSystem hostSystem : hostSystemList) {
+                HostSystem system = hostSystemMap.get(hostSystem.getId());
+                if (system != null) {
+                    hostSystem.setDisplayNm(system.getDisplayNm());
+                    hostSystem.setUser(system.getUser());
+                    hostSystem.setHost(system.getHost());
+                    hostSystem.setPort(system.getPort());
+                    hostSystem.setAuthorizedKeys(system.getAuthorizedKeys());
+                    hostSystem.setStatusCd(system.getStatusCd());
+                }
+            }
         }
         return hostSystemList;
 
@@ -370,24 +905,25 @@ public class SessionAuditDB {
         SessionAudit sessionAudit = new SessionAudit();
 
 
-        String sql = "select * from session_log, users where users.id= session_log.user_id and session_log.id = ? ";
+        String sql = "select * from session_log where id = ? ";
         try {
 
-            con = DBUtils.getConn();
+            con = DBUtils.getAuditConn();
             PreparedStatement stmt = con.prepareStatement(sql);
             stmt.setLong(1, sessionId);
 
             ResultSet rs = stmt.executeQuery();
             while (rs.next()) {
-                sessionAudit.setId(rs.getLong("session_log.id"));
+                sessionAudit.setId(rs.getLong("id"));
                 sessionAudit.setSessionTm(rs.getTimestamp("session_tm"));
-                sessionAudit.setUser(UserDB.getUser(con, rs.getLong("user_id")));
+                User user = new User();
+                user.setId(rs.getLong("user_id"));
+                sessionAudit.setUser(user);
                 sessionAudit.setHostSystemList(getHostSystemsForSession(con, sessionId));
 
 
             }
-
-
+            DBUtils.closeRs(rs);
             DBUtils.closeStmt(stmt);
 
         } catch (Exception e) {
@@ -396,6 +932,13 @@ public class SessionAuditDB {
         //close db connection
         DBUtils.closeConn(con);
 
+        if (sessionAudit.getUser() != null) {
+            try {
+                setUsers(Collections.singletonList(sessionAudit));
+            } catch (Exception e) {
+                log.error(e.toString(), e);
+            }
+        }
 
         return sessionAudit;
 
@@ -15,17 +15,24 @@
  */
 package com.tethrnet.manage.db;
 
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.manage.model.AuditPolicy;
 import com.tethrnet.manage.model.HostSystem;
 import com.tethrnet.manage.model.SortedSet;
 import com.tethrnet.manage.util.DBUtils;
+import com.tethrnet.manage.util.EntityCache;
 
 import org.apache.commons.lang3.StringUtils;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,10 +47,21 @@ public class SystemDB {
 	public static final String FILTER_BY_PROFILE_ID = "profile_id";
 
 	public static final String SORT_BY_NAME = "display_nm";
-	public static final String SORT_BY_USER = "user";
+	public static final String SORT_BY_USER = "user_nm";
 	public static final String SORT_BY_HOST = "host";
 	public static final String SORT_BY_STATUS = "status_cd";
 
+	//used when neither the system nor its profiles set an audit policy
+	public static final String DEFAULT_AUDIT_POLICY = AuditPolicy.isValid(AppConfig.getProperty("defaultAuditPolicy")) ? AppConfig.getProperty("defaultAuditPolicy") : AuditPolicy.FULL;
+
+	//systems by id, entries are removed when the system is updated or deleted
+	static final EntityCache<Long, HostSystem> systemCache = new EntityCache<Long, HostSystem>("system", EntityCache.DEFAULT_SIZE) {
+		@Override
+		protected HostSystem copy(HostSystem hostSystem) {
+			return copySystem(hostSystem);
+		}
+	};
+
 
 	/**
 	 * method to do order by based on the sorted set object for systems for user
@@ -81,11 +99,12 @@ public class SystemDB {
 				HostSystem hostSystem = new HostSystem();
 				hostSystem.setId(rs.getLong("id"));
 				hostSystem.setDisplayNm(rs.getString("display_nm"));
-				hostSystem.setUser(rs.getString("user"));
+				hostSystem.setUser(rs.getString("user_nm"));
 				hostSystem.setHost(rs.getString("host"));
 				hostSystem.setPort(rs.getInt("port"));
 				hostSystem.setAuthorizedKeys(rs.getString("authorized_keys"));
 				hostSystem.setStatusCd(rs.getString("status_cd"));
+				hostSystem.setAuditPolicy(rs.getString("audit_policy"));
 				hostSystemList.add(hostSystem);
 			}
 			DBUtils.closeRs(rs);
@@ -134,11 +153,12 @@ public class SystemDB {
 				HostSystem hostSystem = new HostSystem();
 				hostSystem.setId(rs.getLong("id"));
 				hostSystem.setDisplayNm(rs.getString("display_nm"));
-				hostSystem.setUser(rs.getString("user"));
+				hostSystem.setUser(rs.getString("user_nm"));
 				hostSystem.setHost(rs.getString("host"));
 				hostSystem.setPort(rs.getInt("port"));
 				hostSystem.setAuthorizedKeys(rs.getString("authorized_keys"));
 				hostSystem.setStatusCd(rs.getString("status_cd"));
+				hostSystem.setAuditPolicy(rs.getString("audit_policy"));
 				hostSystemList.add(hostSystem);
 			}
 			DBUtils.closeRs(rs);
@@ -164,7 +184,10 @@ public class SystemDB {
 	 */
 	public static HostSystem getSystem(Long id) {
 
-		HostSystem hostSystem = null;
+		HostSystem hostSystem = systemCache.get(id);
+		if (hostSystem != null) {
+			return hostSystem;
+		}
 
 		Connection con = null;
 
@@ -193,8 +216,11 @@ public class SystemDB {
 	 */
 	public static HostSystem getSystem(Connection con, Long id) {
 
-		HostSystem hostSystem = null;
-
+		long version = systemCache.getVersion();
+		HostSystem hostSystem = systemCache.get(id);
+		if (hostSystem != null) {
+			return hostSystem;
+		}
 
 		try {
 
@@ -206,15 +232,18 @@ public class SystemDB {
 				hostSystem = new HostSystem();
 				hostSystem.setId(rs.getLong("id"));
 				hostSystem.setDisplayNm(rs.getString("display_nm"));
-				hostSystem.setUser(rs.getString("user"));
+				hostSystem.setUser(rs.getString("user_nm"));
 				hostSystem.setHost(rs.getString("host"));
 				hostSystem.setPort(rs.getInt("port"));
 				hostSystem.setAuthorizedKeys(rs.getString("authorized_keys"));
 				hostSystem.setStatusCd(rs.getString("status_cd"));
+				hostSystem.setAuditPolicy(rs.getString("audit_policy"));
 			}
 			DBUtils.closeRs(rs);
 			DBUtils.closeStmt(stmt);
 
+			systemCache.put(id, hostSystem, version);
+
 		} catch (Exception e) {
 			log.error(e.toString(), e);
 		}
@@ -223,6 +252,67 @@ public class SystemDB {
 		return hostSystem;
 	}
 
+	/**
+	 * returns a copy of the DB fields of a host system
+	 *
+	 * @param hostSystem host system
+	 * @return copy of the host system
+	 */
+	public static HostSystem copySystem(HostSystem hostSystem) {
+		HostSystem copy = new HostSystem();
+		copy.setId(hostSystem.getId());
+		copy.setDisplayNm(hostSystem.getDisplayNm());
+		copy.setUser(hostSystem.getUser());
+		copy.setHost(hostSystem.getHost());
+		copy.setPort(hostSystem.getPort());
+		copy.setAuthorizedKeys(hostSystem.getAuthorizedKeys());
+		copy.setStatusCd(hostSystem.getStatusCd());
+		copy.setAuditPolicy(hostSystem.getAuditPolicy());
+		return copy;
+	}
+
+	/**
+	 * removes a host system from the caches after it has been changed
+	 *
+	 * @param hostSystemId host system id
+	 */
+	private static void invalidate(Long hostSystemId) {
+		systemCache.remove(hostSystemId);
+		//profile system lists hold a copy of the system
+		ProfileSystemsDB.profileSystemsCache.clear();
+	}
+
+
+	/**
+	 * returns systems by id with a single query
+	 *
+	 * @param con          DB connection
+	 * @param systemIdList system ids
+	 * @return map of system id to system, ids not found are left out
+	 */
+	public static Map<Long, HostSystem> getSystemMap(Connection con, Collection<Long> systemIdList) throws SQLException {
+
+		Map<Long, HostSystem> hostSystemMap = new LinkedHashMap<Long, HostSystem>();
+		if (systemIdList == null || systemIdList.isEmpty()) {
+			return hostSystemMap;
+		}
+		PreparedStatement stmt = con.prepareStatement("select * from system where id in (" + StringUtils.repeat("?", ",", systemIdList.size()) + ")");
+		int i = 1;
+		for (Long systemId : systemIdList) {
+			stmt.setLong(i++, systemId);
+		}
+		ResultSet rs = stmt.executeQuery();
+
+		while (rs.next()) {
+			HostSystem hostSystem = getHostSystem(rs);
+			hostSystemMap.put(hostSystem.getId(), hostSystem);
+		}
+		DBUtils.closeRs(rs);
+		DBUtils.closeStmt(stmt);
+
+		return hostSystemMap;
+	}
+
 
 	/**
 	 * inserts host system into DB
@@ -238,13 +328,14 @@ public class SystemDB {
 		Long userId = null;
 		try {
 			con = DBUtils.getConn();
-			PreparedStatement stmt = con.prepareStatement("insert into system (display_nm, user, host, port, authorized_keys, status_cd) values (?,?,?,?,?,?)", PreparedStatement.RETURN_GENERATED_KEYS);
+			PreparedStatement stmt = con.prepareStatement("insert into system (display_nm, user_nm, host, port, authorized_keys, status_cd, audit_policy) values (?,?,?,?,?,?,?)", PreparedStatement.RETURN_GENERATED_KEYS);
 			stmt.setString(1, hostSystem.getDisplayNm());
 			stmt.setString(2, hostSystem.getUser());
 			stmt.setString(3, hostSystem.getHost());
 			stmt.setInt(4, hostSystem.getPort());
 			stmt.setString(5, hostSystem.getAuthorizedKeys());
 			stmt.setString(6, hostSystem.getStatusCd());
+			stmt.setString(7, StringUtils.isNotEmpty(hostSystem.getAuditPolicy()) ? hostSystem.getAuditPolicy() : null);
 			stmt.execute();
 
 			ResultSet rs = stmt.getGeneratedKeys();
@@ -261,6 +352,79 @@ public class SystemDB {
 
 	}
 
+	/**
+	 * inserts host systems in a single transaction
+	 *
+	 * @param hostSystemList host systems, the new ids are set on them
+	 * @return ids of the new systems or an empty list if nothing was inserted
+	 */
+	public static List<Long> insertSystems(List<HostSystem> hostSystemList) {
+
+		List<Long> systemIdList = new ArrayList<Long>();
+
+		Connection con = null;
+
+		try {
+			con = DBUtils.getConn();
+			boolean autoCommit = con.getAutoCommit();
+			con.setAutoCommit(false);
+			try {
+				systemIdList = insertSystems(con, hostSystemList);
+				con.commit();
+			} catch (Exception ex) {
+				con.rollback();
+				systemIdList = new ArrayList<Long>();
+				throw ex;
+			} finally {
+				con.setAutoCommit(autoCommit);
+			}
+
+		} catch (Exception e) {
+			log.error(e.toString(), e);
+		}
+		DBUtils.closeConn(con);
+		return systemIdList;
+
+	}
+
+	/**
+	 * inserts host systems with one prepared statement. Rows are executed one at a time since H2
+	 * only returns the last generated id for a batch.
+	 *
+	 * @param con            DB connection
+	 * @param hostSystemList host systems, the new ids are set on them
+	 * @return ids of the new systems
+	 */
+	public static List<Long> insertSystems(Connection con, List<HostSystem> hostSystemList) throws SQLException {
+
+		List<Long> systemIdList = new ArrayList<Long>();
+
+		PreparedStatement stmt = con.prepareStatement("insert into system (display_nm, user_nm, host, port, authorized_keys, status_cd, audit_policy, inventory_key) values (?,?,?,?,?,?,?,?)", PreparedStatement.RETURN_GENERATED_KEYS);
+		try {
+			for (HostSystem hostSystem : hostSystemList) {
+				stmt.setString(1, hostSystem.getDisplayNm());
+				stmt.setString(2, hostSystem.getUser());
+				stmt.setString(3, hostSystem.getHost());
+				stmt.setInt(4, hostSystem.getPort());
+				stmt.setString(5, hostSystem.getAuthorizedKeys());
+				stmt.setString(6, hostSystem.getStatusCd());
+				stmt.setString(7, StringUtils.isNotEmpty(hostSystem.getAuditPolicy()) ? hostSystem.getAuditPolicy() : null);
+				stmt.setString(8, hostSystem.getInventoryKey());
+				stmt.executeUpdate();
+
+				ResultSet rs = stmt.getGeneratedKeys();
+				if (rs.next()) {
+					hostSystem.setId(rs.getLong(1));
+					systemIdList.add(hostSystem.getId());
+				}
+				DBUtils.closeRs(rs);
+			}
+		} finally {
+			DBUtils.closeStmt(stmt);
+		}
+		return systemIdList;
+	}
+
 	/**
 	 * updates host system record
 	 *
@@ -274,7 +438,7 @@ public class SystemDB {
 		try {
 			con = DBUtils.getConn();
 
-			PreparedStatement stmt = con.prepareStatement("update system set display_nm=?, user=?, host=?, port=?, authorized_keys=?, status_cd=?  where id=?");
+			PreparedStatement stmt = con.prepareStatement("update system set display_nm=?, user_nm=?, host=?, port=?, authorized_keys=?, status_cd=?  where id=?");
 			stmt.setString(1, hostSystem.getDisplayNm());
 			stmt.setString(2, hostSystem.getUser());
 			stmt.setString(3, hostSystem.getHost());
@@ -289,9 +453,112 @@ public class SystemDB {
 			log.error(e.toString(), e);
 		}
 		DBUtils.closeConn(con);
+		invalidate(hostSystem.getId());
 
 	}
 
+	/**
+	 * updates the audit policy set on a host system
+	 *
+	 * @param hostSystemId host system id
+	 * @param auditPolicy  audit policy or null to use the profile policy
+	 */
+	public static void updateAuditPolicy(Long hostSystemId, String auditPolicy) {
+
+
+		Connection con = null;
+
+		try {
+			con = DBUtils.getConn();
+
+			PreparedStatement stmt = con.prepareStatement("update system set audit_policy=? where id=?");
+			stmt.setString(1, StringUtils.isNotEmpty(auditPolicy) ? auditPolicy : null);
+			stmt.setLong(2, hostSystemId);
+			stmt.execute();
+			DBUtils.closeStmt(stmt);
+
+		} catch (Exception e) {
+			log.error(e.toString(), e);
+		}
+		DBUtils.closeConn(con);
+		invalidate(hostSystemId);
+
+	}
+
+	/**
+	 * updates the status of host systems with a single batch, other columns are left as they are
+	 *
+	 * @param con            DB connection
+	 * @param hostSystemList host systems with the status to save
+	 */
+	public static void updateSystemStatus(Connection con, List<HostSystem> hostSystemList) {
+
+		try {
+			PreparedStatement stmt = con.prepareStatement("update system set status_cd=? where id=?");
+			for (HostSystem hostSystem : hostSystemList) {
+				stmt.setString(1, hostSystem.getStatusCd());
+				stmt.setLong(2, hostSystem.getId());
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+			DBUtils.closeStmt(stmt);
+
+		} catch (Exception e) {
+			log.error(e.toString(), e);
+		}
+		for (HostSystem hostSystem : hostSystemList) {
+			invalidate(hostSystem.getId());
+		}
+
+	}
+
+	/**
+	 * sets the audit policy for terminals opened on host systems with one query for all of them. The policy
+	 * set on the system is used first, then the most detailed policy of the profiles the system is in, then
+	 * the default.
+	 *
+	 * @param hostSystemList host systems read from the system table
+	 */
+	public static void setAuditPolicies(List<HostSystem> hostSystemList) {
+
+		Map<Long, HostSystem> profilePolicyMap = new LinkedHashMap<Long, HostSystem>();
+		for (HostSystem hostSystem : hostSystemList) {
+			if (StringUtils.isEmpty(hostSystem.getAuditPolicy())) {
+				profilePolicyMap.put(hostSystem.getId(), hostSystem);
+			}
+		}
+
+		if (!profilePolicyMap.isEmpty()) {
+			Connection con = null;
+			try {
+				con = DBUtils.getConn();
+
+				PreparedStatement stmt = con.prepareStatement("select m.system_id, p.audit_policy from profiles p, system_map m where p.id=m.profile_id and m.system_id in (" + StringUtils.repeat("?", ",", profilePolicyMap.size()) + ")");
+				int i = 1;
+				for (Long systemId : profilePolicyMap.keySet()) {
+					stmt.setLong(i++, systemId);
+				}
+				ResultSet rs = stmt.executeQuery();
+				while (rs.next()) {
+					HostSystem hostSystem = profilePolicyMap.get(rs.getLong("system_id"));
+					hostSystem.setAuditPolicy(AuditPolicy.max(hostSystem.getAuditPolicy(), rs.getString("audit_policy")));
+				}
+				DBUtils.closeRs(rs);
+				DBUtils.closeStmt(stmt);
+
+			} catch (Exception e) {
+				log.error(e.toString(), e);
+			}
+			DBUtils.closeConn(con);
+		}
+
+		for (HostSystem hostSystem : hostSystemList) {
+			if (StringUtils.isEmpty(hostSystem.getAuditPolicy())) {
+				hostSystem.setAuditPolicy(DEFAULT_AUDIT_POLICY);
+			}
+		}
+	}
+
 	/**
 	 * deletes host system
 	 *
@@ -314,14 +581,148 @@ public class SystemDB {
 			log.error(e.toString(), e);
 		}
 		DBUtils.closeConn(con);
+		invalidate(hostSystemId);
+
+	}
+
+	/**
+	 * deletes host systems with a single batch in one transaction
+	 *
+	 * @param hostSystemIdList host system ids
+	 */
+	public static void deleteSystems(List<Long> hostSystemIdList) {
+
+		if (hostSystemIdList == null || hostSystemIdList.isEmpty()) {
+			return;
+		}
+
+		Connection con = null;
+
+		try {
+			con = DBUtils.getConn();
+			boolean autoCommit = con.getAutoCommit();
+			con.setAutoCommit(false);
+			try {
+				deleteSystems(con, hostSystemIdList);
+				con.commit();
+			} catch (Exception ex) {
+				con.rollback();
+				throw ex;
+			} finally {
+				con.setAutoCommit(autoCommit);
+			}
+
+		} catch (Exception e) {
+			log.error(e.toString(), e);
+		}
+		DBUtils.closeConn(con);
+		for (Long hostSystemId : hostSystemIdList) {
+			invalidate(hostSystemId);
+		}
+
+	}
+
+	/**
+	 * deletes host systems with a single batch, the caller invalidates the cached systems once committed
+	 *
+	 * @param con              DB connection
+	 * @param hostSystemIdList host system ids
+	 */
+	public static void deleteSystems(Connection con, List<Long> hostSystemIdList) throws SQLException {
+
+		if (hostSystemIdList.isEmpty()) {
+			return;
+		}
+		PreparedStatement stmt = con.prepareStatement("delete from system where id=?");
+		try {
+			for (Long hostSystemId : hostSystemIdList) {
+				stmt.setLong(1, hostSystemId);
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} finally {
+			DBUtils.closeStmt(stmt);
+		}
+	}
+
+	/**
+	 * updates the inventory fields of host systems with a single batch, status and audit policy are
+	 * kept. The caller invalidates the cached systems once committed
+	 *
+	 * @param con            DB connection
+	 * @param hostSystemList host systems with ids
+	 */
+	public static void updateInventorySystems(Connection con, List<HostSystem> hostSystemList) throws SQLException {
 
+		if (hostSystemList.isEmpty()) {
+			return;
+		}
+		PreparedStatement stmt = con.prepareStatement("update system set display_nm=?, user_nm=?, host=?, port=?, authorized_keys=?, inventory_key=? where id=?");
+		try {
+			for (HostSystem hostSystem : hostSystemList) {
+				stmt.setString(1, hostSystem.getDisplayNm());
+				stmt.setString(2, hostSystem.getUser());
+				stmt.setString(3, hostSystem.getHost());
+				stmt.setInt(4, hostSystem.getPort());
+				stmt.setString(5, hostSystem.getAuthorizedKeys());
+				stmt.setString(6, hostSystem.getInventoryKey());
+				stmt.setLong(7, hostSystem.getId());
+				stmt.addBatch();
+			}
+			stmt.executeBatch();
+		} finally {
+			DBUtils.closeStmt(stmt);
+		}
 	}
 
 	/**
-	 * returns the host systems
+	 * returns the systems of a profile with their inventory keys, read past the profile cache
+	 *
+	 * @param con       DB connection
+	 * @param profileId profile id
+	 * @return host systems
+	 */
+	public static List<HostSystem> getInventorySystems(Connection con, Long profileId) throws SQLException {
+
+		List<HostSystem> hostSystemList = new ArrayList<HostSystem>();
+		PreparedStatement stmt = con.prepareStatement("select s.* from system s, system_map m where s.id=m.system_id and m.profile_id=? order by s.id");
+		try {
+			stmt.setLong(1, profileId);
+			ResultSet rs = stmt.executeQuery();
+			while (rs.next()) {
+				HostSystem hostSystem = new HostSystem();
+				hostSystem.setId(rs.getLong("id"));
+				hostSystem.setDisplayNm(rs.getString("display_nm"));
+				hostSystem.setUser(rs.getString("user_nm"));
+				hostSystem.setHost(rs.getString("host"));
+				hostSystem.setPort(rs.getInt("port"));
+				hostSystem.setAuthorizedKeys(rs.getString("authorized_keys"));
+				hostSystem.setInventoryKey(rs.getString("inventory_key"));
+				hostSystemList.add(hostSystem);
+			}
+			DBUtils.closeRs(rs);
+		} finally {
+			DBUtils.closeStmt(stmt);
+		}
+		return hostSystemList;
+	}
+
+	/**
+	 * removes host systems from the cache after they were changed with a caller's connection
+	 *
+	 * @param hostSystemIdList host system ids
+	 */
+	public static void invalidateSystems(Collection<Long> hostSystemIdList) {
+		for (Long hostSystemId : hostSystemIdList) {
+			invalidate(hostSystemId);
+		}
+	}
+
+	/**
+	 * returns the host systems with a single query
 	 *
 	 * @param systemIdList list of host system ids
-	 * @return host system with array of public keys
+	 * @return host systems in the order of the ids, ids not found are left out
 	 */
 	public static List<HostSystem> getSystems(List<Long> systemIdList) {
 
@@ -331,9 +732,11 @@ public class SystemDB {
 
 		try {
 			con = DBUtils.getConn();
+			Map<Long, HostSystem> hostSystemMap = getSystemMap(con, systemIdList);
 			for (Long systemId : systemIdList) {
-				HostSystem hostSystem = getSystem(con, systemId);
-				hostSystemListReturn.add(hostSystem);
+				if (hostSystemMap.get(systemId) != null) {
+					hostSystemListReturn.add(hostSystemMap.get(systemId));
+				}
 			}
 
 		} catch (Exception e) {
@@ -346,6 +749,26 @@ public class SystemDB {
 
 	}
 
+	/**
+	 * returns a host system from the system columns of a result set row, the row can come from a
+	 * join as long as the system columns keep their names
+	 *
+	 * @param rs result set positioned on a row
+	 * @return host system
+	 */
+	static HostSystem getHostSystem(ResultSet rs) throws SQLException {
+		HostSystem hostSystem = new HostSystem();
+		hostSystem.setId(rs.getLong("id"));
+		hostSystem.setDisplayNm(rs.getString("display_nm"));
+		hostSystem.setUser(rs.getString("user_nm"));
+		hostSystem.setHost(rs.getString("host"));
+		hostSystem.setPort(rs.getInt("port"));
+		hostSystem.setAuthorizedKeys(rs.getString("authorized_keys"));
+		hostSystem.setStatusCd(rs.getString("status_cd"));
+		hostSystem.setAuditPolicy(rs.getString("audit_policy"));
+		return hostSystem;
+	}
+
 
 
 	/**
@@ -368,11 +791,12 @@ public class SystemDB {
 				HostSystem hostSystem = new HostSystem();
 				hostSystem.setId(rs.getLong("id"));
 				hostSystem.setDisplayNm(rs.getString("display_nm"));
-				hostSystem.setUser(rs.getString("user"));
+				hostSystem.setUser(rs.getString("user_nm"));
 				hostSystem.setHost(rs.getString("host"));
 				hostSystem.setPort(rs.getInt("port"));
 				hostSystem.setAuthorizedKeys(rs.getString("authorized_keys"));
 				hostSystem.setStatusCd(rs.getString("status_cd"));
+				hostSystem.setAuditPolicy(rs.getString("audit_policy"));
 				hostSystemList.add(hostSystem);
 			}
 			DBUtils.closeRs(rs);
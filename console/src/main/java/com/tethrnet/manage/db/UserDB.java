@@ -15,18 +15,25 @@
  */
 package com.tethrnet.manage.db;
 
+import com.tethrnet.manage.model.Profile;
 import com.tethrnet.manage.model.SortedSet;
 import com.tethrnet.manage.model.User;
 import com.tethrnet.manage.util.DBUtils;
 import com.tethrnet.manage.util.EncryptionUtil;
+import com.tethrnet.manage.util.EntityCache;
 
 import org.apache.commons.lang3.StringUtils;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +52,22 @@ public class UserDB {
     public static final String SORT_BY_USER_TYPE="user_type";
     public static final String SORT_BY_AUTH_TYPE="auth_type";
 
+    //users by id without their profile list, which is cached by UserProfileDB
+    static final EntityCache<Long, User> userCache = new EntityCache<Long, User>("user", EntityCache.DEFAULT_SIZE) {
+        @Override
+        protected User copy(User user) {
+            User copy = new User();
+            copy.setId(user.getId());
+            copy.setEmail(user.getEmail());
+            copy.setUsername(user.getUsername());
+            copy.setPassword(user.getPassword());
+            copy.setAuthType(user.getAuthType());
+            copy.setUserType(user.getUserType());
+            copy.setSalt(user.getSalt());
+            return copy;
+        }
+    };
+
     /**
      * returns users based on sort order defined
      * @param sortedSet object that defines sort order
@@ -141,7 +164,15 @@ public class UserDB {
      */
     public static User getUser(Long userId) {
 
-        User user = null;
+        User user = userCache.get(userId);
+        if (user != null) {
+            List<Profile> profileList = UserProfileDB.userProfilesCache.get(userId);
+            if (profileList != null) {
+                user.setProfileList(profileList);
+                return user;
+            }
+        }
+
         Connection con = null;
         try {
             con = DBUtils.getConn();
@@ -156,6 +187,33 @@ public class UserDB {
         return user;
     }
 
+    /**
+     * returns the id of an enabled user
+     * @param username username
+     * @return user id or null if there is no such user
+     */
+    public static Long getUserIdByUsername(String username) {
+
+        Long userId = null;
+        Connection con = null;
+        try {
+            con = DBUtils.getConn();
+            PreparedStatement stmt = con.prepareStatement("select id from users where enabled=true and username=?");
+            stmt.setString(1, username);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                userId = rs.getLong("id");
+            }
+            DBUtils.closeRs(rs);
+            DBUtils.closeStmt(stmt);
+        } catch (Exception e) {
+            log.error(e.toString(), e);
+        }
+        DBUtils.closeConn(con);
+
+        return userId;
+    }
+
     /**
      * returns user base on id
      * @param con DB connection
@@ -164,25 +222,32 @@ public class UserDB {
      */
     public static User getUser(Connection con, Long userId) {
 
-        User user = null;
+        long version = userCache.getVersion();
+        User user = userCache.get(userId);
         try {
-            PreparedStatement stmt = con.prepareStatement("select * from  users where id=?");
-            stmt.setLong(1, userId);
-            ResultSet rs = stmt.executeQuery();
-
-            while (rs.next()) {
-                user = new User();
-                user.setId(rs.getLong("id"));
-                user.setEmail(rs.getString("email"));
-                user.setUsername(rs.getString("username"));
-                user.setPassword(rs.getString("password"));
-                user.setAuthType(rs.getString("auth_type"));
-                user.setUserType(rs.getString("user_type"));
-                user.setSalt(rs.getString("salt"));
+            if (user == null) {
+                PreparedStatement stmt = con.prepareStatement("select * from  users where id=?");
+                stmt.setLong(1, userId);
+                ResultSet rs = stmt.executeQuery();
+
+                while (rs.next()) {
+                    user = new User();
+                    user.setId(rs.getLong("id"));
+                    user.setEmail(rs.getString("email"));
+                    user.setUsername(rs.getString("username"));
+                    user.setPassword(rs.getString("password"));
+                    user.setAuthType(rs.getString("auth_type"));
+                    user.setUserType(rs.getString("user_type"));
+                    user.setSalt(rs.getString("salt"));
+                }
+                DBUtils.closeRs(rs);
+                DBUtils.closeStmt(stmt);
+
+                userCache.put(userId, user, version);
+            }
+            if (user != null) {
                 user.setProfileList(UserProfileDB.getProfilesByUser(con, userId));
             }
-            DBUtils.closeRs(rs);
-            DBUtils.closeStmt(stmt);
 
         } catch (Exception e) {
             log.error(e.toString(), e);
@@ -191,6 +256,55 @@ public class UserDB {
         return user;
     }
 
+    /**
+     * returns users by id with a single query, profiles are not loaded
+     *
+     * @param con        DB connection
+     * @param userIdList user ids
+     * @return map of user id to user, ids not found are left out
+     */
+    public static Map<Long, User> getUserMap(Connection con, Collection<Long> userIdList) throws SQLException {
+
+        Map<Long, User> userMap = new LinkedHashMap<Long, User>();
+        if (userIdList == null || userIdList.isEmpty()) {
+            return userMap;
+        }
+        PreparedStatement stmt = con.prepareStatement("select * from users where id in (" + StringUtils.repeat("?", ",", userIdList.size()) + ")");
+        int i = 1;
+        for (Long userId : userIdList) {
+            stmt.setLong(i++, userId);
+        }
+        ResultSet rs = stmt.executeQuery();
+
+        while (rs.next()) {
+            User user = new User();
+            user.setId(rs.getLong("id"));
+            user.setEmail(rs.getString("email"));
+            user.setUsername(rs.getString("username"));
+            user.setAuthType(rs.getString("auth_type"));
+            user.setUserType(rs.getString("user_type"));
+            userMap.put(user.getId(), user);
+        }
+        DBUtils.closeRs(rs);
+        DBUtils.closeStmt(stmt);
+
+        return userMap;
+    }
+
+    /**
+     * removes a user from the cache and revokes its auth token after the user has been changed
+     *
+     * @param userId user id, null removes all users
+     */
+    static void invalidate(Long userId) {
+        if (userId != null) {
+            userCache.remove(userId);
+        } else {
+            userCache.clear();
+        }
+        AuthDB.revokeToken(userId);
+    }
+
     /**
      * inserts new user
      *
@@ -276,6 +390,7 @@ public class UserDB {
             log.error(e.toString(), e);
         }
         DBUtils.closeConn(con);
+        invalidate(user.getId());
 
     }
 
@@ -307,6 +422,7 @@ public class UserDB {
             log.error(e.toString(), e);
         }
         DBUtils.closeConn(con);
+        invalidate(user.getId());
 
     }
 
@@ -329,6 +445,7 @@ public class UserDB {
             log.error(e.toString(), e);
         }
         DBUtils.closeConn(con);
+        invalidate(userId);
 
     }
 
@@ -18,12 +18,17 @@ package com.tethrnet.manage.db;
 import com.tethrnet.manage.model.Profile;
 import com.tethrnet.manage.model.User;
 import com.tethrnet.manage.util.DBUtils;
+import com.tethrnet.manage.util.EntityCache;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,8 +39,20 @@ public class UserProfileDB {
 
     private static Logger log = LoggerFactory.getLogger(UserProfileDB.class);
 
+    //profiles by user id, cleared when profiles or their users change
+    static final EntityCache<Long, List<Profile>> userProfilesCache = new EntityCache<Long, List<Profile>>("user profiles", EntityCache.DEFAULT_SIZE) {
+        @Override
+        protected List<Profile> copy(List<Profile> profileList) {
+            List<Profile> copyList = new ArrayList<Profile>(profileList.size());
+            for (Profile profile : profileList) {
+                copyList.add(ProfileDB.copyProfile(profile));
+            }
+            return copyList;
+        }
+    };
+
     /**
-     * sets users for profile
+     * sets users for profile, only the mappings that changed are written
      * 
      * @param profileId profile id
      * @param userIdList list of user ids
@@ -43,33 +60,85 @@ public class UserProfileDB {
     public static void setUsersForProfile(Long profileId, List<Long> userIdList) {
         
         Connection con = null;
-        PreparedStatement stmt = null;
 
         try {
             con = DBUtils.getConn();
-            stmt = con.prepareStatement("delete from user_map where profile_id=?");
-            stmt.setLong(1, profileId);
-            stmt.execute();
-            DBUtils.closeStmt(stmt);
-
-            for(Long userId : userIdList) {
-                stmt = con.prepareStatement("insert into user_map (profile_id, user_id) values (?,?)");
-                stmt.setLong(1, profileId);
-                stmt.setLong(2, userId);
-                stmt.execute();
-                DBUtils.closeStmt(stmt);
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                setUsersForProfile(con, profileId, userIdList);
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(autoCommit);
             }
-            //delete all unassigned keys by profile
-            PublicKeyDB.deleteUnassignedKeysByProfile(con, profileId);
 
         } catch (Exception e) {
             log.error(e.toString(), e);
         }
         DBUtils.closeConn(con);
+        //users can be added to or removed from the profile
+        userProfilesCache.clear();
 
 
     }
 
+    /**
+     * sets users for profile by deleting the users that were removed and inserting the users that
+     * were added, each with a single batch. Keys of removed users that were assigned to the profile
+     * are deleted.
+     *
+     * @param con        DB connection
+     * @param profileId  profile id
+     * @param userIdList list of user ids
+     */
+    public static void setUsersForProfile(Connection con, Long profileId, List<Long> userIdList) throws SQLException {
+
+        Set<Long> currentIdSet = new HashSet<Long>();
+        PreparedStatement stmt = con.prepareStatement("select user_id from user_map where profile_id=?");
+        stmt.setLong(1, profileId);
+        ResultSet rs = stmt.executeQuery();
+        while (rs.next()) {
+            currentIdSet.add(rs.getLong("user_id"));
+        }
+        DBUtils.closeRs(rs);
+        DBUtils.closeStmt(stmt);
+
+        Set<Long> newIdSet = new LinkedHashSet<Long>(userIdList);
+
+        List<Long> removeIdList = new ArrayList<Long>(currentIdSet);
+        removeIdList.removeAll(newIdSet);
+        List<Long> addIdList = new ArrayList<Long>(newIdSet);
+        addIdList.removeAll(currentIdSet);
+
+        if (!removeIdList.isEmpty()) {
+            stmt = con.prepareStatement("delete from user_map where profile_id=? and user_id=?");
+            for (Long userId : removeIdList) {
+                stmt.setLong(1, profileId);
+                stmt.setLong(2, userId);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            DBUtils.closeStmt(stmt);
+
+            //delete all unassigned keys by profile
+            PublicKeyDB.deleteUnassignedKeysByProfile(con, profileId);
+        }
+        if (!addIdList.isEmpty()) {
+            stmt = con.prepareStatement("insert into user_map (profile_id, user_id) values (?,?)");
+            for (Long userId : addIdList) {
+                stmt.setLong(1, profileId);
+                stmt.setLong(2, userId);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            DBUtils.closeStmt(stmt);
+        }
+        userProfilesCache.clear();
+    }
+
     /**
      * return a list of profiles for user
      * @param userId user id
@@ -77,9 +146,13 @@ public class UserProfileDB {
      */
     public static List<Profile> getProfilesByUser(Long userId) {
 
+        List<Profile> profileList = userProfilesCache.get(userId);
+        if (profileList != null) {
+            return profileList;
+        }
 
         Connection con = null;
-        List<Profile> profileList = new ArrayList<Profile>();
+        profileList = new ArrayList<Profile>();
         try {
             con = DBUtils.getConn();
             profileList = getProfilesByUser(con, userId);
@@ -100,8 +173,12 @@ public class UserProfileDB {
      */
     public static List<Profile> getProfilesByUser(Connection con, Long userId) {
 
-        ArrayList<Profile> profileList = new ArrayList<Profile>();
-
+        long version = userProfilesCache.getVersion();
+        List<Profile> profileList = userProfilesCache.get(userId);
+        if (profileList != null) {
+            return profileList;
+        }
+        profileList = new ArrayList<Profile>();
 
         try {
             PreparedStatement stmt = con.prepareStatement("select * from  profiles g, user_map m where g.id=m.profile_id and m.user_id=? order by nm asc");
@@ -112,12 +189,14 @@ public class UserProfileDB {
                 Profile profile = new Profile();
                 profile.setId(rs.getLong("id"));
                 profile.setNm(rs.getString("nm"));
-                profile.setDesc(rs.getString("desc"));
+                profile.setDesc(rs.getString("description"));
                 profileList.add(profile);
             }
             DBUtils.closeRs(rs);
             DBUtils.closeStmt(stmt);
 
+            userProfilesCache.put(userId, profileList, version);
+
         } catch (Exception e) {
             log.error(e.toString(), e);
         }
@@ -0,0 +1,105 @@
+package com.tethrnet.manage.model;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * Value object for the status and progress of an audit export job, updated by the export worker
+ */
+public class AuditExport {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_COMPLETE = "COMPLETE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    String id;
+    Long userId;
+    volatile String status = STATUS_RUNNING;
+    volatile long sessionCount = 0;
+    volatile long exportedSessions = 0;
+    volatile long exportedTerminals = 0;
+    Date startTm = new Date();
+    volatile Date endTm;
+    volatile String errorMsg;
+    transient File file;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public long getSessionCount() {
+        return sessionCount;
+    }
+
+    public void setSessionCount(long sessionCount) {
+        this.sessionCount = sessionCount;
+    }
+
+    public long getExportedSessions() {
+        return exportedSessions;
+    }
+
+    public void setExportedSessions(long exportedSessions) {
+        this.exportedSessions = exportedSessions;
+    }
+
+    public long getExportedTerminals() {
+        return exportedTerminals;
+    }
+
+    public void setExportedTerminals(long exportedTerminals) {
+        this.exportedTerminals = exportedTerminals;
+    }
+
+    public Date getStartTm() {
+        return startTm;
+    }
+
+    public void setStartTm(Date startTm) {
+        this.startTm = startTm;
+    }
+
+    public Date getEndTm() {
+        return endTm;
+    }
+
+    public void setEndTm(Date endTm) {
+        this.endTm = endTm;
+    }
+
+    public String getErrorMsg() {
+        return errorMsg;
+    }
+
+    public void setErrorMsg(String errorMsg) {
+        this.errorMsg = errorMsg;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setFile(File file) {
+        this.file = file;
+    }
+}
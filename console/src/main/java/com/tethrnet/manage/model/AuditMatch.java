@@ -0,0 +1,90 @@
+package com.tethrnet.manage.model;
+
+import java.util.Date;
+
+/**
+ * Value object for a search hit in audited terminal output
+ */
+public class AuditMatch {
+    Long sessionId;
+    Integer instanceId;
+    Long systemId;
+    String displayNm;
+    String host;
+    Long userId;
+    String username;
+    Long outputOffset;
+    Date logTm;
+
+    public Long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(Long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public Integer getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(Integer instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public Long getSystemId() {
+        return systemId;
+    }
+
+    public void setSystemId(Long systemId) {
+        this.systemId = systemId;
+    }
+
+    public String getDisplayNm() {
+        return displayNm;
+    }
+
+    public void setDisplayNm(String displayNm) {
+        this.displayNm = displayNm;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public Long getOutputOffset() {
+        return outputOffset;
+    }
+
+    public void setOutputOffset(Long outputOffset) {
+        this.outputOffset = outputOffset;
+    }
+
+    public Date getLogTm() {
+        return logTm;
+    }
+
+    public void setLogTm(Date logTm) {
+        this.logTm = logTm;
+    }
+}
@@ -0,0 +1,52 @@
+package com.tethrnet.manage.model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Audit levels that can be set on a system or profile
+ */
+public class AuditPolicy {
+
+    //full terminal transcript
+    public static final String FULL = "FULL";
+    //commands typed in the terminal
+    public static final String COMMANDS = "COMMANDS";
+    //who, when, where and output / input size
+    public static final String METADATA = "METADATA";
+    //nothing is recorded
+    public static final String OFF = "OFF";
+
+    //most detailed first
+    public static final List<String> POLICY_LIST = Arrays.asList(FULL, COMMANDS, METADATA, OFF);
+
+
+    private AuditPolicy() {
+    }
+
+    /**
+     * returns true if the policy is one of the audit levels
+     *
+     * @param policy audit policy
+     * @return true if valid
+     */
+    public static boolean isValid(String policy) {
+        return policy != null && POLICY_LIST.contains(policy);
+    }
+
+    /**
+     * returns the more detailed of two policies, invalid or null policies are ignored
+     *
+     * @param policy1 audit policy
+     * @param policy2 audit policy
+     * @return most detailed policy or null if neither is valid
+     */
+    public static String max(String policy1, String policy2) {
+        if (!isValid(policy1)) {
+            return isValid(policy2) ? policy2 : null;
+        } else if (!isValid(policy2)) {
+            return policy1;
+        }
+        return POLICY_LIST.indexOf(policy1) <= POLICY_LIST.indexOf(policy2) ? policy1 : policy2;
+    }
+}
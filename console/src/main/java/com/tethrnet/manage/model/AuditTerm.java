@@ -0,0 +1,86 @@
+package com.tethrnet.manage.model;
+
+import java.util.Date;
+
+/**
+ * Value object for a token in the terminal output search index
+ */
+public class AuditTerm {
+    String term;
+    Long sessionId;
+    Integer instanceId;
+    Long systemId;
+    Long termPos;
+    Long outputOffset;
+    Date logTm;
+
+    public AuditTerm() {
+
+    }
+
+    public AuditTerm(String term, TerminalLog terminalLog, Long termPos, Long outputOffset) {
+        this.term = term;
+        this.sessionId = terminalLog.getSessionId();
+        this.instanceId = terminalLog.getInstanceId();
+        this.systemId = terminalLog.getSystemId();
+        this.logTm = terminalLog.getLogTm();
+        this.termPos = termPos;
+        this.outputOffset = outputOffset;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public void setTerm(String term) {
+        this.term = term;
+    }
+
+    public Long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(Long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public Integer getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(Integer instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public Long getSystemId() {
+        return systemId;
+    }
+
+    public void setSystemId(Long systemId) {
+        this.systemId = systemId;
+    }
+
+    public Long getTermPos() {
+        return termPos;
+    }
+
+    public void setTermPos(Long termPos) {
+        this.termPos = termPos;
+    }
+
+    public Long getOutputOffset() {
+        return outputOffset;
+    }
+
+    public void setOutputOffset(Long outputOffset) {
+        this.outputOffset = outputOffset;
+    }
+
+    public Date getLogTm() {
+        return logTm;
+    }
+
+    public void setLogTm(Date logTm) {
+        this.logTm = logTm;
+    }
+}
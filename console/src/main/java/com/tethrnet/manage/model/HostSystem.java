@@ -33,6 +33,9 @@ public class HostSystem {
     String errorMsg;
     List<String> publicKeyList;
     Integer instanceId;
+    String auditPolicy;
+    //stable key of a system synced from the inventory
+    String inventoryKey;
 
     public static final String INITIAL_STATUS="INITIAL";
     public static final String AUTH_FAIL_STATUS="AUTHFAIL";
@@ -138,4 +141,20 @@ public class HostSystem {
     public void setInstanceId(Integer instanceId) {
         this.instanceId = instanceId;
     }
+
+    public String getAuditPolicy() {
+        return auditPolicy;
+    }
+
+    public void setAuditPolicy(String auditPolicy) {
+        this.auditPolicy = auditPolicy;
+    }
+
+    public String getInventoryKey() {
+        return inventoryKey;
+    }
+
+    public void setInventoryKey(String inventoryKey) {
+        this.inventoryKey = inventoryKey;
+    }
 }
@@ -0,0 +1,46 @@
+package com.tethrnet.manage.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of importing systems or public keys from a file
+ */
+public class ImportResult {
+    int recordCount = 0;
+    int addedCount = 0;
+    int skippedCount = 0;
+    List<String> errorList = new ArrayList<String>();
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public void setRecordCount(int recordCount) {
+        this.recordCount = recordCount;
+    }
+
+    public int getAddedCount() {
+        return addedCount;
+    }
+
+    public void setAddedCount(int addedCount) {
+        this.addedCount = addedCount;
+    }
+
+    public int getSkippedCount() {
+        return skippedCount;
+    }
+
+    public void setSkippedCount(int skippedCount) {
+        this.skippedCount = skippedCount;
+    }
+
+    public List<String> getErrorList() {
+        return errorList;
+    }
+
+    public void setErrorList(List<String> errorList) {
+        this.errorList = errorList;
+    }
+}
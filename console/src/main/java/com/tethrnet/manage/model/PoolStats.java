@@ -0,0 +1,118 @@
+package com.tethrnet.manage.model;
+
+import java.util.Map;
+
+/**
+ * Value object for the state of a DB connection pool and the time spent waiting for connections
+ */
+public class PoolStats {
+    String name;
+    int maxActive;
+    int minIdle;
+    int maxIdle;
+    int maxOpenStatements;
+    int active;
+    int idle;
+    int waiting;
+    long borrowed;
+    long timeouts;
+    long maxWaitMs;
+    //number of borrows by wait time, keyed by the exclusive upper bound of each bucket
+    Map<String, Long> waitHistogram;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getMaxActive() {
+        return maxActive;
+    }
+
+    public void setMaxActive(int maxActive) {
+        this.maxActive = maxActive;
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    public void setMinIdle(int minIdle) {
+        this.minIdle = minIdle;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    public int getMaxOpenStatements() {
+        return maxOpenStatements;
+    }
+
+    public void setMaxOpenStatements(int maxOpenStatements) {
+        this.maxOpenStatements = maxOpenStatements;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public void setActive(int active) {
+        this.active = active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public void setIdle(int idle) {
+        this.idle = idle;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public void setWaiting(int waiting) {
+        this.waiting = waiting;
+    }
+
+    public long getBorrowed() {
+        return borrowed;
+    }
+
+    public void setBorrowed(long borrowed) {
+        this.borrowed = borrowed;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public void setTimeouts(long timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    public long getMaxWaitMs() {
+        return maxWaitMs;
+    }
+
+    public void setMaxWaitMs(long maxWaitMs) {
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    public Map<String, Long> getWaitHistogram() {
+        return waitHistogram;
+    }
+
+    public void setWaitHistogram(Map<String, Long> waitHistogram) {
+        this.waitHistogram = waitHistogram;
+    }
+}
@@ -24,6 +24,7 @@ public class Profile {
     Long id;
     String nm;
     String desc;
+    String auditPolicy;
     List<HostSystem> hostSystemList;
 
     public Long getId() {
@@ -57,4 +58,12 @@ public class Profile {
     public void setDesc(String desc) {
         this.desc = desc;
     }
+
+    public String getAuditPolicy() {
+        return auditPolicy;
+    }
+
+    public void setAuditPolicy(String auditPolicy) {
+        this.auditPolicy = auditPolicy;
+    }
 }
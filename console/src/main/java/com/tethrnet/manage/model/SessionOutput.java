@@ -36,6 +36,7 @@ public class SessionOutput extends HostSystem {
         this.setPort(hostSystem.getPort());
         this.setDisplayNm(hostSystem.getDisplayNm());
         this.setAuthorizedKeys(hostSystem.getAuthorizedKeys());
+        this.setAuditPolicy(hostSystem.getAuditPolicy());
 
     }
     public Long getSessionId() {
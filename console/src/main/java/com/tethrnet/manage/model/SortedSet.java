@@ -26,6 +26,17 @@ public class SortedSet {
     private String orderByDirection = "asc";
     private List itemList;
     private HashMap<String, String> filterMap = new HashMap<>();
+    //keyset paging, a page size of 0 returns all items
+    private int pageSize = 0;
+    private String cursor;
+    private String pageDirection = PAGE_NEXT;
+    private String prevCursor;
+    private String nextCursor;
+    private Long itemCount;
+    private boolean itemCountCapped = false;
+
+    public static final String PAGE_NEXT = "next";
+    public static final String PAGE_PREV = "prev";
 
     public SortedSet() {
         
@@ -78,4 +89,64 @@ public class SortedSet {
     public void setFilterMap(HashMap<String, String> filterMap) {
         this.filterMap = filterMap;
     }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public String getPageDirection() {
+        if (PAGE_PREV.equals(pageDirection)) {
+            return PAGE_PREV;
+        } else {
+            return PAGE_NEXT;
+        }
+    }
+
+    public void setPageDirection(String pageDirection) {
+        this.pageDirection = pageDirection;
+    }
+
+    public String getPrevCursor() {
+        return prevCursor;
+    }
+
+    public void setPrevCursor(String prevCursor) {
+        this.prevCursor = prevCursor;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public Long getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(Long itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public boolean getItemCountCapped() {
+        return itemCountCapped;
+    }
+
+    public void setItemCountCapped(boolean itemCountCapped) {
+        this.itemCountCapped = itemCountCapped;
+    }
 }
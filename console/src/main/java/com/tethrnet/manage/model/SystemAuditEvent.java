@@ -0,0 +1,114 @@
+package com.tethrnet.manage.model;
+
+/**
+ * Terminal output event for the system audit stream. The output is copied when the event is
+ * created, as the terminal may still be appending to it while the event is queued.
+ */
+public class SystemAuditEvent {
+    Long userId;
+    String username;
+    String userType;
+    String email;
+    Long sessionId;
+    Integer instanceId;
+    Long hostId;
+    String host;
+    String output;
+    long timestamp = System.currentTimeMillis();
+
+    public SystemAuditEvent() {
+
+    }
+
+    public SystemAuditEvent(User user, SessionOutput sessionOutput) {
+        this.userId = user.getId();
+        this.username = user.getUsername();
+        this.userType = user.getUserType();
+        this.email = user.getEmail();
+        this.sessionId = sessionOutput.getSessionId();
+        this.instanceId = sessionOutput.getInstanceId();
+        this.hostId = sessionOutput.getId();
+        this.host = sessionOutput.getDisplayLabel();
+        this.output = sessionOutput.getOutput().toString();
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public String getUserType() {
+        return userType;
+    }
+
+    public void setUserType(String userType) {
+        this.userType = userType;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public Long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(Long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public Integer getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(Integer instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public Long getHostId() {
+        return hostId;
+    }
+
+    public void setHostId(Long hostId) {
+        this.hostId = hostId;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+}
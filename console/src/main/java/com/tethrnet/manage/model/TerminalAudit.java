@@ -0,0 +1,138 @@
+package com.tethrnet.manage.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Audit state for an open terminal, holds the output / input size and the command line being
+ * typed. Access is synchronized on the object.
+ */
+public class TerminalAudit {
+    Long sessionId;
+    Integer instanceId;
+    Long systemId;
+    String auditPolicy;
+    long outputSize = 0;
+    long inputSize = 0;
+    Date startTm = new Date();
+    Date lastTm = new Date();
+    //time the metadata was last saved, 0 if never saved
+    long saveTm = 0;
+    StringBuilder commandLine = new StringBuilder();
+    List<String> commandList = new ArrayList<String>();
+
+    public TerminalAudit() {
+
+    }
+
+    /**
+     * copies the metadata of a terminal, the typed line and commands are not copied
+     */
+    public TerminalAudit(TerminalAudit terminalAudit) {
+        this.sessionId = terminalAudit.getSessionId();
+        this.instanceId = terminalAudit.getInstanceId();
+        this.systemId = terminalAudit.getSystemId();
+        this.auditPolicy = terminalAudit.getAuditPolicy();
+        this.outputSize = terminalAudit.getOutputSize();
+        this.inputSize = terminalAudit.getInputSize();
+        this.startTm = terminalAudit.getStartTm();
+        this.lastTm = terminalAudit.getLastTm();
+        this.saveTm = terminalAudit.getSaveTm();
+    }
+
+    public TerminalAudit(SessionOutput sessionOutput) {
+        this.sessionId = sessionOutput.getSessionId();
+        this.instanceId = sessionOutput.getInstanceId();
+        this.systemId = sessionOutput.getId();
+        this.auditPolicy = sessionOutput.getAuditPolicy();
+    }
+
+    public Long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(Long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public Integer getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(Integer instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public Long getSystemId() {
+        return systemId;
+    }
+
+    public void setSystemId(Long systemId) {
+        this.systemId = systemId;
+    }
+
+    public String getAuditPolicy() {
+        return auditPolicy;
+    }
+
+    public void setAuditPolicy(String auditPolicy) {
+        this.auditPolicy = auditPolicy;
+    }
+
+    public long getOutputSize() {
+        return outputSize;
+    }
+
+    public void setOutputSize(long outputSize) {
+        this.outputSize = outputSize;
+    }
+
+    public long getInputSize() {
+        return inputSize;
+    }
+
+    public void setInputSize(long inputSize) {
+        this.inputSize = inputSize;
+    }
+
+    public Date getStartTm() {
+        return startTm;
+    }
+
+    public void setStartTm(Date startTm) {
+        this.startTm = startTm;
+    }
+
+    public Date getLastTm() {
+        return lastTm;
+    }
+
+    public void setLastTm(Date lastTm) {
+        this.lastTm = lastTm;
+    }
+
+    public long getSaveTm() {
+        return saveTm;
+    }
+
+    public void setSaveTm(long saveTm) {
+        this.saveTm = saveTm;
+    }
+
+    public StringBuilder getCommandLine() {
+        return commandLine;
+    }
+
+    public void setCommandLine(StringBuilder commandLine) {
+        this.commandLine = commandLine;
+    }
+
+    public List<String> getCommandList() {
+        return commandList;
+    }
+
+    public void setCommandList(List<String> commandList) {
+        this.commandList = commandList;
+    }
+}
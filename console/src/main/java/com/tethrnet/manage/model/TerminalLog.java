@@ -0,0 +1,63 @@
+package com.tethrnet.manage.model;
+
+import java.util.Date;
+
+/**
+ * Value object for a single audited chunk of terminal output
+ */
+public class TerminalLog {
+    Long id;
+    Long sessionId;
+    Integer instanceId;
+    Long systemId;
+    String output;
+    Date logTm;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(Long sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public Integer getInstanceId() {
+        return instanceId;
+    }
+
+    public void setInstanceId(Integer instanceId) {
+        this.instanceId = instanceId;
+    }
+
+    public Long getSystemId() {
+        return systemId;
+    }
+
+    public void setSystemId(Long systemId) {
+        this.systemId = systemId;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public void setOutput(String output) {
+        this.output = output;
+    }
+
+    public Date getLogTm() {
+        return logTm;
+    }
+
+    public void setLogTm(Date logTm) {
+        this.logTm = logTm;
+    }
+}
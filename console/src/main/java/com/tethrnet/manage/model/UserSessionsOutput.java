@@ -22,6 +22,8 @@ public class UserSessionsOutput {
 
     //instance id, host output
     Map<Integer, SessionOutput> sessionOutputMap = new ConcurrentHashMap<Integer,SessionOutput>();
+    //instance id, audit state for terminals that are audited
+    Map<Integer, TerminalAudit> terminalAuditMap = new ConcurrentHashMap<Integer, TerminalAudit>();
 
 
     public Map<Integer, SessionOutput> getSessionOutputMap() {
@@ -31,6 +33,14 @@ public class UserSessionsOutput {
     public void setSessionOutputMap(Map<Integer, SessionOutput> sessionOutputMap) {
         this.sessionOutputMap = sessionOutputMap;
     }
+
+    public Map<Integer, TerminalAudit> getTerminalAuditMap() {
+        return terminalAuditMap;
+    }
+
+    public void setTerminalAuditMap(Map<Integer, TerminalAudit> terminalAuditMap) {
+        this.terminalAuditMap = terminalAuditMap;
+    }
 }
 
 
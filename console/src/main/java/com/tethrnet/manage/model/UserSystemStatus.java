@@ -0,0 +1,40 @@
+package com.tethrnet.manage.model;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Progress of a user connecting or pushing to a set of systems. Statuses are kept by system id and
+ * the ids still to be tried are queued in id order.
+ */
+public class UserSystemStatus {
+    ConcurrentSkipListMap<Long, HostSystem> statusMap = new ConcurrentSkipListMap<Long, HostSystem>();
+    Queue<Long> pendingQueue = new ConcurrentLinkedQueue<Long>();
+    //true if the outcome for each system is saved to the system table
+    boolean saveStatus = false;
+
+    public ConcurrentSkipListMap<Long, HostSystem> getStatusMap() {
+        return statusMap;
+    }
+
+    public void setStatusMap(ConcurrentSkipListMap<Long, HostSystem> statusMap) {
+        this.statusMap = statusMap;
+    }
+
+    public Queue<Long> getPendingQueue() {
+        return pendingQueue;
+    }
+
+    public void setPendingQueue(Queue<Long> pendingQueue) {
+        this.pendingQueue = pendingQueue;
+    }
+
+    public boolean isSaveStatus() {
+        return saveStatus;
+    }
+
+    public void setSaveStatus(boolean saveStatus) {
+        this.saveStatus = saveStatus;
+    }
+}
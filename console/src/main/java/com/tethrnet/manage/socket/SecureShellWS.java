@@ -23,6 +23,7 @@ import com.tethrnet.manage.db.UserDB;
 import com.tethrnet.manage.model.SchSession;
 import com.tethrnet.manage.model.UserSchSessions;
 import com.tethrnet.manage.task.SentOutputTask;
+import com.tethrnet.manage.util.SessionActivityUtil;
 import com.tethrnet.manage.util.SessionOutputUtil;
 
 import org.apache.commons.lang3.StringUtils;
@@ -66,6 +67,7 @@ public class SecureShellWS {
         this.httpSession = (HttpSession) config.getUserProperties().get(HttpSession.class.getName());
         this.sessionId = AuthUtil.getSessionId(httpSession);
         this.session = session;
+        SessionActivityUtil.setWebSocket(httpSession, session);
 
         Runnable run=new SentOutputTask(sessionId, session, UserDB.getUser(AuthUtil.getUserId(httpSession)));
         Thread thread = new Thread(run);
@@ -109,6 +111,7 @@ public class SecureShellWS {
                         } else {
                             schSession.getCommander().print(command);
                         }
+                        SessionOutputUtil.addToInput(sessionId, id, keyCode, command);
                     }
 
                 }
@@ -125,36 +128,7 @@ public class SecureShellWS {
     @OnClose
     public void onClose() {
 
-        if (SecureShellAction.getUserSchSessionMap() != null) {
-            UserSchSessions userSchSessions = SecureShellAction.getUserSchSessionMap().get(sessionId);
-            if (userSchSessions != null) {
-                Map<Integer, SchSession> schSessionMap = userSchSessions.getSchSessionMap();
-
-                for (Integer sessionKey : schSessionMap.keySet()) {
-
-                    SchSession schSession = schSessionMap.get(sessionKey);
-
-                    //disconnect ssh session
-                    schSession.getChannel().disconnect();
-                    schSession.getSession().disconnect();
-                    schSession.setChannel(null);
-                    schSession.setSession(null);
-                    schSession.setInputToChannel(null);
-                    schSession.setCommander(null);
-                    schSession.setOutFromChannel(null);
-                    schSession = null;
-                    //remove from map
-                    schSessionMap.remove(sessionKey);
-                }
-
-
-                //clear and remove session map for user
-                schSessionMap.clear();
-                SecureShellAction.getUserSchSessionMap().remove(sessionId);
-                SessionOutputUtil.removeUserSession(sessionId);
-            }
-        }
-
+        SecureShellAction.closeSchSessions(sessionId);
 
     }
 
@@ -0,0 +1,151 @@
+package com.tethrnet.manage.socket;
+
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.common.util.AuthUtil;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.servlet.http.HttpSession;
+import javax.websocket.*;
+import javax.websocket.server.ServerEndpoint;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * web socket of an open systems page, changes to the user's systems are pushed to it as JSON
+ */
+@ServerEndpoint(value = "/admin/systems.ws", configurator = GetHttpSessionConfigurator.class)
+public class SystemsWS {
+
+    private static Logger log = LoggerFactory.getLogger(SystemsWS.class);
+
+    //open systems pages by user id
+    private static final Map<Long, Set<Session>> sessionMap = new ConcurrentHashMap<Long, Set<Session>>();
+
+    private HttpSession httpSession;
+    private Session session;
+    private Long userId = null;
+
+
+    @OnOpen
+    public void onOpen(Session session, EndpointConfig config) {
+
+        //set websocket timeout
+        if (StringUtils.isNotEmpty(AppConfig.getProperty("websocketTimeout"))) {
+            session.setMaxIdleTimeout(Long.parseLong(AppConfig.getProperty("websocketTimeout")) * 60000);
+        } else {
+            session.setMaxIdleTimeout(0);
+        }
+
+        this.httpSession = (HttpSession) config.getUserProperties().get(HttpSession.class.getName());
+        this.userId = AuthUtil.getUserId(httpSession);
+        this.session = session;
+        if (userId == null) {
+            close(session);
+            return;
+        }
+        session.getUserProperties().put(HttpSession.class.getName(), httpSession);
+
+        synchronized (sessionMap) {
+            Set<Session> sessionSet = sessionMap.get(userId);
+            if (sessionSet == null) {
+                sessionSet = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+                sessionMap.put(userId, sessionSet);
+            }
+            sessionSet.add(session);
+        }
+    }
+
+    @OnMessage
+    public void onMessage(String message) {
+        //nothing is read from the page
+    }
+
+    @OnClose
+    public void onClose() {
+        remove(userId, session);
+    }
+
+    @OnError
+    public void onError(Throwable t) {
+        log.debug("Systems web socket closed: " + t.toString());
+        remove(userId, session);
+    }
+
+    /**
+     * true if the user has a systems page open
+     *
+     * @param userId user id
+     * @return true if a web socket is open
+     */
+    public static boolean isOpen(Long userId) {
+        return sessionMap.containsKey(userId);
+    }
+
+    /**
+     * sends a message to the open systems pages of a user, pages of logged out sessions and pages
+     * that can not be written to are closed
+     *
+     * @param userId  user id
+     * @param message JSON message
+     */
+    public static void push(Long userId, String message) {
+        Set<Session> sessionSet = sessionMap.get(userId);
+        if (sessionSet == null) {
+            return;
+        }
+        for (Session session : sessionSet) {
+            HttpSession httpSession = (HttpSession) session.getUserProperties().get(HttpSession.class.getName());
+            try {
+                httpSession.getAttribute("userId");
+            } catch (IllegalStateException ex) {
+                //http session invalidated on logout or timeout
+                close(session);
+                remove(userId, session);
+                continue;
+            }
+            if (!session.isOpen()) {
+                remove(userId, session);
+                continue;
+            }
+            try {
+                //a session can only send one message at a time
+                synchronized (session) {
+                    session.getBasicRemote().sendText(message);
+                }
+            } catch (Exception ex) {
+                log.debug("Systems web socket not written: " + ex.toString());
+                close(session);
+                remove(userId, session);
+            }
+        }
+    }
+
+    private static void remove(Long userId, Session session) {
+        if (userId == null) {
+            return;
+        }
+        synchronized (sessionMap) {
+            Set<Session> sessionSet = sessionMap.get(userId);
+            if (sessionSet != null) {
+                sessionSet.remove(session);
+                if (sessionSet.isEmpty()) {
+                    sessionMap.remove(userId);
+                }
+            }
+        }
+    }
+
+    private static void close(Session session) {
+        try {
+            session.close();
+        } catch (IOException ex) {
+            log.debug("Systems web socket not closed: " + ex.toString());
+        }
+    }
+}
@@ -18,11 +18,9 @@ package com.tethrnet.manage.task;
 import com.google.gson.Gson;
 import com.tethrnet.manage.model.SessionOutput;
 import com.tethrnet.manage.model.User;
-import com.tethrnet.manage.util.DBUtils;
 import com.tethrnet.manage.util.SessionOutputUtil;
 
 import javax.websocket.Session;
-import java.sql.Connection;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,9 +46,9 @@ public class SentOutputTask implements Runnable {
 
         Gson gson = new Gson();
 
-        Connection con = DBUtils.getConn();
+        //audit records are written by the audit writer, no DB connection is held while the terminal is open
         while (session.isOpen()) {
-            List<SessionOutput> outputList = SessionOutputUtil.getOutput(con, sessionId, user);
+            List<SessionOutput> outputList = SessionOutputUtil.getOutput(sessionId, user);
             try {
                 if (outputList != null && !outputList.isEmpty()) {
                     String json = gson.toJson(outputList);
@@ -65,6 +63,5 @@ public class SentOutputTask implements Runnable {
 
         }
 
-        DBUtils.closeConn(con);
     }
 }
@@ -0,0 +1,297 @@
+package com.tethrnet.manage.util;
+
+import com.google.gson.Gson;
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.manage.db.SessionAuditDB;
+import com.tethrnet.manage.model.AuditExport;
+import com.tethrnet.manage.model.HostSystem;
+import com.tethrnet.manage.model.SessionAudit;
+import com.tethrnet.manage.model.SortedSet;
+import com.tethrnet.manage.model.TerminalLog;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports session audits to a zip archive with a sessions.jsonl metadata entry and one transcript
+ * entry per terminal. Sessions and terminal output are read in batches, so memory use does not
+ * depend on the size of the export.
+ */
+public class AuditExportUtil {
+
+    private static Logger log = LoggerFactory.getLogger(AuditExportUtil.class);
+
+    private static final String EXPORT_DIR = StringUtils.isNotEmpty(AppConfig.getProperty("auditExportDir")) ? AppConfig.getProperty("auditExportDir") : System.getProperty("java.io.tmpdir") + "/tethrnet-export";
+
+    //number of sessions or terminal log entries read per query
+    private static final int BATCH_SIZE = 200;
+    //number of finished exports kept, older archives are deleted
+    private static final int MAX_EXPORTS = 20;
+
+    private static final Gson gson = new Gson();
+
+    private static final Map<String, AuditExport> exportMap = new LinkedHashMap<String, AuditExport>();
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "audit-export");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        }
+    });
+
+
+    private AuditExportUtil() {
+    }
+
+    /**
+     * queues an export of the sessions matching the filters, the archive is written to the export directory
+     *
+     * @param userId    id of the user requesting the export
+     * @param filterMap user, system and date filters
+     * @return export job
+     */
+    public static AuditExport startExport(Long userId, Map<String, String> filterMap) {
+
+        final AuditExport auditExport = new AuditExport();
+        auditExport.setId(UUID.randomUUID().toString());
+        auditExport.setUserId(userId);
+        final SortedSet filterSet = new SortedSet();
+        filterSet.setFilterMap(new HashMap<String, String>(filterMap));
+
+        synchronized (exportMap) {
+            exportMap.put(auditExport.getId(), auditExport);
+            removeOldExports();
+        }
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                File dir = new File(EXPORT_DIR);
+                File tmpFile = new File(dir, "audit-export-" + auditExport.getId() + ".tmp");
+                File file = new File(dir, "audit-export-" + auditExport.getId() + ".zip");
+                OutputStream out = null;
+                try {
+                    if (!dir.exists() && !dir.mkdirs()) {
+                        throw new IllegalStateException("Unable to create export directory " + EXPORT_DIR);
+                    }
+                    out = new FileOutputStream(tmpFile);
+                    export(out, filterSet, auditExport);
+                    out.close();
+                    out = null;
+                    if (!tmpFile.renameTo(file)) {
+                        throw new IllegalStateException("Unable to create export " + file);
+                    }
+                    auditExport.setFile(file);
+                    auditExport.setStatus(AuditExport.STATUS_COMPLETE);
+                } catch (Exception ex) {
+                    log.error(ex.toString(), ex);
+                    auditExport.setErrorMsg(ex.getMessage());
+                    auditExport.setStatus(AuditExport.STATUS_FAILED);
+                    if (out != null) {
+                        try {
+                            out.close();
+                        } catch (Exception e) {
+                            log.error(e.toString(), e);
+                        }
+                    }
+                    tmpFile.delete();
+                }
+                auditExport.setEndTm(new Date());
+            }
+        });
+
+        return auditExport;
+    }
+
+    /**
+     * returns an export job started by the user
+     *
+     * @param userId   user id
+     * @param exportId export id
+     * @return export job or null if not found
+     */
+    public static AuditExport getExport(Long userId, String exportId) {
+        AuditExport auditExport;
+        synchronized (exportMap) {
+            auditExport = exportMap.get(exportId);
+        }
+        if (auditExport != null && auditExport.getUserId().equals(userId)) {
+            return auditExport;
+        }
+        return null;
+    }
+
+    /**
+     * removes the oldest finished exports and their archives
+     */
+    private static void removeOldExports() {
+        List<String> removeList = new ArrayList<String>();
+        int count = exportMap.size();
+        for (AuditExport auditExport : exportMap.values()) {
+            if (count - removeList.size() <= MAX_EXPORTS) {
+                break;
+            }
+            if (!AuditExport.STATUS_RUNNING.equals(auditExport.getStatus())) {
+                removeList.add(auditExport.getId());
+            }
+        }
+        for (String exportId : removeList) {
+            AuditExport auditExport = exportMap.remove(exportId);
+            if (auditExport.getFile() != null && !auditExport.getFile().delete()) {
+                log.warn("Unable to delete export " + auditExport.getFile());
+            }
+        }
+    }
+
+    /**
+     * writes the sessions matching the filters to a zip archive, the stream is not closed
+     *
+     * @param out         output stream
+     * @param filterSet   object that defines the user, system and date filters
+     * @param auditExport export progress
+     */
+    public static void export(OutputStream out, SortedSet filterSet, AuditExport auditExport) throws Exception {
+
+        ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(out));
+        Writer writer = new OutputStreamWriter(zip, "UTF-8");
+
+        Connection con = DBUtils.getAuditConn();
+        try {
+            auditExport.setSessionCount(SessionAuditDB.getSessionCount(con, filterSet, 0));
+
+            //session and terminal metadata
+            zip.putNextEntry(new ZipEntry("sessions.jsonl"));
+            SortedSet sessionSet = getSessionSet(filterSet);
+            do {
+                sessionSet = SessionAuditDB.getSessions(con, sessionSet, false);
+                for (Object item : sessionSet.getItemList()) {
+                    SessionAudit sessionAudit = (SessionAudit) item;
+                    writer.write(gson.toJson(getSessionMetadata(con, sessionAudit)));
+                    writer.write('\n');
+                }
+                sessionSet.setCursor(sessionSet.getNextCursor());
+            } while (sessionSet.getCursor() != null);
+            writer.flush();
+            zip.closeEntry();
+
+            //terminal transcripts
+            sessionSet = getSessionSet(filterSet);
+            do {
+                sessionSet = SessionAuditDB.getSessions(con, sessionSet, false);
+                for (Object item : sessionSet.getItemList()) {
+                    writeTranscripts(con, zip, writer, ((SessionAudit) item).getId(), auditExport);
+                    auditExport.setExportedSessions(auditExport.getExportedSessions() + 1);
+                }
+                sessionSet.setCursor(sessionSet.getNextCursor());
+            } while (sessionSet.getCursor() != null);
+
+            zip.finish();
+            zip.flush();
+        } finally {
+            DBUtils.closeConn(con);
+        }
+    }
+
+    /**
+     * returns a sorted set for reading the filtered sessions oldest first
+     */
+    private static SortedSet getSessionSet(SortedSet filterSet) {
+        SortedSet sessionSet = new SortedSet(SessionAuditDB.SORT_BY_SESSION_TM);
+        sessionSet.setOrderByDirection("asc");
+        sessionSet.setPageSize(BATCH_SIZE);
+        sessionSet.setFilterMap(filterSet.getFilterMap());
+        return sessionSet;
+    }
+
+    /**
+     * returns the metadata written for a session
+     */
+    private static Map<String, Object> getSessionMetadata(Connection con, SessionAudit sessionAudit) throws Exception {
+        Map<String, Object> session = new LinkedHashMap<String, Object>();
+        session.put("sessionId", sessionAudit.getId());
+        session.put("sessionTm", sessionAudit.getSessionTm());
+        session.put("userId", sessionAudit.getUser().getId());
+        session.put("username", sessionAudit.getUser().getUsername());
+        session.put("email", sessionAudit.getUser().getEmail());
+
+        List<Map<String, Object>> terminalList = new ArrayList<Map<String, Object>>();
+        for (HostSystem hostSystem : SessionAuditDB.getHostSystemsForSession(con, sessionAudit.getId())) {
+            Map<String, Object> terminal = new LinkedHashMap<String, Object>();
+            terminal.put("instanceId", hostSystem.getInstanceId());
+            terminal.put("systemId", hostSystem.getId());
+            terminal.put("displayNm", hostSystem.getDisplayNm());
+            terminal.put("user", hostSystem.getUser());
+            terminal.put("host", hostSystem.getHost());
+            terminal.put("port", hostSystem.getPort());
+            terminal.put("transcript", getTranscriptName(sessionAudit.getId(), hostSystem.getInstanceId()));
+            terminalList.add(terminal);
+        }
+        session.put("terminals", terminalList);
+        return session;
+    }
+
+    /**
+     * writes a zip entry with the raw output of each terminal in the session
+     */
+    private static void writeTranscripts(Connection con, ZipOutputStream zip, Writer writer, Long sessionId, AuditExport auditExport) throws Exception {
+
+        Integer instanceId = 0;
+        Long lastId = 0L;
+        boolean entryOpen = false;
+        List<TerminalLog> terminalLogList;
+        do {
+            terminalLogList = SessionAuditDB.getTerminalLogs(con, sessionId, instanceId, lastId, BATCH_SIZE);
+            for (TerminalLog terminalLog : terminalLogList) {
+                if (!entryOpen || !terminalLog.getInstanceId().equals(instanceId)) {
+                    if (entryOpen) {
+                        writer.flush();
+                        zip.closeEntry();
+                    }
+                    zip.putNextEntry(new ZipEntry(getTranscriptName(sessionId, terminalLog.getInstanceId())));
+                    entryOpen = true;
+                    auditExport.setExportedTerminals(auditExport.getExportedTerminals() + 1);
+                }
+                writer.write(terminalLog.getOutput());
+                instanceId = terminalLog.getInstanceId();
+                lastId = terminalLog.getId();
+            }
+        } while (terminalLogList.size() == BATCH_SIZE);
+
+        if (entryOpen) {
+            writer.flush();
+            zip.closeEntry();
+        }
+    }
+
+    /**
+     * returns the archive entry name for a terminal transcript
+     */
+    private static String getTranscriptName(Long sessionId, Integer instanceId) {
+        return "transcripts/" + sessionId + "-" + instanceId + ".log";
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.tethrnet.manage.util;
+
+import com.tethrnet.common.db.DBDialect;
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.manage.db.AuditIndexDB;
+import com.tethrnet.manage.model.AuditTerm;
+import com.tethrnet.manage.model.SortedSet;
+import com.tethrnet.manage.model.TerminalLog;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incrementally builds the search index over audited terminal output. The index task tails
+ * terminal_log by id, so nothing is lost on restarts and existing history is backfilled. Output is
+ * indexed once it is older than the index lag, as rows are not always committed in id order, and
+ * nodes sharing the audit DB take turns through a lock on the index state.
+ */
+public class AuditIndexUtil {
+
+    private static Logger log = LoggerFactory.getLogger(AuditIndexUtil.class);
+
+    public static final boolean auditIndexEnabled = !"false".equals(AppConfig.getProperty("enableAuditIndex"));
+    private static final long INDEX_INTERVAL = StringUtils.isNumeric(AppConfig.getProperty("auditIndexInterval")) ? Long.parseLong(AppConfig.getProperty("auditIndexInterval")) * 1000 : 5000;
+    private static final long INDEX_LAG = StringUtils.isNumeric(AppConfig.getProperty("auditIndexLag")) ? Long.parseLong(AppConfig.getProperty("auditIndexLag")) * 1000 : 30000;
+
+    //number of terminal log entries indexed per transaction
+    private static final int BATCH_SIZE = 500;
+    //longer tokens are not indexed
+    private static final int MAX_TERM_LENGTH = 64;
+    //max number of terminals with tokenizer state kept in memory
+    private static final int MAX_TERMINAL_STATES = 10000;
+
+    private static final char ESC = 0x1B;
+    private static final char BEL = 0x07;
+    private static final String TERM_DELIMITERS = "|;&<>()`'\"";
+
+    private static final int TEXT = 0;
+    private static final int ESCAPE = 1;
+    private static final int CSI = 2;
+    private static final int OSC = 3;
+
+    private static Timer timer;
+
+    //last terminal log id indexed by this node, the tokenizer state is stale if another node indexed after it
+    private static Long indexedId;
+
+    //tokenizer state for terminals, only accessed from the index task
+    private static Map<String, TermState> termStateMap = new LinkedHashMap<String, TermState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, TermState> eldest) {
+            return size() > MAX_TERMINAL_STATES;
+        }
+    };
+
+
+    private AuditIndexUtil() {
+    }
+
+    /**
+     * start timer to index audited terminal output
+     */
+    public static synchronized void startIndexTask() {
+        if (auditIndexEnabled && timer == null) {
+            timer = new Timer("audit-index", true);
+            timer.schedule(new IndexTimerTask(), INDEX_INTERVAL, INDEX_INTERVAL);
+        }
+    }
+
+    /**
+     * searches audited terminal output, a query in double quotes is matched as a phrase
+     *
+     * @param query     search query
+     * @param sortedSet object that defines the user, system and date filters
+     * @return sortedSet with list of matches
+     */
+    public static SortedSet search(String query, SortedSet sortedSet) {
+        boolean phrase = false;
+        if (query != null) {
+            query = query.trim();
+            if (query.length() > 1 && query.startsWith("\"") && query.endsWith("\"")) {
+                phrase = true;
+                query = query.substring(1, query.length() - 1);
+            }
+        }
+        return AuditIndexDB.search(tokenize(query), phrase, sortedSet);
+    }
+
+    /**
+     * splits text into index terms the same way terminal output is indexed
+     *
+     * @param text text to split
+     * @return lower case terms
+     */
+    public static List<String> tokenize(String text) {
+        List<String> termList = new ArrayList<String>();
+        if (StringUtils.isNotEmpty(text)) {
+            TerminalLog terminalLog = new TerminalLog();
+            terminalLog.setOutput(text + " ");
+            for (AuditTerm auditTerm : tokenize(new TermState(null, null, 0L, 0L), terminalLog)) {
+                termList.add(auditTerm.getTerm());
+            }
+        }
+        return termList;
+    }
+
+    /**
+     * indexes the next batch of terminal log entries
+     *
+     * @return number of entries indexed
+     */
+    static int indexNextBatch() {
+
+        int count = 0;
+        Connection con = null;
+        try {
+            con = DBUtils.getAuditConn();
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                Long lastId = AuditIndexDB.lockLastIndexedId(con);
+                if (!lastId.equals(indexedId)) {
+                    //another node has indexed since, state is rebuilt from the DB
+                    termStateMap.clear();
+                }
+                Timestamp before = new Timestamp(AuditIndexDB.getDBTime(con).getTime() - INDEX_LAG);
+                List<TerminalLog> terminalLogList = AuditIndexDB.getTerminalLogsAfter(con, lastId, before, BATCH_SIZE);
+
+                List<AuditTerm> termList = new ArrayList<AuditTerm>();
+                Map<String, TermState> batchStateMap = new LinkedHashMap<String, TermState>();
+                for (TerminalLog terminalLog : terminalLogList) {
+                    String key = terminalLog.getSessionId() + ":" + terminalLog.getInstanceId();
+                    TermState termState = termStateMap.get(key);
+                    if (termState == null) {
+                        long[] position = AuditIndexDB.getIndexPosition(con, terminalLog.getSessionId(), terminalLog.getInstanceId());
+                        termState = new TermState(terminalLog.getSessionId(), terminalLog.getInstanceId(), position[0], position[1]);
+                        termStateMap.put(key, termState);
+                    }
+                    termList.addAll(tokenize(termState, terminalLog));
+                    batchStateMap.put(key, termState);
+                    lastId = terminalLog.getId();
+                }
+
+                AuditIndexDB.insertTerms(con, termList);
+                for (TermState termState : batchStateMap.values()) {
+                    AuditIndexDB.setIndexPosition(con, termState.sessionId, termState.instanceId, termState.nextPos, termState.offset);
+                }
+                AuditIndexDB.setLastIndexedId(con, lastId);
+                con.commit();
+                indexedId = lastId;
+                count = terminalLogList.size();
+            } catch (Exception ex) {
+                con.rollback();
+                //state is rebuilt from the DB on the next run
+                termStateMap.clear();
+                indexedId = null;
+                throw ex;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+
+        } catch (SQLException ex) {
+            if (isLockTimeout(con, ex)) {
+                log.debug("Audit index is being updated by another node");
+            } else {
+                log.error(ex.toString(), ex);
+            }
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+        DBUtils.closeConn(con);
+        return count;
+    }
+
+    /**
+     * true if the index state is locked by another node
+     */
+    private static boolean isLockTimeout(Connection con, SQLException ex) {
+        try {
+            return con != null && DBDialect.forConnection(con).isLockTimeout(ex);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * splits a chunk of terminal output into terms skipping terminal escape sequences. Tokens can span
+     * chunks as typed commands are echoed back a few characters at a time.
+     *
+     * @param termState   tokenizer state for the terminal
+     * @param terminalLog terminal output chunk
+     * @return terms found in the chunk
+     */
+    private static List<AuditTerm> tokenize(TermState termState, TerminalLog terminalLog) {
+
+        List<AuditTerm> termList = new ArrayList<AuditTerm>();
+        String output = terminalLog.getOutput();
+        for (int i = 0; i < output.length(); i++) {
+            char c = output.charAt(i);
+            long offset = termState.offset + i;
+            switch (termState.mode) {
+                case ESCAPE:
+                    if (c == '[') {
+                        termState.mode = CSI;
+                    } else if (c == ']') {
+                        termState.mode = OSC;
+                    } else {
+                        termState.mode = TEXT;
+                    }
+                    break;
+                case CSI:
+                    if (c >= 0x40 && c <= 0x7E) {
+                        termState.mode = TEXT;
+                    }
+                    break;
+                case OSC:
+                    if (c == BEL) {
+                        termState.mode = TEXT;
+                    } else if (c == ESC) {
+                        termState.mode = ESCAPE;
+                    }
+                    break;
+                default:
+                    if (c == ESC) {
+                        endTerm(termState, terminalLog, termList);
+                        termState.mode = ESCAPE;
+                    } else if (c > 0x20 && c != 0x7F && !Character.isWhitespace(c) && TERM_DELIMITERS.indexOf(c) < 0) {
+                        if (termState.pending.length() == 0) {
+                            termState.pendingOffset = offset;
+                        }
+                        termState.pending.append(Character.toLowerCase(c));
+                    } else {
+                        endTerm(termState, terminalLog, termList);
+                    }
+            }
+        }
+        termState.offset += output.length();
+        return termList;
+    }
+
+    /**
+     * adds the pending token as a term
+     */
+    private static void endTerm(TermState termState, TerminalLog terminalLog, List<AuditTerm> termList) {
+        if (termState.pending.length() > 0) {
+            if (termState.pending.length() <= MAX_TERM_LENGTH) {
+                termList.add(new AuditTerm(termState.pending.toString(), terminalLog, termState.nextPos++, termState.pendingOffset));
+            }
+            termState.pending.setLength(0);
+        }
+    }
+
+    /**
+     * tokenizer state for a terminal
+     */
+    private static class TermState {
+        Long sessionId;
+        Integer instanceId;
+        long nextPos;
+        long offset;
+        long pendingOffset;
+        int mode = TEXT;
+        StringBuilder pending = new StringBuilder();
+
+        TermState(Long sessionId, Integer instanceId, long nextPos, long offset) {
+            this.sessionId = sessionId;
+            this.instanceId = instanceId;
+            this.nextPos = nextPos;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * Timer task that indexes until it has caught up with terminal_log
+     */
+    private static class IndexTimerTask extends TimerTask {
+
+        @Override
+        public void run() {
+            while (indexNextBatch() == BATCH_SIZE) {
+                //keep going until caught up
+            }
+        }
+    }
+
+}
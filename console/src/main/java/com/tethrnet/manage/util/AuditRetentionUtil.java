@@ -0,0 +1,66 @@
+package com.tethrnet.manage.util;
+
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.manage.db.SessionAuditDB;
+
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Purges audit history past the retention period in the background, so that viewing
+ * or writing audit records never waits on a purge
+ */
+public class AuditRetentionUtil {
+
+    private static Logger log = LoggerFactory.getLogger(AuditRetentionUtil.class);
+
+    //minutes between purge runs (no purge for <=0)
+    private static final int INTERVAL = NumberUtils.toInt(AppConfig.getProperty("auditRetentionInterval"), 60);
+    //max number of rows removed per delete statement
+    private static final int BATCH_SIZE = Math.max(1, NumberUtils.toInt(AppConfig.getProperty("auditPurgeBatchSize"), 500));
+    //milliseconds to wait after each batch of deleted rows
+    private static final long BATCH_PAUSE = 100;
+
+    private static Timer timer;
+
+
+    private AuditRetentionUtil() {
+    }
+
+    /**
+     * start timer to purge audit history
+     */
+    public static synchronized void startRetentionTask() {
+        if (INTERVAL > 0 && timer == null) {
+            timer = new Timer("audit-retention", true);
+            timer.schedule(new RetentionTimerTask(), 60 * 1000, INTERVAL * 60 * 1000L);
+        }
+    }
+
+    /**
+     * purges audit history past the retention period
+     */
+    public static void purgeAuditHistory() {
+        long startTm = System.currentTimeMillis();
+        int deleted = SessionAuditDB.deleteAuditHistory(BATCH_SIZE, BATCH_PAUSE);
+        if (deleted > 0) {
+            log.info("Purged " + deleted + " audit sessions in " + (System.currentTimeMillis() - startTm) + " ms");
+        }
+    }
+
+    /**
+     * Timer task for purging audit history
+     */
+    private static class RetentionTimerTask extends TimerTask {
+
+        @Override
+        public void run() {
+            purgeAuditHistory();
+        }
+    }
+
+}
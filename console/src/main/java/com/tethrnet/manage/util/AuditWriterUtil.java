@@ -0,0 +1,231 @@
+package com.tethrnet.manage.util;
+
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.manage.db.SessionAuditDB;
+import com.tethrnet.manage.model.SessionOutput;
+import com.tethrnet.manage.model.TerminalAudit;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes terminal audit records to the audit DB from a single writer thread, so the threads sending
+ * terminal output never hold a DB connection. The writer borrows a connection for each batch.
+ * If the buffer stays full the calling thread writes the queued records and then its own, in order,
+ * instead of dropping the record. Queued records are written before the application shuts down.
+ */
+public class AuditWriterUtil {
+
+    private static Logger log = LoggerFactory.getLogger(AuditWriterUtil.class);
+
+    private static final int BUFFER_SIZE = StringUtils.isNumeric(AppConfig.getProperty("auditWriterBufferSize")) ? Integer.parseInt(AppConfig.getProperty("auditWriterBufferSize")) : 10000;
+
+    //max number of records written per batch
+    private static final int BATCH_SIZE = 500;
+    //time a terminal thread waits for room in the buffer before writing the queued records itself
+    private static final long OFFER_TIMEOUT = 500;
+    //time the writer waits for a record before it lets other threads write
+    private static final long POLL_TIMEOUT = 100;
+    //time to wait for the writer to finish the queued records on shutdown
+    private static final long STOP_TIMEOUT = 30000;
+
+    //terminal output as SessionOutput, terminal metadata as TerminalAudit
+    private static final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(Math.max(BUFFER_SIZE, 1));
+
+    private static final AtomicLong overflow = new AtomicLong();
+
+    //held while records are taken from the buffer and written, so they are written in the order queued
+    private static final ReentrantLock writeLock = new ReentrantLock(true);
+
+    private static Thread writerThread;
+
+    //set on shutdown, records are then written by the calling thread
+    private static volatile boolean stopped = false;
+
+
+    private AuditWriterUtil() {
+    }
+
+    /**
+     * start thread to write queued audit records
+     */
+    public static synchronized void startAuditWriter() {
+        if (writerThread == null) {
+            stopped = false;
+            writerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeRecords();
+                }
+            }, "audit-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * stops the writer thread once it has written the queued records
+     */
+    public static synchronized void stopAuditWriter() {
+        stopped = true;
+        if (writerThread != null) {
+            try {
+                writerThread.join(STOP_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (writerThread.isAlive()) {
+                log.warn("Audit writer did not finish within " + STOP_TIMEOUT + " ms, " + queue.size() + " records are still queued");
+            }
+            writerThread = null;
+        }
+        //records queued while the writer was stopping
+        writeQueued(null);
+    }
+
+    /**
+     * queues terminal output for the terminal log, the output must not be modified once queued
+     *
+     * @param sessionOutput terminal output
+     */
+    public static void write(SessionOutput sessionOutput) {
+        queue(sessionOutput);
+    }
+
+    /**
+     * queues terminal metadata, the object must not be modified once queued
+     *
+     * @param terminalAudit terminal metadata
+     */
+    public static void write(TerminalAudit terminalAudit) {
+        queue(terminalAudit);
+    }
+
+    /**
+     * queues a record. If the buffer stays full or the writer is stopped the records queued before it
+     * are written by the calling thread, followed by the record.
+     *
+     * @param record audit record
+     */
+    private static void queue(Object record) {
+        boolean queued = false;
+        if (!stopped) {
+            try {
+                queued = queue.offer(record, OFFER_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            //the writer may have stopped before taking the record
+            if (queued && !stopped) {
+                return;
+            }
+            if (!queued && overflow.incrementAndGet() % 1000 == 1) {
+                log.warn("Audit writer buffer is full, records are written by the terminal threads (" + overflow.get() + " so far)");
+            }
+        }
+        writeQueued(queued ? null : record);
+    }
+
+    /**
+     * writes the queued records and then the given record from the calling thread
+     *
+     * @param record audit record, null to write only the queued records
+     */
+    private static void writeQueued(Object record) {
+        writeLock.lock();
+        try {
+            List<Object> batch = new ArrayList<Object>(queue.size() + 1);
+            queue.drainTo(batch);
+            if (record != null) {
+                batch.add(record);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            Connection con = DBUtils.getAuditConn();
+            try {
+                for (int i = 0; i < batch.size(); i += BATCH_SIZE) {
+                    writeBatch(con, batch.subList(i, Math.min(i + BATCH_SIZE, batch.size())));
+                }
+            } finally {
+                DBUtils.closeConn(con);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * writer thread loop, takes queued records and writes them in batches until stopped and the
+     * buffer is empty
+     */
+    private static void writeRecords() {
+        List<Object> batch = new ArrayList<Object>(BATCH_SIZE);
+        while (true) {
+            try {
+                writeLock.lockInterruptibly();
+                try {
+                    //read before polling, so a record queued before the stop is not left behind
+                    boolean done = stopped;
+                    Object record = queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (record == null && done) {
+                        return;
+                    }
+                    if (record != null) {
+                        batch.add(record);
+                        queue.drainTo(batch, BATCH_SIZE - 1);
+
+                        Connection con = DBUtils.getAuditConn();
+                        try {
+                            writeBatch(con, batch);
+                        } finally {
+                            DBUtils.closeConn(con);
+                        }
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                log.error(ex.toString(), ex);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * writes terminal output with a single batch insert and then saves the terminal metadata
+     *
+     * @param con   DB connection
+     * @param batch audit records
+     */
+    private static void writeBatch(Connection con, List<Object> batch) {
+        List<SessionOutput> outputList = new ArrayList<SessionOutput>();
+        for (Object record : batch) {
+            if (record instanceof SessionOutput) {
+                outputList.add((SessionOutput) record);
+            }
+        }
+        if (!outputList.isEmpty()) {
+            SessionAuditDB.insertTerminalLogs(con, outputList);
+        }
+        for (Object record : batch) {
+            if (record instanceof TerminalAudit) {
+                SessionAuditDB.saveTerminalAudit(con, (TerminalAudit) record);
+            }
+        }
+    }
+
+}
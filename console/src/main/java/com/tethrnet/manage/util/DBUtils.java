@@ -46,6 +46,23 @@ public class DBUtils {
 
     }
 
+    /**
+     * returns a connection from the audit data source
+     *
+     * @return DB connection
+     */
+    public static Connection getAuditConn() {
+        Connection con = null;
+        try {
+            con = DSPool.getAuditDataSource().getConnection();
+
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+        return con;
+
+    }
+
     /**
      * close DB connection
      *
@@ -15,13 +15,25 @@
  */
 package com.tethrnet.manage.util;
 
+import com.tethrnet.common.db.DBDialect;
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.manage.model.PoolStats;
+
 import org.apache.commons.dbcp.*;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.pool.KeyedObjectPoolFactory;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool.impl.GenericKeyedObjectPoolFactory;
 import org.apache.commons.pool.impl.GenericObjectPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
- * Class to create a pooling data source object using commons DBCP
+ * Class to create a pooling data source object using commons DBCP. The DBs are embedded H2 by
+ * default, dbUrl and auditDbUrl can point to an H2 server or PostgreSQL instead
  *
  */
 public class DSPool {
@@ -32,42 +44,138 @@ public class DSPool {
     private static String DB_PATH = DBUtils.class.getClassLoader().getResource("tethrnetdb").getPath();
 
 
-    private static PoolingDataSource dsPool;
+    //credentials of the embedded H2 DBs
+    private static final String EMBEDDED_DB_USER = "tethrnetbox";
+    private static final String EMBEDDED_DB_PASSWORD = "filepwd 45WJLnwhpA47EepT162hrVnDn3vYRvJhpZi0sVdvN9Sdsf";
+
+    //the application DB is embedded unless dbUrl points to an H2 server or PostgreSQL DB shared by all console nodes
+    private static final String DB_URL = StringUtils.isNotEmpty(AppConfig.getProperty("dbUrl")) ? AppConfig.getProperty("dbUrl").trim() : "jdbc:h2:" + DB_PATH + "/tethrnetbox;CIPHER=AES";
+    private static final String DB_USER = StringUtils.isNotEmpty(AppConfig.getProperty("dbUser")) ? AppConfig.getProperty("dbUser") : EMBEDDED_DB_USER;
+    private static final String DB_PASSWORD = StringUtils.isNotEmpty(AppConfig.getProperty("dbPassword")) ? AppConfig.getProperty("dbPassword") : EMBEDDED_DB_PASSWORD;
+
+    //port to serve the embedded DBs to other console nodes on (not served if blank)
+    private static final String DB_SERVER_PORT = AppConfig.getProperty("dbServerPort");
+
+    //audit data is kept in its own embedded DB unless auditDbUrl points elsewhere, or in the shared DB when dbUrl is set
+    private static final String AUDIT_DB_URL = StringUtils.isNotEmpty(AppConfig.getProperty("auditDbUrl")) ? AppConfig.getProperty("auditDbUrl").trim() : StringUtils.isNotEmpty(AppConfig.getProperty("dbUrl")) ? DB_URL : "jdbc:h2:" + DB_PATH + "/tethrnetaudit;CIPHER=AES";
+    private static final String AUDIT_DB_USER = StringUtils.isNotEmpty(AppConfig.getProperty("auditDbUser")) ? AppConfig.getProperty("auditDbUser") : DB_USER;
+    private static final String AUDIT_DB_PASSWORD = StringUtils.isNotEmpty(AppConfig.getProperty("auditDbPassword")) ? AppConfig.getProperty("auditDbPassword") : DB_PASSWORD;
+    private static final int AUDIT_MAX_ACTIVE = StringUtils.isNumeric(AppConfig.getProperty("auditDbMaxActive")) ? Integer.parseInt(AppConfig.getProperty("auditDbMaxActive")) : 10;
+    private static final long AUDIT_MAX_WAIT = StringUtils.isNumeric(AppConfig.getProperty("auditDbMaxWait")) ? Long.parseLong(AppConfig.getProperty("auditDbMaxWait")) : 5000;
+
+    private static final int MAX_ACTIVE = StringUtils.isNumeric(AppConfig.getProperty("dbMaxActive")) ? Integer.parseInt(AppConfig.getProperty("dbMaxActive")) : 25;
+    private static final long MAX_WAIT = StringUtils.isNumeric(AppConfig.getProperty("dbMaxWait")) ? Long.parseLong(AppConfig.getProperty("dbMaxWait")) : 15000;
+    private static final int MIN_IDLE = StringUtils.isNumeric(AppConfig.getProperty("dbMinIdle")) ? Integer.parseInt(AppConfig.getProperty("dbMinIdle")) : 2;
+    private static final int MAX_IDLE = StringUtils.isNumeric(AppConfig.getProperty("dbMaxIdle")) ? Integer.parseInt(AppConfig.getProperty("dbMaxIdle")) : 8;
+    private static final int MAX_OPEN_STATEMENTS = StringUtils.isNumeric(AppConfig.getProperty("dbMaxOpenStatements")) ? Integer.parseInt(AppConfig.getProperty("dbMaxOpenStatements")) : 50;
+    private static final long VALIDATION_INTERVAL = StringUtils.isNumeric(AppConfig.getProperty("dbValidationInterval")) ? Long.parseLong(AppConfig.getProperty("dbValidationInterval")) * 1000 : 30000;
+    private static final long MIN_EVICTABLE_IDLE_TIME = StringUtils.isNumeric(AppConfig.getProperty("dbMinEvictableIdleTime")) ? Long.parseLong(AppConfig.getProperty("dbMinEvictableIdleTime")) * 1000 : 300000;
+
+
+    private static MonitoredDataSource dsPool;
+    private static MonitoredDataSource auditDsPool;
 
 
     /**
-     * fetches the data source for H2 db
+     * fetches the data source for the application DB
      *
      * @return data source pool
      */
 
-    public static org.apache.commons.dbcp.PoolingDataSource getDataSource() {
+    public static synchronized org.apache.commons.dbcp.PoolingDataSource getDataSource() {
         if (dsPool == null) {
 
-            dsPool = registerDataSource();
+            dsPool = registerDataSource("tethrnetbox", DB_URL, DB_USER, DB_PASSWORD, MAX_ACTIVE, MAX_WAIT);
         }
         return dsPool;
 
     }
 
     /**
-     * register the data source for H2 DB
+     * fetches the data source for audit data, sized separately so audit writes can not starve
+     * logins and other interactive queries
      *
-     * @return pooling database object
+     * @return data source pool
      */
+    public static synchronized org.apache.commons.dbcp.PoolingDataSource getAuditDataSource() {
+        if (!isSeparateAuditDB()) {
+            return getDataSource();
+        }
+        if (auditDsPool == null) {
 
-    private static PoolingDataSource registerDataSource() {
+            auditDsPool = registerDataSource("tethrnetaudit", AUDIT_DB_URL, AUDIT_DB_USER, AUDIT_DB_PASSWORD, AUDIT_MAX_ACTIVE, AUDIT_MAX_WAIT);
+        }
+        return auditDsPool;
+    }
 
+    /**
+     * returns true if audit data is kept in a different DB than the rest of the application
+     *
+     * @return true if separate
+     */
+    public static boolean isSeparateAuditDB() {
+        return !DB_URL.equals(AUDIT_DB_URL);
+    }
 
-        // create a database connection
-        String user = "tethrnetbox";
-        String password = "filepwd 45WJLnwhpA47EepT162hrVnDn3vYRvJhpZi0sVdvN9Sdsf";
-        String connectionURI = "jdbc:h2:" + DB_PATH + "/tethrnetbox;CIPHER=AES";
+    /**
+     * returns true if the application DB is an embedded H2 DB
+     *
+     * @return true if embedded
+     */
+    public static boolean isEmbeddedDB() {
+        return DB_URL.startsWith("jdbc:h2:") && !DB_URL.startsWith("jdbc:h2:tcp:") && !DB_URL.startsWith("jdbc:h2:ssl:");
+    }
+
+    /**
+     * starts an H2 TCP server for the embedded DBs if dbServerPort is set, so other console nodes
+     * can use this node's DB with dbUrl=jdbc:h2:tcp://&lt;host&gt;:&lt;port&gt;/tethrnetbox;CIPHER=AES
+     */
+    public static void startDBServer() {
+        if (StringUtils.isNumeric(DB_SERVER_PORT) && isEmbeddedDB()) {
+            try {
+                org.h2.tools.Server.createTcpServer("-tcpPort", DB_SERVER_PORT, "-tcpAllowOthers", "-tcpDaemon", "-baseDir", DB_PATH).start();
+                log.info("Serving the embedded DB on port " + DB_SERVER_PORT);
+            } catch (Exception ex) {
+                log.error(ex.toString(), ex);
+            }
+        }
+    }
+
+    /**
+     * returns the state of each pool that has been created
+     *
+     * @return list of pool stats
+     */
+    public static synchronized List<PoolStats> getStats() {
+        List<PoolStats> statsList = new ArrayList<PoolStats>();
+        if (dsPool != null) {
+            statsList.add(dsPool.getStats());
+        }
+        if (auditDsPool != null) {
+            statsList.add(auditDsPool.getStats());
+        }
+        return statsList;
+    }
+
+    /**
+     * register a pooled data source. Idle connections are validated by the evictor instead of on
+     * every borrow and prepared statements are cached per connection
+     *
+     * @param name          pool name
+     * @param connectionURI JDBC URL
+     * @param user          DB user
+     * @param password      DB password
+     * @param maxActive     max number of connections
+     * @param maxWait       max milliseconds to wait for a connection
+     * @return pooling database object
+     */
+
+    private static MonitoredDataSource registerDataSource(String name, String connectionURI, String user, String password, int maxActive, long maxWait) {
 
         String validationQuery = "select 1";
 
         try {
-            Class.forName("org.h2.Driver");
+            Class.forName(DBDialect.forUrl(connectionURI).getDriverClass());
         } catch (ClassNotFoundException ex) {
             log.error(ex.toString(), ex);
         }
@@ -75,22 +183,31 @@ public class DSPool {
 
         GenericObjectPool connectionPool = new GenericObjectPool(null);
 
-        connectionPool.setMaxActive(25);
-        connectionPool.setTestOnBorrow(true);
-        connectionPool.setMinIdle(2);
-        connectionPool.setMaxWait(15000);
+        connectionPool.setMaxActive(maxActive);
+        connectionPool.setMinIdle(Math.min(MIN_IDLE, maxActive));
+        connectionPool.setMaxIdle(Math.max(MAX_IDLE, MIN_IDLE));
+        connectionPool.setMaxWait(maxWait);
         connectionPool.setWhenExhaustedAction(GenericObjectPool.WHEN_EXHAUSTED_BLOCK);
+        connectionPool.setTestOnBorrow(false);
+        connectionPool.setTestWhileIdle(true);
+        connectionPool.setTimeBetweenEvictionRunsMillis(VALIDATION_INTERVAL);
+        //test all idle connections on each run
+        connectionPool.setNumTestsPerEvictionRun(-1);
+        connectionPool.setMinEvictableIdleTimeMillis(MIN_EVICTABLE_IDLE_TIME);
 
 
         ConnectionFactory connectionFactory = new DriverManagerConnectionFactory(connectionURI, user, password);
 
+        KeyedObjectPoolFactory statementPoolFactory = null;
+        if (MAX_OPEN_STATEMENTS > 0) {
+            statementPoolFactory = new GenericKeyedObjectPoolFactory(null, -1, GenericKeyedObjectPool.WHEN_EXHAUSTED_FAIL, 0, 1, MAX_OPEN_STATEMENTS);
+        }
 
-        new PoolableConnectionFactory(connectionFactory, connectionPool, null, validationQuery, false, true);
+        new PoolableConnectionFactory(connectionFactory, connectionPool, statementPoolFactory, validationQuery, false, true);
 
-        return new PoolingDataSource(connectionPool);
+        return new MonitoredDataSource(name, connectionPool, MAX_OPEN_STATEMENTS);
 
     }
 
 
 }
-
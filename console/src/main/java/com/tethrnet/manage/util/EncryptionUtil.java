@@ -19,14 +19,18 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.Charset;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Utility to encrypt, decrypt, and hash
+ * Utility to encrypt, decrypt, and hash. Values are encrypted with AES/GCM and a random IV, and
+ * prefixed with the format version. Values without a prefix were encrypted with the old AES/ECB
+ * transform and can still be decrypted. Initialized ciphers are kept per thread.
  */
 public class EncryptionUtil {
 
@@ -34,6 +38,45 @@ public class EncryptionUtil {
 
     //secret key
     private static final byte[] key = new byte[]{'d', '3', '2', 't', 'p', 'd', 'M', 'o', 'I', '8', 'x', 'z', 'a', 'P', 'o', 'd'};
+    private static final SecretKeySpec keySpec = new SecretKeySpec(key, "AES");
+
+    //prefix of values encrypted with AES/GCM
+    public static final String GCM_PREFIX = "v2:";
+    private static final String GCM_TRANSFORM = "AES/GCM/NoPadding";
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 128;
+    private static final String LEGACY_TRANSFORM = "AES";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final SecureRandom secureRandom = new SecureRandom();
+
+    private static final ThreadLocal<Cipher> gcmCipher = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(GCM_TRANSFORM);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+
+    //legacy ciphers are initialized once per thread since ECB takes no IV
+    private static final ThreadLocal<Cipher> legacyEncryptCipher = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            return legacyCipher(Cipher.ENCRYPT_MODE);
+        }
+    };
+    private static final ThreadLocal<Cipher> legacyDecryptCipher = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            return legacyCipher(Cipher.DECRYPT_MODE);
+        }
+    };
+
+    //false if the JVM has no AES/GCM provider, values are then encrypted with the legacy transform
+    private static final boolean gcmAvailable = isGcmAvailable();
 
     /**
      * generate salt for hash
@@ -42,7 +85,6 @@ public class EncryptionUtil {
      */
     public static String generateSalt() {
         byte[] salt = new byte[32];
-        SecureRandom secureRandom = new SecureRandom();
         secureRandom.nextBytes(salt);
         return new String(Base64.encodeBase64(salt));
     }
@@ -90,10 +132,19 @@ public class EncryptionUtil {
         String retVal = null;
         if (str != null && str.length() > 0) {
             try {
-                Cipher c = Cipher.getInstance("AES");
-                c.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
-                byte[] encVal = c.doFinal(str.getBytes());
-                retVal = new String(Base64.encodeBase64(encVal));
+                if (gcmAvailable) {
+                    byte[] iv = new byte[GCM_IV_LENGTH];
+                    secureRandom.nextBytes(iv);
+                    Cipher c = gcmCipher.get();
+                    c.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+                    byte[] encVal = c.doFinal(str.getBytes(UTF_8));
+                    byte[] ivAndEncVal = new byte[iv.length + encVal.length];
+                    System.arraycopy(iv, 0, ivAndEncVal, 0, iv.length);
+                    System.arraycopy(encVal, 0, ivAndEncVal, iv.length, encVal.length);
+                    retVal = GCM_PREFIX + new String(Base64.encodeBase64(ivAndEncVal));
+                } else {
+                    retVal = new String(Base64.encodeBase64(legacyEncryptCipher.get().doFinal(str.getBytes(UTF_8))));
+                }
             } catch (Exception ex) {
                 log.error(ex.toString(), ex);
             }
@@ -112,10 +163,15 @@ public class EncryptionUtil {
         String retVal = null;
         if (str != null && str.length() > 0) {
             try {
-                Cipher c = Cipher.getInstance("AES");
-                c.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"));
-                byte[] decodedVal = Base64.decodeBase64(str.getBytes());
-                retVal = new String(c.doFinal(decodedVal));
+                if (str.startsWith(GCM_PREFIX)) {
+                    byte[] ivAndEncVal = Base64.decodeBase64(str.substring(GCM_PREFIX.length()).getBytes());
+                    Cipher c = gcmCipher.get();
+                    c.init(Cipher.DECRYPT_MODE, keySpec, new GCMParameterSpec(GCM_TAG_LENGTH, ivAndEncVal, 0, GCM_IV_LENGTH));
+                    retVal = new String(c.doFinal(ivAndEncVal, GCM_IV_LENGTH, ivAndEncVal.length - GCM_IV_LENGTH), UTF_8);
+                } else {
+                    byte[] decodedVal = Base64.decodeBase64(str.getBytes());
+                    retVal = new String(legacyDecryptCipher.get().doFinal(decodedVal), UTF_8);
+                }
             } catch (Exception ex) {
                 log.error(ex.toString(), ex);
             }
@@ -124,5 +180,46 @@ public class EncryptionUtil {
         return retVal;
     }
 
+    /**
+     * returns true if a value was encrypted with the legacy transform and should be encrypted again
+     *
+     * @param str encrypted string
+     * @return true if legacy
+     */
+    public static boolean isLegacy(String str) {
+        return gcmAvailable && str != null && str.length() > 0 && !str.startsWith(GCM_PREFIX);
+    }
+
+    /**
+     * returns a legacy cipher initialized for a mode
+     *
+     * @param mode encrypt or decrypt mode
+     * @return cipher
+     */
+    private static Cipher legacyCipher(int mode) {
+        try {
+            Cipher c = Cipher.getInstance(LEGACY_TRANSFORM);
+            c.init(mode, keySpec);
+            return c;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * returns true if AES/GCM can be used
+     *
+     * @return true if available
+     */
+    private static boolean isGcmAvailable() {
+        try {
+            Cipher.getInstance(GCM_TRANSFORM);
+            return true;
+        } catch (Exception ex) {
+            log.warn("AES/GCM is not available, values are encrypted with the legacy transform");
+            return false;
+        }
+    }
+
 
 }
@@ -0,0 +1,216 @@
+package com.tethrnet.manage.util;
+
+import com.tethrnet.common.util.AppConfig;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded in-memory cache for DB entities, the least recently used entry is evicted once the cache
+ * is full. Entries are copied when read so callers can change what they get back, and the DAO
+ * methods that write an entity remove it from the cache.
+ * <p>
+ * A value loaded while the cache was being invalidated is not stored, so a reader racing with a
+ * writer never puts the old row back. Loaders take {@link #getVersion()} before reading the DB and
+ * pass it to {@link #put(Object, Object, long)}.
+ * <p>
+ * Writes made by other console nodes sharing the DB are not seen until the entry expires, after
+ * entityCacheTtl seconds.
+ */
+public abstract class EntityCache<K, V> {
+
+    public static final int DEFAULT_SIZE = StringUtils.isNumeric(AppConfig.getProperty("entityCacheSize")) ? Integer.parseInt(AppConfig.getProperty("entityCacheSize")) : 1000;
+    //milliseconds an entry is used for before it is read again, 0 for no expiry
+    private static final long TTL = StringUtils.isNumeric(AppConfig.getProperty("entityCacheTtl")) ? Long.parseLong(AppConfig.getProperty("entityCacheTtl")) * 1000 : 0;
+
+    private static final List<EntityCache<?, ?>> cacheList = Collections.synchronizedList(new ArrayList<EntityCache<?, ?>>());
+
+    private final String name;
+    private final int maxSize;
+    private final Map<K, Entry<V>> entryMap;
+
+    //incremented on every invalidation
+    private long version = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long expirations = 0;
+
+
+    /**
+     * @param name    name shown in the cache stats
+     * @param maxSize max number of entries, 0 turns the cache off
+     */
+    public EntityCache(String name, final int maxSize) {
+        this.name = name;
+        this.maxSize = Math.max(maxSize, 0);
+        this.entryMap = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > EntityCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        cacheList.add(this);
+    }
+
+    /**
+     * returns a copy of the value so it can be changed by the caller
+     *
+     * @param value cached value
+     * @return copy of the value
+     */
+    protected abstract V copy(V value);
+
+    /**
+     * returns a copy of the cached value
+     *
+     * @param key entity key
+     * @return copy of the value or null if not cached
+     */
+    public V get(K key) {
+        V value = null;
+        synchronized (this) {
+            Entry<V> entry = entryMap.get(key);
+            if (entry != null && TTL > 0 && System.currentTimeMillis() - entry.loadTm > TTL) {
+                entryMap.remove(key);
+                expirations++;
+                entry = null;
+            }
+            if (entry != null) {
+                value = entry.value;
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        return value != null ? copy(value) : null;
+    }
+
+    /**
+     * returns the version to pass to put, must be taken before the value is read from the DB
+     *
+     * @return cache version
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * caches a copy of the value unless the cache was invalidated after the value was read
+     *
+     * @param key     entity key
+     * @param value   value read from the DB
+     * @param version cache version taken before the value was read
+     */
+    public void put(K key, V value, long version) {
+        if (key == null || value == null || maxSize == 0) {
+            return;
+        }
+        V copy = copy(value);
+        synchronized (this) {
+            if (this.version == version) {
+                entryMap.put(key, new Entry<V>(copy));
+            }
+        }
+    }
+
+    /**
+     * removes an entry after it has been changed in the DB
+     *
+     * @param key entity key
+     */
+    public synchronized void remove(K key) {
+        version++;
+        entryMap.remove(key);
+    }
+
+    /**
+     * removes all entries, used when a change can affect entries that cannot be looked up by key
+     */
+    public synchronized void clear() {
+        version++;
+        entryMap.clear();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public synchronized int getSize() {
+        return entryMap.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized long getExpirations() {
+        return expirations;
+    }
+
+    /**
+     * @return hits divided by reads, 0 if nothing has been read
+     */
+    public synchronized double getHitRatio() {
+        return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + " size=" + entryMap.size() + "/" + maxSize + " hits=" + hits + " misses=" + misses + " evictions=" + evictions + " expirations=" + expirations;
+    }
+
+    /**
+     * returns all entity caches, for stats
+     *
+     * @return list of caches
+     */
+    public static List<EntityCache<?, ?>> getCacheList() {
+        synchronized (cacheList) {
+            return new ArrayList<EntityCache<?, ?>>(cacheList);
+        }
+    }
+
+    /**
+     * removes the entries of all entity caches
+     */
+    public static void clearAll() {
+        for (EntityCache<?, ?> cache : getCacheList()) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * cached value and the time it was read from the DB
+     */
+    private static class Entry<V> {
+        final V value;
+        final long loadTm = System.currentTimeMillis();
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+}
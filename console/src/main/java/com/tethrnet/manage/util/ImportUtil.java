@@ -0,0 +1,431 @@
+package com.tethrnet.manage.util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import com.tethrnet.manage.db.ProfileDB;
+import com.tethrnet.manage.db.ProfileSystemsDB;
+import com.tethrnet.manage.db.PublicKeyDB;
+import com.tethrnet.manage.db.SystemDB;
+import com.tethrnet.manage.db.UserDB;
+import com.tethrnet.manage.model.AuditPolicy;
+import com.tethrnet.manage.model.HostSystem;
+import com.tethrnet.manage.model.ImportResult;
+import com.tethrnet.manage.model.Profile;
+import com.tethrnet.manage.model.PublicKey;
+import com.tethrnet.manage.model.SortedSet;
+import com.tethrnet.manage.model.User;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports systems and public keys from CSV or JSON files. A CSV file has a header row with the field
+ * names, a JSON file is an array of objects. Field names are matched ignoring case and underscores,
+ * so display_nm and displayNm are the same field. Records are checked first and nothing is imported
+ * if any record has an error.
+ */
+public class ImportUtil {
+
+    private static Logger log = LoggerFactory.getLogger(ImportUtil.class);
+
+    private static final int MAX_PORT = 65535;
+
+    private ImportUtil() {
+    }
+
+    /**
+     * parses a CSV or JSON file into records of field name to value, field names are lower case
+     * without underscores
+     *
+     * @param fileNm  file name, a .json file or content starting with [ is read as JSON
+     * @param content file content
+     * @return records in file order, a null JSON record is an empty record
+     */
+    public static List<Map<String, String>> parseRecords(String fileNm, String content) {
+
+        List<Map<String, String>> recordList = new ArrayList<Map<String, String>>();
+        if (StringUtils.isBlank(content)) {
+            return recordList;
+        }
+        if (StringUtils.endsWithIgnoreCase(fileNm, ".json") || content.trim().startsWith("[")) {
+            List<Map<String, Object>> jsonList;
+            try {
+                jsonList = new Gson().fromJson(content, new TypeToken<List<Map<String, Object>>>() {
+                }.getType());
+            } catch (JsonParseException ex) {
+                throw new IllegalArgumentException("Invalid JSON: " + ex.getMessage());
+            }
+            if (jsonList == null) {
+                return recordList;
+            }
+            for (Map<String, Object> jsonRecord : jsonList) {
+                Map<String, String> record = new HashMap<String, String>();
+                if (jsonRecord == null) {
+                    recordList.add(record);
+                    continue;
+                }
+                for (Map.Entry<String, Object> entry : jsonRecord.entrySet()) {
+                    Object value = entry.getValue();
+                    //gson reads all numbers as doubles
+                    if (value instanceof Double && ((Double) value) == Math.floor((Double) value)) {
+                        value = ((Double) value).longValue();
+                    }
+                    record.put(fieldNm(entry.getKey()), value != null ? value.toString().trim() : null);
+                }
+                recordList.add(record);
+            }
+        } else {
+            List<String> headerList = null;
+            for (String line : content.split("\r?\n")) {
+                if (StringUtils.isBlank(line) || line.trim().startsWith("#")) {
+                    continue;
+                }
+                List<String> valueList = parseCSVLine(line);
+                if (headerList == null) {
+                    headerList = new ArrayList<String>();
+                    for (String header : valueList) {
+                        headerList.add(fieldNm(header));
+                    }
+                } else {
+                    Map<String, String> record = new HashMap<String, String>();
+                    for (int i = 0; i < headerList.size() && i < valueList.size(); i++) {
+                        record.put(headerList.get(i), valueList.get(i).trim());
+                    }
+                    recordList.add(record);
+                }
+            }
+        }
+        return recordList;
+    }
+
+    /**
+     * splits a CSV line, values can be quoted with " and a quote inside a quoted value is written ""
+     *
+     * @param line CSV line
+     * @return values
+     */
+    static List<String> parseCSVLine(String line) {
+        List<String> valueList = new ArrayList<String>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                valueList.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        valueList.add(value.toString());
+        return valueList;
+    }
+
+    /**
+     * parses a TCP port
+     *
+     * @param value port from the file
+     * @return port or null if it is not a number from 1 to 65535
+     */
+    static Integer parsePort(String value) {
+        if (!StringUtils.isNumeric(value) || value.length() > 5) {
+            return null;
+        }
+        int port = Integer.parseInt(value);
+        return port > 0 && port <= MAX_PORT ? port : null;
+    }
+
+    /**
+     * normalizes a field name
+     *
+     * @param name field name from the file
+     * @return lower case name without underscores
+     */
+    private static String fieldNm(String name) {
+        return name == null ? "" : name.trim().replace("_", "").toLowerCase();
+    }
+
+    /**
+     * imports systems, systems with the same user, host and port as an existing system are skipped
+     * but are still added to the profile of the record. Fields are host, user, port, display_nm,
+     * authorized_keys, audit_policy and profile, only host is required.
+     *
+     * @param recordList parsed records
+     * @return import result
+     */
+    public static ImportResult importSystems(List<Map<String, String>> recordList) {
+
+        ImportResult result = new ImportResult();
+        result.setRecordCount(recordList.size());
+
+        Map<String, Long> existingMap = new HashMap<String, Long>();
+        for (HostSystem hostSystem : SystemDB.getAllSystems()) {
+            existingMap.put(systemKey(hostSystem), hostSystem.getId());
+        }
+        Map<String, Profile> profileMap = new HashMap<String, Profile>();
+        for (Profile profile : ProfileDB.getAllProfiles()) {
+            profileMap.put(profile.getNm(), profile);
+        }
+
+        Map<String, HostSystem> newSystemMap = new LinkedHashMap<String, HostSystem>();
+        Map<Long, Set<HostSystem>> profileSystemMap = new LinkedHashMap<Long, Set<HostSystem>>();
+
+        int recordNum = 0;
+        for (Map<String, String> record : recordList) {
+            recordNum++;
+            HostSystem hostSystem = new HostSystem();
+            hostSystem.setHost(record.get("host"));
+            if (StringUtils.isNotEmpty(record.get("user"))) {
+                hostSystem.setUser(record.get("user"));
+            }
+            hostSystem.setDisplayNm(StringUtils.isNotEmpty(record.get("displaynm")) ? record.get("displaynm") : record.get("host"));
+            if (StringUtils.isNotEmpty(record.get("authorizedkeys"))) {
+                hostSystem.setAuthorizedKeys(record.get("authorizedkeys"));
+            }
+            hostSystem.setAuditPolicy(record.get("auditpolicy"));
+
+            if (StringUtils.isEmpty(hostSystem.getHost())) {
+                result.getErrorList().add("Record " + recordNum + ": host is required");
+                continue;
+            }
+            if (StringUtils.isNotEmpty(record.get("port"))) {
+                Integer port = parsePort(record.get("port"));
+                if (port == null) {
+                    result.getErrorList().add("Record " + recordNum + ": invalid port " + record.get("port"));
+                    continue;
+                }
+                hostSystem.setPort(port);
+            }
+            if (StringUtils.isNotEmpty(hostSystem.getAuditPolicy()) && !AuditPolicy.isValid(hostSystem.getAuditPolicy())) {
+                result.getErrorList().add("Record " + recordNum + ": invalid audit policy " + hostSystem.getAuditPolicy());
+                continue;
+            }
+            Profile profile = null;
+            if (StringUtils.isNotEmpty(record.get("profile"))) {
+                profile = profileMap.get(record.get("profile"));
+                if (profile == null) {
+                    result.getErrorList().add("Record " + recordNum + ": profile " + record.get("profile") + " does not exist");
+                    continue;
+                }
+            }
+
+            String key = systemKey(hostSystem);
+            if (existingMap.containsKey(key)) {
+                hostSystem.setId(existingMap.get(key));
+                result.setSkippedCount(result.getSkippedCount() + 1);
+            } else if (newSystemMap.containsKey(key)) {
+                hostSystem = newSystemMap.get(key);
+                result.setSkippedCount(result.getSkippedCount() + 1);
+            } else {
+                newSystemMap.put(key, hostSystem);
+            }
+            if (profile != null) {
+                if (!profileSystemMap.containsKey(profile.getId())) {
+                    profileSystemMap.put(profile.getId(), new LinkedHashSet<HostSystem>());
+                }
+                profileSystemMap.get(profile.getId()).add(hostSystem);
+            }
+        }
+
+        if (!result.getErrorList().isEmpty()) {
+            result.setSkippedCount(0);
+            return result;
+        }
+
+        Connection con = null;
+        try {
+            con = DBUtils.getConn();
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                SystemDB.insertSystems(con, new ArrayList<HostSystem>(newSystemMap.values()));
+                for (Map.Entry<Long, Set<HostSystem>> entry : profileSystemMap.entrySet()) {
+                    Set<Long> systemIdSet = new LinkedHashSet<Long>(ProfileSystemsDB.getSystemIdsByProfile(con, entry.getKey()));
+                    for (HostSystem hostSystem : entry.getValue()) {
+                        systemIdSet.add(hostSystem.getId());
+                    }
+                    ProfileSystemsDB.setSystemsForProfile(con, entry.getKey(), new ArrayList<Long>(systemIdSet));
+                }
+                con.commit();
+                result.setAddedCount(newSystemMap.size());
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+            result.setSkippedCount(0);
+            result.getErrorList().add("Import failed: " + ex.getMessage());
+        }
+        DBUtils.closeConn(con);
+        for (Long profileId : profileSystemMap.keySet()) {
+            ProfileSystemsDB.invalidate(profileId);
+        }
+
+        //distribute keys to the systems added to profiles
+        if (result.getErrorList().isEmpty()) {
+            for (Long profileId : profileSystemMap.keySet()) {
+                RefreshAuthKeyUtil.refreshProfileSystems(profileId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * imports public keys for existing users, keys the user already has are skipped. Fields are
+     * username, public_key, key_nm and profile, username and public_key are required.
+     *
+     * @param recordList parsed records
+     * @return import result
+     */
+    public static ImportResult importPublicKeys(List<Map<String, String>> recordList) {
+
+        ImportResult result = new ImportResult();
+        result.setRecordCount(recordList.size());
+
+        Map<String, User> userMap = new HashMap<String, User>();
+        for (Object user : UserDB.getUserSet(new SortedSet()).getItemList()) {
+            userMap.put(((User) user).getUsername().toLowerCase(), (User) user);
+        }
+        Map<String, Profile> profileMap = new HashMap<String, Profile>();
+        for (Profile profile : ProfileDB.getAllProfiles()) {
+            profileMap.put(profile.getNm(), profile);
+        }
+
+        Set<String> registeredSet = new HashSet<String>();
+        Set<String> disabledSet = new HashSet<String>();
+        Connection con = null;
+        try {
+            con = DBUtils.getConn();
+            for (PublicKey publicKey : PublicKeyDB.getKeyFingerprints(con)) {
+                registeredSet.add(publicKey.getUserId() + ":" + publicKey.getFingerprint());
+                if (!publicKey.getEnabled()) {
+                    disabledSet.add(publicKey.getFingerprint());
+                }
+            }
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+        DBUtils.closeConn(con);
+
+        List<PublicKey> publicKeyList = new ArrayList<PublicKey>();
+        int recordNum = 0;
+        for (Map<String, String> record : recordList) {
+            recordNum++;
+            User user = StringUtils.isNotEmpty(record.get("username")) ? userMap.get(record.get("username").toLowerCase()) : null;
+            if (user == null) {
+                result.getErrorList().add("Record " + recordNum + ": user " + record.get("username") + " does not exist");
+                continue;
+            }
+            String fingerprint = SSHUtil.getFingerprint(record.get("publickey"));
+            if (fingerprint == null) {
+                result.getErrorList().add("Record " + recordNum + ": invalid public key");
+                continue;
+            }
+            if (disabledSet.contains(fingerprint)) {
+                result.getErrorList().add("Record " + recordNum + ": public key has been disabled");
+                continue;
+            }
+            PublicKey publicKey = new PublicKey();
+            publicKey.setUserId(user.getId());
+            publicKey.setPublicKey(record.get("publickey"));
+            publicKey.setKeyNm(StringUtils.isNotEmpty(record.get("keynm")) ? record.get("keynm") : user.getUsername());
+            if (StringUtils.isNotEmpty(record.get("profile"))) {
+                Profile profile = profileMap.get(record.get("profile"));
+                if (profile == null) {
+                    result.getErrorList().add("Record " + recordNum + ": profile " + record.get("profile") + " does not exist");
+                    continue;
+                }
+                publicKey.setProfile(profile);
+            }
+            if (!registeredSet.add(user.getId() + ":" + fingerprint)) {
+                result.setSkippedCount(result.getSkippedCount() + 1);
+                continue;
+            }
+            publicKeyList.add(publicKey);
+        }
+
+        if (!result.getErrorList().isEmpty()) {
+            result.setSkippedCount(0);
+            return result;
+        }
+
+        con = null;
+        try {
+            con = DBUtils.getConn();
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                PublicKeyDB.insertPublicKeys(con, publicKeyList);
+                con.commit();
+                result.setAddedCount(publicKeyList.size());
+            } catch (Exception ex) {
+                con.rollback();
+                throw ex;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+            result.setSkippedCount(0);
+            result.getErrorList().add("Import failed: " + ex.getMessage());
+            publicKeyList.clear();
+        }
+        DBUtils.closeConn(con);
+
+        //distribute keys to the systems of their profiles, or to all systems
+        Set<Long> profileIdSet = new LinkedHashSet<Long>();
+        boolean allSystems = false;
+        for (PublicKey publicKey : publicKeyList) {
+            if (publicKey.getProfile() != null) {
+                profileIdSet.add(publicKey.getProfile().getId());
+            } else {
+                allSystems = true;
+            }
+        }
+        if (allSystems) {
+            RefreshAuthKeyUtil.refreshAllSystems();
+        } else {
+            for (Long profileId : profileIdSet) {
+                RefreshAuthKeyUtil.refreshProfileSystems(profileId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * returns the key used to find a system that is already registered
+     *
+     * @param hostSystem host system
+     * @return user@host:port
+     */
+    private static String systemKey(HostSystem hostSystem) {
+        return hostSystem.getUser() + "@" + hostSystem.getHost().toLowerCase() + ":" + hostSystem.getPort();
+    }
+
+}
@@ -0,0 +1,384 @@
+package com.tethrnet.manage.util;
+
+import com.dadynent.sa.inventory.exception.RetrieveInventoryException;
+import com.dadynent.sa.inventory.model.Account;
+import com.dadynet.sa.inventory.factory.InventoryListener;
+import com.google.gson.Gson;
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.manage.db.ProfileDB;
+import com.tethrnet.manage.db.ProfileSystemsDB;
+import com.tethrnet.manage.db.SystemDB;
+import com.tethrnet.manage.db.UserDB;
+import com.tethrnet.manage.model.HostSystem;
+import com.tethrnet.manage.model.Profile;
+import com.tethrnet.manage.model.User;
+import com.tethrnet.manage.socket.SystemsWS;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Syncs the systems of a user's service VM profile with the user's inventory account in the
+ * background. Systems are matched by inventory key, so only changed systems are updated, new
+ * ones inserted and vanished ones deleted, and the ids of the others stay the same. Changes
+ * reported by the inventory are synced right away for users with an open systems page and pushed
+ * to the page.
+ */
+public class InventorySyncUtil {
+
+    private static Logger log = LoggerFactory.getLogger(InventorySyncUtil.class);
+
+    //min nanoseconds between syncs of the systems of a user
+    private static final long SYNC_INTERVAL = (StringUtils.isNumeric(AppConfig.getProperty("inventorySyncInterval")) ? Long.parseLong(AppConfig.getProperty("inventorySyncInterval")) : 30) * 1000000000L;
+
+    public static final String SERVICE_VM_PROFILE = "_serviceVm";
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "inventory-sync");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    //start of the last sync by user id
+    private static final Map<Long, Long> lastSyncMap = new ConcurrentHashMap<Long, Long>();
+
+    //queued or running sync by user id
+    private static final Map<Long, Future<?>> syncMap = new ConcurrentHashMap<Long, Future<?>>();
+
+    //users with a running sync and users to sync again once it is done
+    private static final Set<Long> runningSet = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private static final Set<Long> rerunSet = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    private static final InventoryListener listener = new InventoryListener() {
+        @Override
+        public void accountChanged(final Account account) {
+            //the user is looked up off the provider thread
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Long userId = UserDB.getUserIdByUsername(account.getAccountName());
+                    if (userId != null && SystemsWS.isOpen(userId)) {
+                        requestSync(userId, true);
+                    }
+                }
+            });
+        }
+    };
+
+
+    private InventorySyncUtil() {
+    }
+
+    /**
+     * registers for changes of the inventory
+     */
+    public static void startListener() {
+        InventoryUtil.getInventory().addListener(listener);
+    }
+
+    /**
+     * unregisters from the inventory
+     */
+    public static void stopListener() {
+        InventoryUtil.getInventory().removeListener(listener);
+    }
+
+    /**
+     * queues a sync of the systems of a user unless one is queued or ran within the sync interval
+     *
+     * @param userId user id
+     * @return the queued or running sync, null if the systems were synced recently
+     */
+    public static Future<?> requestSync(Long userId) {
+        return requestSync(userId, false);
+    }
+
+    /**
+     * queues a sync of the systems of a user. A forced sync ignores the sync interval and runs again
+     * after a running sync, so a change made during the running sync is not missed.
+     *
+     * @param userId user id
+     * @param force  true to sync even if the systems were synced recently
+     * @return the queued or running sync, null if the systems were synced recently
+     */
+    public static Future<?> requestSync(Long userId, boolean force) {
+        Future<?> future = syncMap.get(userId);
+        if (future != null && !force) {
+            return future;
+        }
+        Long lastSync = lastSyncMap.get(userId);
+        if (!force && lastSync != null && System.nanoTime() - lastSync < SYNC_INTERVAL) {
+            return null;
+        }
+        synchronized (syncMap) {
+            future = syncMap.get(userId);
+            if (future == null) {
+                future = submitSync(userId);
+            } else if (force && runningSet.contains(userId)) {
+                rerunSet.add(userId);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * submits a sync, called holding the syncMap lock
+     */
+    private static Future<?> submitSync(final Long userId) {
+        lastSyncMap.put(userId, System.nanoTime());
+        Future<?> future = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                runningSet.add(userId);
+                try {
+                    syncSystems(userId);
+                } finally {
+                    synchronized (syncMap) {
+                        runningSet.remove(userId);
+                        syncMap.remove(userId);
+                        if (rerunSet.remove(userId)) {
+                            submitSync(userId);
+                        }
+                    }
+                }
+            }
+        });
+        syncMap.put(userId, future);
+        return future;
+    }
+
+    /**
+     * waits for a sync requested with requestSync
+     *
+     * @param future  sync or null
+     * @param timeout max milliseconds to wait
+     */
+    public static void waitForSync(Future<?> future, long timeout) {
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            log.debug("Inventory sync still running: " + ex.toString());
+        }
+    }
+
+    /**
+     * syncs the systems of the user's service VM profile with the user's inventory account and pushes
+     * the changes to open systems pages, nothing is changed if the inventory could not be read
+     *
+     * @param userId user id
+     */
+    public static void syncSystems(Long userId) {
+
+        User user = UserDB.getUser(userId);
+        if (user == null) {
+            return;
+        }
+        Profile profile = ProfileDB.getProfileByName(user.getUsername() + SERVICE_VM_PROFILE);
+        if (profile == null) {
+            return;
+        }
+        List<HostSystem> hostSystemList;
+        try {
+            hostSystemList = InventoryUtil.listHostSystems(user.getUsername());
+        } catch (RetrieveInventoryException ex) {
+            log.warn("Inventory for " + user.getUsername() + " could not be read, systems are not synced");
+            return;
+        }
+
+        SyncResult result = new SyncResult();
+        Connection con = null;
+        try {
+            con = DBUtils.getConn();
+            boolean autoCommit = con.getAutoCommit();
+            con.setAutoCommit(false);
+            try {
+                result = syncSystems(con, profile.getId(), hostSystemList);
+                con.commit();
+            } catch (Exception ex) {
+                con.rollback();
+                result = new SyncResult();
+                throw ex;
+            } finally {
+                con.setAutoCommit(autoCommit);
+            }
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+        DBUtils.closeConn(con);
+        if (!result.isEmpty()) {
+            ProfileSystemsDB.invalidate(profile.getId());
+            SystemDB.invalidateSystems(result.getChangedIdList());
+            SystemsWS.push(userId, result.toJson());
+        }
+    }
+
+    /**
+     * applies the difference between the inventory and the systems of a profile. Systems written before
+     * inventory keys were kept are matched by host. The inventory can list VMs that share a key, such
+     * as VMs with the same manage IP, so one system is kept per key.
+     *
+     * @param con            DB connection
+     * @param profileId      service VM profile id
+     * @param hostSystemList systems in the inventory
+     * @return added, updated and removed systems
+     */
+    private static SyncResult syncSystems(Connection con, Long profileId, List<HostSystem> hostSystemList) throws Exception {
+
+        Map<String, HostSystem> inventoryMap = new LinkedHashMap<String, HostSystem>();
+        for (HostSystem hostSystem : hostSystemList) {
+            String key = hostSystem.getInventoryKey() != null ? hostSystem.getInventoryKey() : hostSystem.getHost();
+            if (inventoryMap.containsKey(key)) {
+                log.debug("Inventory lists " + key + " more than once for profile " + profileId + ", the first is synced");
+            } else {
+                inventoryMap.put(key, hostSystem);
+            }
+        }
+
+        //systems sharing a key with an earlier one are removed
+        List<Long> deleteIdList = new ArrayList<Long>();
+        Map<String, HostSystem> keyMap = new HashMap<String, HostSystem>();
+        Map<String, HostSystem> hostMap = new HashMap<String, HostSystem>();
+        for (HostSystem current : SystemDB.getInventorySystems(con, profileId)) {
+            Map<String, HostSystem> currentMap = current.getInventoryKey() != null ? keyMap : hostMap;
+            String key = current.getInventoryKey() != null ? current.getInventoryKey() : current.getHost();
+            if (currentMap.containsKey(key)) {
+                deleteIdList.add(current.getId());
+            } else {
+                currentMap.put(key, current);
+            }
+        }
+
+        List<HostSystem> insertList = new ArrayList<HostSystem>();
+        List<HostSystem> updateList = new ArrayList<HostSystem>();
+        List<Long> systemIdList = new ArrayList<Long>();
+        for (HostSystem hostSystem : inventoryMap.values()) {
+            HostSystem current = keyMap.remove(hostSystem.getInventoryKey());
+            if (current == null) {
+                current = hostMap.remove(hostSystem.getHost());
+            }
+            if (current == null) {
+                insertList.add(hostSystem);
+                continue;
+            }
+            hostSystem.setId(current.getId());
+            systemIdList.add(current.getId());
+            if (!isSame(current, hostSystem)) {
+                updateList.add(hostSystem);
+            }
+        }
+        for (HostSystem current : keyMap.values()) {
+            deleteIdList.add(current.getId());
+        }
+        for (HostSystem current : hostMap.values()) {
+            deleteIdList.add(current.getId());
+        }
+
+        SyncResult result = new SyncResult(insertList, updateList, deleteIdList);
+        if (result.isEmpty()) {
+            return result;
+        }
+        SystemDB.deleteSystems(con, deleteIdList);
+        SystemDB.updateInventorySystems(con, updateList);
+        systemIdList.addAll(SystemDB.insertSystems(con, insertList));
+        ProfileSystemsDB.setSystemsForProfile(con, profileId, systemIdList);
+
+        log.debug("Synced systems of profile " + profileId + ": " + insertList.size() + " added, " + updateList.size() + " updated, " + deleteIdList.size() + " removed");
+
+        return result;
+    }
+
+    /**
+     * true if a system already has the inventory fields of a synced system
+     */
+    private static boolean isSame(HostSystem current, HostSystem hostSystem) {
+        return StringUtils.equals(current.getInventoryKey(), hostSystem.getInventoryKey())
+                && StringUtils.equals(current.getDisplayNm(), hostSystem.getDisplayNm())
+                && StringUtils.equals(current.getUser(), hostSystem.getUser())
+                && StringUtils.equals(current.getHost(), hostSystem.getHost())
+                && current.getPort().equals(hostSystem.getPort())
+                && StringUtils.equals(current.getAuthorizedKeys(), hostSystem.getAuthorizedKeys());
+    }
+
+    /**
+     * systems changed by a sync
+     */
+    private static class SyncResult {
+
+        private List<HostSystem> addedList = new ArrayList<HostSystem>();
+        private List<HostSystem> updatedList = new ArrayList<HostSystem>();
+        private List<Long> removedIdList = new ArrayList<Long>();
+
+        SyncResult() {
+        }
+
+        SyncResult(List<HostSystem> addedList, List<HostSystem> updatedList, List<Long> removedIdList) {
+            this.addedList = addedList;
+            this.updatedList = updatedList;
+            this.removedIdList = removedIdList;
+        }
+
+        boolean isEmpty() {
+            return addedList.isEmpty() && updatedList.isEmpty() && removedIdList.isEmpty();
+        }
+
+        /**
+         * ids of the updated and removed systems
+         */
+        List<Long> getChangedIdList() {
+            List<Long> changedIdList = new ArrayList<Long>(removedIdList);
+            for (HostSystem hostSystem : updatedList) {
+                changedIdList.add(hostSystem.getId());
+            }
+            return changedIdList;
+        }
+
+        /**
+         * changes as {"added":[system],"updated":[system],"removed":[id]} with the columns of the systems page
+         */
+        String toJson() {
+            Map<String, Object> jsonRoot = new LinkedHashMap<String, Object>();
+            jsonRoot.put("added", toJson(addedList));
+            jsonRoot.put("updated", toJson(updatedList));
+            jsonRoot.put("removed", removedIdList);
+            return new Gson().toJson(jsonRoot);
+        }
+
+        private static List<Map<String, Object>> toJson(List<HostSystem> hostSystemList) {
+            List<Map<String, Object>> jsonList = new ArrayList<Map<String, Object>>();
+            for (HostSystem hostSystem : hostSystemList) {
+                Map<String, Object> json = new LinkedHashMap<String, Object>();
+                json.put("id", hostSystem.getId());
+                json.put("displayNm", hostSystem.getDisplayNm());
+                json.put("user", hostSystem.getUser());
+                json.put("host", hostSystem.getHost());
+                json.put("port", hostSystem.getPort());
+                jsonList.add(json);
+            }
+            return jsonList;
+        }
+    }
+}
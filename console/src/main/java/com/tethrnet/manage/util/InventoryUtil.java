@@ -7,41 +7,51 @@ import com.dadynent.sa.inventory.exception.RetrieveInventoryException;
 import com.dadynent.sa.inventory.model.Account;
 import com.dadynent.sa.inventory.model.VirtualMachine;
 import com.dadynet.sa.inventory.factory.DmsInventory;
-import com.dadynet.sa.inventory.factory.DmsInventoryFactory;
+import com.dadynet.sa.inventory.factory.DmsInventoryRegistry;
 import com.tethrnet.common.util.AppConfig;
-import com.tethrnet.manage.db.SystemDB;
 import com.tethrnet.manage.model.HostSystem;
 import com.tethrnet.manage.model.User;
 
 public class InventoryUtil {
 	
+	private static final String MODULE = AppConfig.getProperty("inventoryModule");
+	private static final String CONN_URL = AppConfig.getProperty("inventoryConn");
+	
+	/**
+	 * creates the configured inventory provider, it is shared until shutdown
+	 */
+	public static void startInventory()
+	{
+		getInventory();
+	}
+	
+	/**
+	 * closes the inventory provider connections
+	 */
+	public static void stopInventory()
+	{
+		DmsInventoryRegistry.closeAll();
+	}
+	
+	/**
+	 * returns the shared provider of the configured inventory module
+	 *
+	 * @return inventory provider
+	 */
+	public static DmsInventory getInventory()
+	{
+		return DmsInventoryRegistry.getDmsInventoryMgr(MODULE, CONN_URL);
+	}
+	
 	public static void createOrUpdateHostSystem(User user)
 	{
-		String module = AppConfig.getProperty("inventoryModule");
-		String conn_url = AppConfig.getProperty("inventoryConn");
-		DmsInventory mgr = DmsInventoryFactory.createDmsInventoryMgr(module, conn_url);
+		DmsInventory mgr = getInventory();
 	}
 	public static List<HostSystem> listHostSystem(String userName)
 	{
-		String module = AppConfig.getProperty("inventoryModule");
-		String conn_url = AppConfig.getProperty("inventoryConn");
-		DmsInventory mgr = DmsInventoryFactory.createDmsInventoryMgr(module, conn_url);
 		try
 		{
-			Account account = mgr.getAccountByName(userName);
-			List<VirtualMachine> vms = mgr.listVmByAccount(account);
-			List<HostSystem> hosts = fromVirtualMachine(vms);
-			return hosts;
-//			for (HostSystem hostSystem: hosts)
-//			{
-//				//hostSystem = SSHUtil.authAndAddPubKey(hostSystem, "", "");
-//
-//		        if (hostSystem.getId() != null) {
-//		            SystemDB.updateSystem(hostSystem);
-//		        } else {
-//		            hostSystem.setId(SystemDB.insertSystem(hostSystem));
-//		        }
-//			}
+			return listHostSystems(userName);
 		}
 		catch(RetrieveInventoryException e)
 		{
@@ -50,8 +60,38 @@ public class InventoryUtil {
 		return new ArrayList<HostSystem>();
 	}
 	
+	/**
+	 * returns the systems of a user's inventory account
+	 *
+	 * @param userName user name, also the account name
+	 * @return host systems with inventory keys, empty if the user has no account
+	 * @throws RetrieveInventoryException if the inventory could not be read
+	 */
+	public static List<HostSystem> listHostSystems(String userName) throws RetrieveInventoryException
+	{
+		DmsInventory mgr = getInventory();
+		Account account = mgr.getAccountByName(userName);
+		if (account == null)
+		{
+			return new ArrayList<HostSystem>();
+		}
+		return fromVirtualMachine(mgr.listVmByAccount(account));
+	}
+	
+	/**
+	 * key of a VM that stays the same while it exists, the manage IP within its account
+	 *
+	 * @param vm virtual machine
+	 * @return inventory key
+	 */
+	public static String getInventoryKey(VirtualMachine vm)
+	{
+		return vm.getParent().getAccountId() + "/" + vm.getManageip();
+	}
+	
 	private static List<HostSystem> fromVirtualMachine(List<VirtualMachine> vms)
 	{
+		String key_path = AppConfig.getProperty("servicevm_keys");
 		List<HostSystem> hosts = new ArrayList<HostSystem>();
 		for(VirtualMachine vm : vms)
 		{
@@ -60,6 +100,8 @@ public class InventoryUtil {
 			host.setHost(vm.getManageip());
 			host.setPort(22);
 			host.setDisplayNm(vm.getManageip()+"-"+vm.getServicetype());
+			host.setAuthorizedKeys(key_path);
+			host.setInventoryKey(getInventoryKey(vm));
 			hosts.add(host);
 			
 		}
@@ -0,0 +1,125 @@
+package com.tethrnet.manage.util;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.KeyPair;
+import com.tethrnet.common.util.AppConfig;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of key pairs of the configured type and length for generated user keys. A low priority
+ * thread keeps the pool full, so a user key is handed out without waiting for key generation and
+ * is only encrypted with the user's passphrase when it is written out.
+ */
+public class KeyPoolUtil {
+
+    private static Logger log = LoggerFactory.getLogger(KeyPoolUtil.class);
+
+    //max number of pre-generated key pairs
+    private static final int POOL_SIZE = StringUtils.isNumeric(AppConfig.getProperty("keyPoolSize")) ? Integer.parseInt(AppConfig.getProperty("keyPoolSize")) : 5;
+
+    private static final BlockingQueue<KeyPair> pool = new ArrayBlockingQueue<KeyPair>(Math.max(POOL_SIZE, 1));
+
+    private static final JSch jsch = new JSch();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private static Thread generatorThread;
+
+
+    private KeyPoolUtil() {
+    }
+
+    /**
+     * start thread to fill the key pool
+     */
+    public static synchronized void startGenerator() {
+        if (generatorThread == null && POOL_SIZE > 0) {
+            generatorThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    fillPool();
+                }
+            }, "key-pool");
+            generatorThread.setDaemon(true);
+            generatorThread.setPriority(Thread.MIN_PRIORITY);
+            generatorThread.start();
+        }
+    }
+
+    /**
+     * takes a key pair from the pool, or generates one if the pool is empty. The caller must
+     * dispose the key pair once it is written out
+     *
+     * @return key pair of the configured type and length
+     */
+    public static KeyPair takeKeyPair() throws Exception {
+        KeyPair keyPair = pool.poll();
+        if (keyPair != null) {
+            hits.incrementAndGet();
+            return keyPair;
+        }
+        misses.incrementAndGet();
+        return genKeyPair();
+    }
+
+    /**
+     * generator thread loop, blocks while the pool is full
+     */
+    private static void fillPool() {
+        while (true) {
+            try {
+                pool.put(genKeyPair());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                log.error(ex.toString(), ex);
+                try {
+                    Thread.sleep(60 * 1000L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * generates a key pair of the configured type and length
+     *
+     * @return key pair
+     */
+    private static KeyPair genKeyPair() throws Exception {
+        int type = KeyPair.RSA;
+        if (SSHUtil.KEY_TYPE.equals("dsa")) {
+            type = KeyPair.DSA;
+        } else if (SSHUtil.KEY_TYPE.equals("ecdsa")) {
+            type = KeyPair.ECDSA;
+        }
+        return KeyPair.genKeyPair(jsch, type, SSHUtil.KEY_LENGTH);
+    }
+
+    public static int getMaxSize() {
+        return POOL_SIZE;
+    }
+
+    public static int getSize() {
+        return pool.size();
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+}
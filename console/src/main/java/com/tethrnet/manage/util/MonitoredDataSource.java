@@ -0,0 +1,116 @@
+package com.tethrnet.manage.util;
+
+import com.tethrnet.manage.model.PoolStats;
+
+import org.apache.commons.dbcp.PoolingDataSource;
+import org.apache.commons.pool.impl.GenericObjectPool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Pooling data source that counts the threads waiting for a connection and how long each borrow took
+ */
+public class MonitoredDataSource extends PoolingDataSource {
+
+    //upper bounds in milliseconds of the wait histogram buckets, the last bucket holds longer waits
+    private static final long[] WAIT_BUCKETS = {1, 5, 10, 50, 100, 500, 1000, 5000};
+
+    private final String name;
+    private final GenericObjectPool connectionPool;
+    private final int maxOpenStatements;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong maxWaitMs = new AtomicLong();
+    private final AtomicLongArray waitCounts = new AtomicLongArray(WAIT_BUCKETS.length + 1);
+
+    /**
+     * @param name              pool name
+     * @param connectionPool    pool of connections
+     * @param maxOpenStatements max number of prepared statements cached per connection
+     */
+    public MonitoredDataSource(String name, GenericObjectPool connectionPool, int maxOpenStatements) {
+        super(connectionPool);
+        this.name = name;
+        this.connectionPool = connectionPool;
+        this.maxOpenStatements = maxOpenStatements;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long startTm = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            Connection con = super.getConnection();
+            recordWait((System.nanoTime() - startTm) / 1000000L);
+            return con;
+        } catch (SQLException ex) {
+            //the pool timed out waiting for a free connection
+            if (ex.getCause() instanceof NoSuchElementException) {
+                timeouts.incrementAndGet();
+            }
+            throw ex;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * adds a borrow to the wait histogram
+     *
+     * @param waitMs milliseconds waited for the connection
+     */
+    private void recordWait(long waitMs) {
+        borrowed.incrementAndGet();
+        int i = 0;
+        while (i < WAIT_BUCKETS.length && waitMs >= WAIT_BUCKETS[i]) {
+            i++;
+        }
+        waitCounts.incrementAndGet(i);
+
+        long max;
+        while (waitMs > (max = maxWaitMs.get()) && !maxWaitMs.compareAndSet(max, waitMs)) {
+            //retry until the max is set
+        }
+    }
+
+    /**
+     * returns the current state of the pool
+     *
+     * @return pool stats
+     */
+    public PoolStats getStats() {
+        PoolStats stats = new PoolStats();
+        stats.setName(name);
+        stats.setMaxActive(connectionPool.getMaxActive());
+        stats.setMinIdle(connectionPool.getMinIdle());
+        stats.setMaxIdle(connectionPool.getMaxIdle());
+        stats.setMaxOpenStatements(maxOpenStatements);
+        stats.setActive(connectionPool.getNumActive());
+        stats.setIdle(connectionPool.getNumIdle());
+        stats.setWaiting(waiting.get());
+        stats.setBorrowed(borrowed.get());
+        stats.setTimeouts(timeouts.get());
+        stats.setMaxWaitMs(maxWaitMs.get());
+
+        Map<String, Long> waitHistogram = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < WAIT_BUCKETS.length; i++) {
+            waitHistogram.put(WAIT_BUCKETS[i] + "ms", waitCounts.get(i));
+        }
+        waitHistogram.put("over", waitCounts.get(WAIT_BUCKETS.length));
+        stats.setWaitHistogram(waitHistogram);
+        return stats;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
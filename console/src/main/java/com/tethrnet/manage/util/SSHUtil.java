@@ -569,6 +569,10 @@ public class SSHUtil {
 
 			//new session output
 			SessionOutput sessionOutput = new SessionOutput(sessionId, hostSystem);
+			//audit level for the terminal, resolved from the system, its profiles or the default when the systems were selected
+			if (StringUtils.isEmpty(sessionOutput.getAuditPolicy())) {
+				sessionOutput.setAuditPolicy(SystemDB.DEFAULT_AUDIT_POLICY);
+			}
 
 			Runnable run = new SecureShellTask(sessionOutput, outFromChannel);
 			Thread thread = new Thread(run);
@@ -628,8 +632,8 @@ public class SSHUtil {
 			userSessionMap.put(sessionId, userSchSessions);
 		}
 
-		SystemStatusDB.updateSystemStatus(hostSystem, userId);
-		SystemDB.updateSystem(hostSystem);
+		//saved to the system table once the status will not change again
+		SystemStatusUtil.updateSystemStatus(hostSystem, userId);
 
 		return hostSystem;
 	}
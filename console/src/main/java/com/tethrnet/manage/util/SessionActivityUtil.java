@@ -0,0 +1,188 @@
+package com.tethrnet.manage.util;
+
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.common.util.AuthUtil;
+import com.tethrnet.manage.action.SecureShellAction;
+
+import org.apache.commons.lang3.StringUtils;
+
+import javax.servlet.http.HttpSession;
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks when each logged in session was last active. Activity is a monotonic timestamp that is
+ * updated at most once per interval, so HTTP requests and terminal keystrokes only read a clock. A
+ * single sweeper closes the terminals and the HTTP session of users that have been idle too long.
+ */
+public class SessionActivityUtil {
+
+    private static Logger log = LoggerFactory.getLogger(SessionActivityUtil.class);
+
+    //nanoseconds of inactivity before a session times out
+    private static final long SESSION_TIMEOUT = (StringUtils.isNumeric(AppConfig.getProperty("sessionTimeout")) ? Long.parseLong(AppConfig.getProperty("sessionTimeout")) : 30) * 60 * 1000000000L;
+    //nanoseconds between updates of the activity timestamp
+    private static final long UPDATE_INTERVAL = 5 * 1000000000L;
+    //milliseconds between sweeps for idle sessions
+    private static final long SWEEP_INTERVAL = 60 * 1000L;
+
+    private static final String ACTIVITY_ATTR = "activity";
+
+    //activity by HTTP session id
+    private static final Map<String, Activity> activityMap = new ConcurrentHashMap<String, Activity>();
+
+    private static Timer timer;
+
+
+    private SessionActivityUtil() {
+    }
+
+    /**
+     * start timer to close idle sessions
+     */
+    public static synchronized void startSweeper() {
+        if (timer == null) {
+            timer = new Timer("session-sweeper", true);
+            timer.schedule(new SweepTimerTask(), SWEEP_INTERVAL, SWEEP_INTERVAL);
+        }
+    }
+
+    /**
+     * records activity for a session, starting tracking if it is not tracked yet
+     *
+     * @param httpSession http session
+     */
+    public static void touch(HttpSession httpSession) {
+        try {
+            Activity activity = (Activity) httpSession.getAttribute(ACTIVITY_ATTR);
+            if (activity == null) {
+                activity = new Activity(httpSession);
+                httpSession.setAttribute(ACTIVITY_ATTR, activity);
+                activityMap.put(httpSession.getId(), activity);
+            } else {
+                long now = System.nanoTime();
+                if (now - activity.lastActiveTm > UPDATE_INTERVAL) {
+                    activity.lastActiveTm = now;
+                }
+            }
+        } catch (IllegalStateException ex) {
+            //session was invalidated
+        }
+    }
+
+    /**
+     * returns true if the session is not tracked or has been idle too long
+     *
+     * @param httpSession http session
+     * @return true if timed out
+     */
+    public static boolean isTimedOut(HttpSession httpSession) {
+        try {
+            Activity activity = (Activity) httpSession.getAttribute(ACTIVITY_ATTR);
+            return activity == null || activity.isIdle(System.nanoTime());
+        } catch (IllegalStateException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * sets the terminal web socket of a session so it is closed when the session times out
+     *
+     * @param httpSession http session
+     * @param webSocket   terminal web socket
+     */
+    public static void setWebSocket(HttpSession httpSession, Session webSocket) {
+        touch(httpSession);
+        Activity activity = activityMap.get(httpSession.getId());
+        if (activity != null) {
+            activity.webSocket = webSocket;
+        }
+    }
+
+    /**
+     * stops tracking a session after logout
+     *
+     * @param httpSession http session
+     */
+    public static void remove(HttpSession httpSession) {
+        activityMap.remove(httpSession.getId());
+    }
+
+    /**
+     * closes the terminals and HTTP session of each session that has been idle too long
+     */
+    public static void closeIdleSessions() {
+        long now = System.nanoTime();
+        for (Activity activity : activityMap.values()) {
+            if (activity.isIdle(now)) {
+                activityMap.remove(activity.httpSession.getId());
+                close(activity);
+            }
+        }
+    }
+
+    /**
+     * closes the terminal web socket, SSH sessions and HTTP session
+     *
+     * @param activity session activity
+     */
+    private static void close(Activity activity) {
+        try {
+            if (activity.webSocket != null && activity.webSocket.isOpen()) {
+                activity.webSocket.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "Session timed out"));
+            }
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+        try {
+            Long sessionId = AuthUtil.getSessionId(activity.httpSession);
+            if (sessionId != null) {
+                SecureShellAction.closeSchSessions(sessionId);
+            }
+            AuthUtil.deleteAllSession(activity.httpSession);
+        } catch (IllegalStateException ex) {
+            //session was already invalidated by the container
+        } catch (Exception ex) {
+            log.error(ex.toString(), ex);
+        }
+    }
+
+    /**
+     * last activity of a session, kept as a session attribute so updates need no map lookup
+     */
+    private static class Activity {
+        final HttpSession httpSession;
+        volatile long lastActiveTm = System.nanoTime();
+        volatile Session webSocket;
+
+        Activity(HttpSession httpSession) {
+            this.httpSession = httpSession;
+        }
+
+        boolean isIdle(long now) {
+            return now - lastActiveTm > SESSION_TIMEOUT;
+        }
+    }
+
+    /**
+     * Timer task for closing idle sessions
+     */
+    private static class SweepTimerTask extends TimerTask {
+
+        @Override
+        public void run() {
+            try {
+                closeIdleSessions();
+            } catch (Exception ex) {
+                log.error(ex.toString(), ex);
+            }
+        }
+    }
+
+}
@@ -15,12 +15,11 @@
  */
 package com.tethrnet.manage.util;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import com.tethrnet.common.util.AppConfig;
-import com.tethrnet.manage.db.SessionAuditDB;
-import com.tethrnet.manage.model.AuditWrapper;
+import com.tethrnet.manage.model.AuditPolicy;
 import com.tethrnet.manage.model.SessionOutput;
+import com.tethrnet.manage.model.SystemAuditEvent;
+import com.tethrnet.manage.model.TerminalAudit;
 import com.tethrnet.manage.model.User;
 import com.tethrnet.manage.model.UserSessionsOutput;
 
@@ -28,7 +27,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.commons.lang3.StringUtils;
 
-import java.sql.Connection;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -41,8 +39,11 @@ public class SessionOutputUtil {
 
     private static Map<Long, UserSessionsOutput> userSessionsOutputMap = new ConcurrentHashMap<Long, UserSessionsOutput>();
     public static boolean enableInternalAudit = "true".equals(AppConfig.getProperty("enableInternalAudit"));
-    private static Gson gson = new GsonBuilder().registerTypeAdapter(AuditWrapper.class, new SessionOutputSerializer()).create();
-    private static Logger systemAuditLogger = LoggerFactory.getLogger("com.keybox.manage.util.SystemAudit");
+
+    //milliseconds between saves of terminal metadata while the terminal is open
+    private static final long META_SAVE_INTERVAL = 30000;
+    //max length of a command line kept for the commands audit policy
+    private static final int MAX_COMMAND_LENGTH = 4096;
 
     /**
      * removes session for user session
@@ -53,6 +54,9 @@ public class SessionOutputUtil {
         UserSessionsOutput userSessionsOutput = userSessionsOutputMap.get(sessionId);
         if (userSessionsOutput != null) {
             userSessionsOutput.getSessionOutputMap().clear();
+            for (Integer instanceId : userSessionsOutput.getTerminalAuditMap().keySet()) {
+                closeTerminalAudit(userSessionsOutput.getTerminalAuditMap().remove(instanceId));
+            }
         }
         userSessionsOutputMap.remove(sessionId);
 
@@ -69,6 +73,7 @@ public class SessionOutputUtil {
         UserSessionsOutput userSessionsOutput = userSessionsOutputMap.get(sessionId);
         if (userSessionsOutput != null) {
             userSessionsOutput.getSessionOutputMap().remove(instanceId);
+            closeTerminalAudit(userSessionsOutput.getTerminalAuditMap().remove(instanceId));
         }
     }
 
@@ -85,6 +90,9 @@ public class SessionOutputUtil {
             userSessionsOutput = userSessionsOutputMap.get(sessionOutput.getSessionId());
         }
         userSessionsOutput.getSessionOutputMap().put(sessionOutput.getInstanceId(), sessionOutput);
+        if (!AuditPolicy.OFF.equals(sessionOutput.getAuditPolicy())) {
+            userSessionsOutput.getTerminalAuditMap().put(sessionOutput.getInstanceId(), new TerminalAudit(sessionOutput));
+        }
 
 
     }
@@ -104,11 +112,143 @@ public class SessionOutputUtil {
         UserSessionsOutput userSessionsOutput = userSessionsOutputMap.get(sessionId);
         if (userSessionsOutput != null) {
             userSessionsOutput.getSessionOutputMap().get(instanceId).getOutput().append(value, offset, count);
+
+            TerminalAudit terminalAudit = userSessionsOutput.getTerminalAuditMap().get(instanceId);
+            if (terminalAudit != null) {
+                synchronized (terminalAudit) {
+                    terminalAudit.setOutputSize(terminalAudit.getOutputSize() + count);
+                    terminalAudit.setLastTm(new Date());
+                }
+            }
         }
 
     }
 
 
+    /**
+     * records input sent to a terminal, for the commands audit policy the typed line is kept until
+     * enter is pressed. Tab completion and shell history are not seen, so a command is recorded as
+     * it was typed.
+     *
+     * @param sessionId  session id
+     * @param instanceId id of host system instance
+     * @param keyCode    key code of a special key or null
+     * @param command    text sent to the terminal if there is no key code
+     */
+    public static void addToInput(Long sessionId, Integer instanceId, Integer keyCode, String command) {
+
+        UserSessionsOutput userSessionsOutput = userSessionsOutputMap.get(sessionId);
+        if (userSessionsOutput == null) {
+            return;
+        }
+        TerminalAudit terminalAudit = userSessionsOutput.getTerminalAuditMap().get(instanceId);
+        if (terminalAudit == null) {
+            return;
+        }
+        synchronized (terminalAudit) {
+            terminalAudit.setLastTm(new Date());
+            boolean commands = AuditPolicy.COMMANDS.equals(terminalAudit.getAuditPolicy());
+            StringBuilder commandLine = terminalAudit.getCommandLine();
+            if (keyCode != null) {
+                terminalAudit.setInputSize(terminalAudit.getInputSize() + 1);
+                if (commands) {
+                    if (keyCode == 13) {
+                        addCommand(terminalAudit);
+                    } else if (keyCode == 8 && commandLine.length() > 0) {
+                        commandLine.setLength(commandLine.length() - 1);
+                    } else if (keyCode == 67) {
+                        //ctrl-c discards the line
+                        commandLine.setLength(0);
+                    }
+                }
+            } else if (command != null) {
+                terminalAudit.setInputSize(terminalAudit.getInputSize() + command.length());
+                if (commands) {
+                    for (int i = 0; i < command.length(); i++) {
+                        char c = command.charAt(i);
+                        if (c == '\r' || c == '\n') {
+                            addCommand(terminalAudit);
+                        } else if (commandLine.length() < MAX_COMMAND_LENGTH) {
+                            commandLine.append(c);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * moves the typed line to the list of commands waiting to be audited
+     *
+     * @param terminalAudit terminal audit state
+     */
+    private static void addCommand(TerminalAudit terminalAudit) {
+        String commandLine = terminalAudit.getCommandLine().toString().trim();
+        if (commandLine.length() > 0) {
+            terminalAudit.getCommandList().add(commandLine);
+        }
+        terminalAudit.getCommandLine().setLength(0);
+    }
+
+
+    /**
+     * audits the commands waiting for a terminal and saves its metadata if due
+     *
+     * @param user          user auth object or null if the terminal is closed
+     * @param sessionOutput terminal the commands were typed in
+     * @param terminalAudit terminal audit state
+     * @param force         save the metadata even if it was saved recently
+     */
+    private static void auditTerminal(User user, SessionOutput sessionOutput, TerminalAudit terminalAudit, boolean force) {
+        List<String> commandList;
+        synchronized (terminalAudit) {
+            commandList = new ArrayList<String>(terminalAudit.getCommandList());
+            terminalAudit.getCommandList().clear();
+        }
+        for (String command : commandList) {
+            SessionOutput commandOutput = new SessionOutput(sessionOutput.getSessionId(), sessionOutput);
+            commandOutput.getOutput().append(command).append('\n');
+            if (user != null) {
+                SystemAuditUtil.publish(new SystemAuditEvent(user, commandOutput));
+            }
+            if (enableInternalAudit) {
+                AuditWriterUtil.write(commandOutput);
+            }
+        }
+
+        if (enableInternalAudit) {
+            TerminalAudit metadata = null;
+            synchronized (terminalAudit) {
+                long now = System.currentTimeMillis();
+                if (force || now - terminalAudit.getSaveTm() >= META_SAVE_INTERVAL) {
+                    metadata = new TerminalAudit(terminalAudit);
+                    terminalAudit.setSaveTm(now);
+                }
+            }
+            if (metadata != null) {
+                AuditWriterUtil.write(metadata);
+            }
+        }
+    }
+
+
+    /**
+     * audits the remaining commands and saves the final metadata for a closed terminal
+     *
+     * @param terminalAudit terminal audit state or null if the terminal is not audited
+     */
+    private static void closeTerminalAudit(TerminalAudit terminalAudit) {
+        if (terminalAudit != null && enableInternalAudit) {
+            SessionOutput sessionOutput = new SessionOutput();
+            sessionOutput.setSessionId(terminalAudit.getSessionId());
+            sessionOutput.setInstanceId(terminalAudit.getInstanceId());
+            sessionOutput.setId(terminalAudit.getSystemId());
+            auditTerminal(null, sessionOutput, terminalAudit, true);
+        }
+    }
+
+
     /**
      * returns list of output lines
      *
@@ -116,7 +256,7 @@ public class SessionOutputUtil {
      * @param user user auth object
      * @return session output list
      */
-    public static List<SessionOutput> getOutput(Connection con, Long sessionId, User user) {
+    public static List<SessionOutput> getOutput(Long sessionId, User user) {
         List<SessionOutput> outputList = new ArrayList<SessionOutput>();
 
         UserSessionsOutput userSessionsOutput = userSessionsOutputMap.get(sessionId);
@@ -131,15 +271,21 @@ public class SessionOutputUtil {
 
                         if (StringUtils.isNotEmpty(sessionOutput.getOutput())) {
                             outputList.add(sessionOutput);
+                            userSessionsOutput.getSessionOutputMap().put(key, new SessionOutput(sessionId, sessionOutput));
 
-                            //send to audit logger
-                            systemAuditLogger.info(gson.toJson(new AuditWrapper(user, sessionOutput)));
+                            //send to audit stream once new output goes to the replacement
+                            if (AuditPolicy.FULL.equals(sessionOutput.getAuditPolicy())) {
+                                SystemAuditUtil.publish(new SystemAuditEvent(user, sessionOutput));
 
-                            if(enableInternalAudit) {
-                                SessionAuditDB.insertTerminalLog(con, sessionOutput);
+                                if (enableInternalAudit) {
+                                    AuditWriterUtil.write(sessionOutput);
+                                }
                             }
+                        }
 
-                            userSessionsOutput.getSessionOutputMap().put(key, new SessionOutput(sessionId, sessionOutput));
+                        TerminalAudit terminalAudit = userSessionsOutput.getTerminalAuditMap().get(key);
+                        if (terminalAudit != null) {
+                            auditTerminal(user, sessionOutput, terminalAudit, false);
                         }
                     }
                 } catch (Exception ex) {
@@ -0,0 +1,308 @@
+package com.tethrnet.manage.util;
+
+import com.tethrnet.common.util.AppConfig;
+import com.tethrnet.manage.model.SystemAuditEvent;
+import com.tethrnet.manage.model.SystemAuditStats;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Ships terminal output to the system audit stream as JSON lines. Events are queued in a bounded
+ * buffer and written in batches by a single writer thread, so a slow collector never blocks terminals;
+ * when the buffer is full events are dropped and counted.
+ * <p>
+ * The target is set with systemAuditTarget: 'log' for the SystemAudit logger, 'file:&lt;path&gt;'
+ * or 'socket:&lt;host&gt;:&lt;port&gt;' for a local collector.
+ */
+public class SystemAuditUtil {
+
+    private static Logger log = LoggerFactory.getLogger(SystemAuditUtil.class);
+    private static Logger systemAuditLogger = LoggerFactory.getLogger("com.keybox.manage.util.SystemAudit");
+
+    public static final String TARGET_LOG = "log";
+    public static final String TARGET_FILE = "file:";
+    public static final String TARGET_SOCKET = "socket:";
+
+    private static final String TARGET = StringUtils.isNotEmpty(AppConfig.getProperty("systemAuditTarget")) ? AppConfig.getProperty("systemAuditTarget").trim() : TARGET_LOG;
+    private static final int BUFFER_SIZE = StringUtils.isNumeric(AppConfig.getProperty("systemAuditBufferSize")) ? Integer.parseInt(AppConfig.getProperty("systemAuditBufferSize")) : 10000;
+
+    //max number of events written per batch
+    private static final int BATCH_SIZE = 500;
+    //milliseconds to wait before reopening a failed target
+    private static final long RECONNECT_DELAY = 5000;
+    private static final int CONNECT_TIMEOUT = 5000;
+
+    private static final BlockingQueue<SystemAuditEvent> queue = new ArrayBlockingQueue<SystemAuditEvent>(Math.max(BUFFER_SIZE, 1));
+
+    private static final AtomicLong published = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    //only updated by the writer thread
+    private static volatile long written = 0;
+    private static volatile long failed = 0;
+    private static volatile long lastLagMs = 0;
+    private static volatile long maxLagMs = 0;
+
+    private static Thread writerThread;
+    private static Writer targetWriter;
+    private static Socket targetSocket;
+    private static long nextOpenTm = 0;
+
+
+    private SystemAuditUtil() {
+    }
+
+    /**
+     * start thread to write queued events to the target
+     */
+    public static synchronized void startAuditStream() {
+        if (writerThread == null) {
+            writerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeEvents();
+                }
+            }, "system-audit");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * returns true if events are shipped to the target
+     *
+     * @return true if enabled
+     */
+    public static boolean isEnabled() {
+        return !TARGET_LOG.equals(TARGET) || systemAuditLogger.isInfoEnabled();
+    }
+
+    /**
+     * queues an event for the audit stream without blocking
+     *
+     * @param event terminal output event
+     */
+    public static void publish(SystemAuditEvent event) {
+        if (isEnabled()) {
+            if (queue.offer(event)) {
+                published.incrementAndGet();
+            } else {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * returns the counters for the audit stream
+     *
+     * @return audit stream stats
+     */
+    public static SystemAuditStats getStats() {
+        SystemAuditStats stats = new SystemAuditStats();
+        stats.setTarget(TARGET);
+        stats.setCapacity(BUFFER_SIZE);
+        stats.setQueued(queue.size());
+        stats.setPublished(published.get());
+        stats.setWritten(written);
+        stats.setDropped(dropped.get());
+        stats.setFailed(failed);
+        stats.setLastLagMs(lastLagMs);
+        stats.setMaxLagMs(maxLagMs);
+        return stats;
+    }
+
+    /**
+     * writer thread loop, takes queued events and writes them in batches
+     */
+    private static void writeEvents() {
+        List<SystemAuditEvent> batch = new ArrayList<SystemAuditEvent>(BATCH_SIZE);
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+
+                if (TARGET_LOG.equals(TARGET)) {
+                    for (SystemAuditEvent event : batch) {
+                        line.setLength(0);
+                        writeJSON(line, event);
+                        systemAuditLogger.info(line.toString());
+                    }
+                    written += batch.size();
+                } else {
+                    writeToTarget(batch);
+                }
+
+                long lagMs = System.currentTimeMillis() - batch.get(0).getTimestamp();
+                lastLagMs = lagMs;
+                maxLagMs = Math.max(maxLagMs, lagMs);
+
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                failed += batch.size();
+                log.error(ex.toString(), ex);
+            }
+            batch.clear();
+            if (line.capacity() > 65536) {
+                line = new StringBuilder();
+            }
+        }
+    }
+
+    /**
+     * writes a batch of events to the file or socket target, events are counted as failed if the
+     * target can not be written
+     *
+     * @param batch events to write
+     */
+    private static void writeToTarget(List<SystemAuditEvent> batch) {
+        Writer writer = getTargetWriter();
+        if (writer == null) {
+            failed += batch.size();
+            return;
+        }
+        try {
+            for (SystemAuditEvent event : batch) {
+                writeJSON(writer, event);
+                writer.write('\n');
+            }
+            writer.flush();
+            written += batch.size();
+        } catch (IOException ex) {
+            log.warn("Unable to write to system audit target " + TARGET + ": " + ex.toString());
+            failed += batch.size();
+            closeTarget();
+        }
+    }
+
+    /**
+     * opens the file or socket target if needed
+     *
+     * @return writer for the target or null if it can not be opened
+     */
+    private static Writer getTargetWriter() {
+        if (targetWriter == null && System.currentTimeMillis() >= nextOpenTm) {
+            try {
+                if (TARGET.startsWith(TARGET_FILE)) {
+                    File file = new File(TARGET.substring(TARGET_FILE.length()));
+                    targetWriter = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file, true), 65536), "UTF-8");
+                } else if (TARGET.startsWith(TARGET_SOCKET)) {
+                    String address = TARGET.substring(TARGET_SOCKET.length());
+                    targetSocket = new Socket();
+                    targetSocket.connect(new InetSocketAddress(address.substring(0, address.lastIndexOf(':')), Integer.parseInt(address.substring(address.lastIndexOf(':') + 1))), CONNECT_TIMEOUT);
+                    targetWriter = new OutputStreamWriter(new BufferedOutputStream(targetSocket.getOutputStream(), 65536), "UTF-8");
+                } else {
+                    throw new IllegalArgumentException("Invalid system audit target " + TARGET);
+                }
+            } catch (Exception ex) {
+                log.warn("Unable to open system audit target " + TARGET + ": " + ex.toString());
+                closeTarget();
+            }
+        }
+        return targetWriter;
+    }
+
+    /**
+     * closes the target, it is reopened after the reconnect delay
+     */
+    private static void closeTarget() {
+        try {
+            if (targetWriter != null) {
+                targetWriter.close();
+            }
+        } catch (IOException ex) {
+            log.debug(ex.toString(), ex);
+        }
+        try {
+            if (targetSocket != null) {
+                targetSocket.close();
+            }
+        } catch (IOException ex) {
+            log.debug(ex.toString(), ex);
+        }
+        targetWriter = null;
+        targetSocket = null;
+        nextOpenTm = System.currentTimeMillis() + RECONNECT_DELAY;
+    }
+
+    /**
+     * writes an event as a JSON object
+     *
+     * @param out   output to append to
+     * @param event terminal output event
+     */
+    static void writeJSON(Appendable out, SystemAuditEvent event) throws IOException {
+        out.append("{\"user_id\":").append(String.valueOf(event.getUserId()));
+        out.append(",\"username\":");
+        writeString(out, event.getUsername());
+        out.append(",\"user_type\":");
+        writeString(out, event.getUserType());
+        out.append(",\"email\":");
+        writeString(out, event.getEmail());
+        out.append(",\"session_id\":").append(String.valueOf(event.getSessionId()));
+        out.append(",\"instance_id\":").append(String.valueOf(event.getInstanceId()));
+        out.append(",\"host_id\":").append(String.valueOf(event.getHostId()));
+        out.append(",\"host\":");
+        writeString(out, event.getHost());
+        out.append(",\"output\":");
+        writeString(out, event.getOutput());
+        out.append(",\"timestamp\":").append(String.valueOf(event.getTimestamp()));
+        out.append('}');
+    }
+
+    /**
+     * writes a JSON string, copying runs of characters that need no escaping as they are
+     *
+     * @param out   output to append to
+     * @param value string value
+     */
+    static void writeString(Appendable out, CharSequence value) throws IOException {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escaped = null;
+            if (c == '"') {
+                escaped = "\\\"";
+            } else if (c == '\\') {
+                escaped = "\\\\";
+            } else if (c == '\n') {
+                escaped = "\\n";
+            } else if (c == '\r') {
+                escaped = "\\r";
+            } else if (c == '\t') {
+                escaped = "\\t";
+            } else if (c < 0x20 || c == 0x7F || c == 0x2028 || c == 0x2029) {
+                escaped = String.format("\\u%04x", (int) c);
+            }
+            if (escaped != null) {
+                out.append(value, start, i).append(escaped);
+                start = i + 1;
+            }
+        }
+        out.append(value, start, value.length());
+        out.append('"');
+    }
+
+}
@@ -0,0 +1,224 @@
+package com.tethrnet.manage.util;
+
+import com.tethrnet.manage.db.SystemDB;
+import com.tethrnet.manage.model.HostSystem;
+import com.tethrnet.manage.model.UserSystemStatus;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the progress of users connecting or pushing to systems in memory. Statuses that will not
+ * change again are saved to the system table by a writer thread, so stepping through the systems
+ * does not write to the DB.
+ */
+public class SystemStatusUtil {
+
+    private static Logger log = LoggerFactory.getLogger(SystemStatusUtil.class);
+
+    //max number of statuses saved per batch
+    private static final int BATCH_SIZE = 500;
+
+    //progress by user id
+    private static final Map<Long, UserSystemStatus> userStatusMap = new ConcurrentHashMap<Long, UserSystemStatus>();
+
+    //statuses to save to the system table
+    private static final BlockingQueue<HostSystem> saveQueue = new LinkedBlockingQueue<HostSystem>();
+
+    private static Thread writerThread;
+
+
+    private SystemStatusUtil() {
+    }
+
+    /**
+     * start thread to save system statuses
+     */
+    public static synchronized void startStatusWriter() {
+        if (writerThread == null) {
+            writerThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    saveStatuses();
+                }
+            }, "system-status-writer");
+            writerThread.setDaemon(true);
+            writerThread.start();
+        }
+    }
+
+    /**
+     * sets the initial status for selected systems, replacing the progress the user had before
+     *
+     * @param systemSelectIds systems ids to set initial status
+     * @param userId          user id
+     * @param saveStatus      true to save the outcome for each system to the system table
+     */
+    public static void setInitialSystemStatus(List<Long> systemSelectIds, Long userId, boolean saveStatus) {
+
+        UserSystemStatus userSystemStatus = new UserSystemStatus();
+        userSystemStatus.setSaveStatus(saveStatus);
+        List<HostSystem> hostSystemList = SystemDB.getSystems(systemSelectIds);
+        //audit policies are resolved here so opening each terminal does not read them
+        SystemDB.setAuditPolicies(hostSystemList);
+        for (HostSystem hostSystem : hostSystemList) {
+            hostSystem.setStatusCd(HostSystem.INITIAL_STATUS);
+            userSystemStatus.getStatusMap().put(hostSystem.getId(), hostSystem);
+        }
+        userSystemStatus.getPendingQueue().addAll(userSystemStatus.getStatusMap().keySet());
+
+        UserSystemStatus prevSystemStatus = userStatusMap.put(userId, userSystemStatus);
+        if (prevSystemStatus != null && prevSystemStatus.isSaveStatus()) {
+            //systems left waiting for a password keep the last status they had
+            for (HostSystem hostSystem : prevSystemStatus.getStatusMap().values()) {
+                if (!HostSystem.INITIAL_STATUS.equals(hostSystem.getStatusCd()) && isPending(hostSystem.getStatusCd())) {
+                    saveQueue.offer(hostSystem);
+                }
+            }
+        }
+    }
+
+    /**
+     * updates the status of a system, the status is saved once it will not change again
+     *
+     * @param hostSystem system with the new status
+     * @param userId     user id
+     */
+    public static void updateSystemStatus(HostSystem hostSystem, Long userId) {
+
+        UserSystemStatus userSystemStatus = userStatusMap.get(userId);
+        if (userSystemStatus != null && userSystemStatus.getStatusMap().containsKey(hostSystem.getId())) {
+            HostSystem status = copy(hostSystem);
+            userSystemStatus.getStatusMap().put(status.getId(), status);
+            if (!isPending(status.getStatusCd())) {
+                userSystemStatus.getPendingQueue().remove(status.getId());
+                if (userSystemStatus.isSaveStatus()) {
+                    saveQueue.offer(status);
+                }
+            }
+        }
+    }
+
+    /**
+     * returns all statuses for the user in system id order
+     *
+     * @param userId user id
+     * @return list of systems with status
+     */
+    public static List<HostSystem> getAllSystemStatus(Long userId) {
+
+        List<HostSystem> hostSystemList = new ArrayList<HostSystem>();
+        UserSystemStatus userSystemStatus = userStatusMap.get(userId);
+        if (userSystemStatus != null) {
+            for (HostSystem hostSystem : userSystemStatus.getStatusMap().values()) {
+                hostSystemList.add(copy(hostSystem));
+            }
+        }
+        return hostSystemList;
+    }
+
+    /**
+     * returns the status of a system
+     *
+     * @param systemId system id
+     * @param userId   user id
+     * @return system with status or null if not selected by the user
+     */
+    public static HostSystem getSystemStatus(Long systemId, Long userId) {
+
+        UserSystemStatus userSystemStatus = userStatusMap.get(userId);
+        if (userSystemStatus != null) {
+            HostSystem hostSystem = userSystemStatus.getStatusMap().get(systemId);
+            if (hostSystem != null) {
+                return copy(hostSystem);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * returns the first system that has not been tried or is waiting for a password
+     *
+     * @param userId user id
+     * @return system or null if there are no pending systems
+     */
+    public static HostSystem getNextPendingSystem(Long userId) {
+
+        UserSystemStatus userSystemStatus = userStatusMap.get(userId);
+        if (userSystemStatus != null) {
+            Long systemId;
+            while ((systemId = userSystemStatus.getPendingQueue().peek()) != null) {
+                HostSystem hostSystem = userSystemStatus.getStatusMap().get(systemId);
+                if (hostSystem != null && isPending(hostSystem.getStatusCd())) {
+                    return copy(hostSystem);
+                }
+                userSystemStatus.getPendingQueue().remove(systemId);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * returns true if the system is still to be tried
+     *
+     * @param statusCd status code
+     * @return true if pending
+     */
+    private static boolean isPending(String statusCd) {
+        return HostSystem.INITIAL_STATUS.equals(statusCd)
+                || HostSystem.AUTH_FAIL_STATUS.equals(statusCd)
+                || HostSystem.PUBLIC_KEY_FAIL_STATUS.equals(statusCd);
+    }
+
+    /**
+     * returns a copy of a system status so callers can change it
+     *
+     * @param hostSystem system with status
+     * @return copy
+     */
+    private static HostSystem copy(HostSystem hostSystem) {
+        HostSystem copy = SystemDB.copySystem(hostSystem);
+        copy.setErrorMsg(hostSystem.getErrorMsg());
+        return copy;
+    }
+
+    /**
+     * writer thread loop, saves the last queued status of each system in batches
+     */
+    private static void saveStatuses() {
+        List<HostSystem> batch = new ArrayList<HostSystem>(BATCH_SIZE);
+        while (true) {
+            try {
+                batch.add(saveQueue.take());
+                saveQueue.drainTo(batch, BATCH_SIZE - 1);
+
+                Map<Long, HostSystem> statusMap = new LinkedHashMap<Long, HostSystem>();
+                for (HostSystem hostSystem : batch) {
+                    statusMap.put(hostSystem.getId(), hostSystem);
+                }
+
+                Connection con = DBUtils.getConn();
+                try {
+                    SystemDB.updateSystemStatus(con, new ArrayList<HostSystem>(statusMap.values()));
+                } finally {
+                    DBUtils.closeConn(con);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ex) {
+                log.error(ex.toString(), ex);
+            }
+            batch.clear();
+        }
+    }
+
+}
@@ -56,6 +56,51 @@
             $('#<s:property value="sortedSet.orderByField"/>').attr('class', '<s:property value="sortedSet.orderByDirection"/>');
             </s:if>
 
+            //apply system changes pushed from the inventory
+            var loc = window.location, ws_uri;
+            if (loc.protocol === "https:") {
+                ws_uri = "wss:";
+            } else {
+                ws_uri = "ws:";
+            }
+            ws_uri += "//" + loc.host + loc.pathname + '/../systems.ws?t=' + new Date().getTime();
+
+            var connection = new WebSocket(ws_uri);
+
+            connection.onerror = function (error) {
+                console.log('WebSocket Error ' + error);
+            };
+
+            connection.onmessage = function (e) {
+                var json = jQuery.parseJSON(e.data);
+                var tbody = $("#select_frm tbody");
+                //new systems are appended unless the list is filtered or not shown yet
+                if (json.added.length > 0 && (tbody.length == 0 || $(".view_frm_select").val())) {
+                    location.reload();
+                    return;
+                }
+                $.each(json.removed, function (i, id) {
+                    tbody.find("tr[data-id='" + id + "']").remove();
+                });
+                $.each(json.updated, function (i, system) {
+                    var cells = tbody.find("tr[data-id='" + system.id + "'] td");
+                    cells.eq(1).text(system.displayNm);
+                    cells.eq(2).text(system.user);
+                    cells.eq(3).text(system.host + ":" + system.port);
+                });
+                $.each(json.added, function (i, system) {
+                    var row = $("<tr/>").attr("data-id", system.id);
+                    row.append($("<td/>").append($("<input type='checkbox' name='systemSelectId' class='systemSelect'/>").val(system.id)));
+                    row.append($("<td/>").text(system.displayNm));
+                    row.append($("<td/>").text(system.user));
+                    row.append($("<td/>").text(system.host + ":" + system.port));
+                    tbody.append(row);
+                });
+                if (tbody.length > 0 && tbody.find("tr").length == 0) {
+                    location.reload();
+                }
+            };
+
     });
     </script>
 
@@ -148,7 +193,7 @@
                     <tbody>
 
                     <s:iterator var="system" value="sortedSet.itemList" status="stat">
-                        <tr>
+                        <tr data-id="<s:property value="id"/>">
 
                             <td>
                                 <s:checkboxlist name="systemSelectId" list="#{id:''}" cssClass="systemSelect"
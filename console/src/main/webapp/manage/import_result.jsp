@@ -0,0 +1,60 @@
+<%
+    /**
+     * Copyright 2013 Sean Kavanagh - sean.p.kavanagh6@gmail.com
+     *
+     * Licensed under the Apache License, Version 2.0 (the "License");
+     * you may not use this file except in compliance with the License.
+     * You may obtain a copy of the License at
+     *
+     * http://www.apache.org/licenses/LICENSE-2.0
+     *
+     * Unless required by applicable law or agreed to in writing, software
+     * distributed under the License is distributed on an "AS IS" BASIS,
+     * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+     * See the License for the specific language governing permissions and
+     * limitations under the License.
+     */
+%>
+<%@ taglib prefix="s" uri="/struts-tags" %>
+<!DOCTYPE html>
+<html>
+<head>
+    <jsp:include page="../_res/inc/header.jsp"/>
+
+    <title>Tethrnet Remote Console - Import</title>
+
+</head>
+<body>
+
+<jsp:include page="../_res/inc/navigation.jsp"/>
+
+<div class="container">
+
+    <h3>Import: <s:property value="uploadFileName"/></h3>
+
+    <s:actionerror/>
+
+    <s:if test="importResult!=null">
+        <s:if test="importResult.errorList.isEmpty()">
+            <p>
+                Records: <s:property value="importResult.recordCount"/><br/>
+                Added: <s:property value="importResult.addedCount"/><br/>
+                Already registered: <s:property value="importResult.skippedCount"/>
+            </p>
+        </s:if>
+        <s:else>
+            <p>Nothing was imported. Fix the records below and import the file again.</p>
+            <ul>
+                <s:iterator value="importResult.errorList">
+                    <li class="error"><s:property/></li>
+                </s:iterator>
+            </ul>
+        </s:else>
+    </s:if>
+
+    <a href="<s:property value="returnAction"/>" class="btn btn-default">Back</a>
+
+</div>
+
+</body>
+</html>
@@ -25,6 +25,9 @@
     <script type="text/javascript">
         $(document).ready(function () {
 
+            $(".import_btn").button().click(function () {
+                $(this).parents('.modal').find('form').submit();
+            });
             $("#view_btn").button().click(function () {
                 $("#viewKeys").submit();
             });
@@ -197,6 +200,30 @@
             </div>
         </s:if>
 
+        <button class="btn btn-default spacer spacer-bottom" data-toggle="modal" data-target="#import_dialog">Import Keys</button>
+        <div id="import_dialog" class="modal fade">
+            <div class="modal-dialog">
+                <div class="modal-content">
+                    <div class="modal-header">
+                        <button type="button" class="close" data-dismiss="modal" aria-hidden="true">x</button>
+                        <h4 class="modal-title">Import Keys</h4>
+                    </div>
+                    <div class="modal-body">
+                        <div class="row">
+                            <p>CSV with a header row or a JSON array with the fields username, public_key, key_nm and profile. Keys a user already has are skipped.</p>
+                            <s:form action="importPublicKeys" method="post" enctype="multipart/form-data">
+                                <s:file name="upload" label="File"/>
+                            </s:form>
+                        </div>
+                    </div>
+                    <div class="modal-footer">
+                        <button type="button" class="btn btn-default cancel_btn" data-dismiss="modal">Cancel</button>
+                        <button type="button" class="btn btn-default import_btn">Import</button>
+                    </div>
+                </div>
+            </div>
+        </div>
+
 </div>
 
 </body>
@@ -142,6 +142,7 @@
                         <s:form action="saveProfile" class="save_profile_form_add">
                             <s:textfield name="profile.nm" label="Name" size="15"/>
                             <s:textarea name="profile.desc" label="Profile Description" rows="5" cols="25"/>
+                            <s:select name="profile.auditPolicy" label="Audit Policy" list="@com.tethrnet.manage.model.AuditPolicy@POLICY_LIST" headerKey="" headerValue="Use default policy"/>
                             <s:hidden name="sortedSet.orderByDirection"/>
                             <s:hidden name="sortedSet.orderByField"/>
                          </s:form>
@@ -168,6 +169,7 @@
                                     <s:textfield name="profile.nm" value="%{nm}" label="Name" size="15"/>
                                     <s:textarea name="profile.desc" value="%{desc}" label="Profile Description" rows="5"
                                                 cols="25"/>
+                                    <s:select name="profile.auditPolicy" value="%{auditPolicy}" label="Audit Policy" list="@com.tethrnet.manage.model.AuditPolicy@POLICY_LIST" headerKey="" headerValue="Use default policy"/>
                                     <s:hidden name="profile.id" value="%{id}"/>
                                     <s:hidden name="sortedSet.orderByDirection"/>
                                     <s:hidden name="sortedSet.orderByField"/>
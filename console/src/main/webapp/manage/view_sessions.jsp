@@ -30,9 +30,62 @@
             });
 
             $("#view_btn").button().click(function () {
+                $('#viewSessions_sortedSet_cursor').attr('value', '');
+                $('#viewSessions_sortedSet_pageDirection').attr('value', '<s:property value="@com.tethrnet.manage.model.SortedSet@PAGE_NEXT"/>');
                 $("#viewSessions").submit();
             });
 
+            $("#prev_btn").button().click(function () {
+                $('#viewSessions_sortedSet_cursor').attr('value', '<s:property value="sortedSet.prevCursor" escapeJavaScript="true"/>');
+                $('#viewSessions_sortedSet_pageDirection').attr('value', '<s:property value="@com.tethrnet.manage.model.SortedSet@PAGE_PREV"/>');
+                $("#viewSessions").submit();
+            });
+
+            $("#next_btn").button().click(function () {
+                $('#viewSessions_sortedSet_cursor').attr('value', '<s:property value="sortedSet.nextCursor" escapeJavaScript="true"/>');
+                $('#viewSessions_sortedSet_pageDirection').attr('value', '<s:property value="@com.tethrnet.manage.model.SortedSet@PAGE_NEXT"/>');
+                $("#viewSessions").submit();
+            });
+
+            $("#search_btn").button().click(function () {
+                $("#viewSessions").attr('action', 'searchSessions.action');
+                $("#viewSessions").submit();
+            });
+
+            $("#stream_export_btn").button().click(function () {
+                $("#viewSessions").attr('action', 'streamExport.action');
+                $("#viewSessions").submit();
+                $("#viewSessions").attr('action', 'viewSessions.action');
+            });
+
+            $("#export_btn").button().click(function () {
+                $.getJSON('startExport.action', $("#viewSessions").serialize(), function (auditExport) {
+                    checkExport(auditExport.id);
+                });
+            });
+
+            function checkExport(exportId) {
+                $.getJSON('getJSONExportStatus.action', {exportId: exportId}, function (auditExport) {
+                    if (auditExport == null) {
+                        $("#export_status").text('');
+                    } else if (auditExport.status == 'RUNNING') {
+                        $("#export_status").text('Exporting ' + auditExport.exportedSessions + ' of ' + auditExport.sessionCount + ' sessions');
+                        setTimeout(function () {
+                            checkExport(exportId);
+                        }, 2000);
+                    } else if (auditExport.status == 'COMPLETE') {
+                        $("#export_status").html('<a href="downloadExport.action?exportId=' + auditExport.id + '">Download export</a> (' + auditExport.exportedSessions + ' sessions, ' + auditExport.exportedTerminals + ' terminals)');
+                    } else {
+                        $("#export_status").text('Export failed: ' + auditExport.errorMsg);
+                    }
+                });
+            }
+
+            $(".match_btn").button().click(function () {
+                window.location = 'getTermsForSession.action?sessionId=' + $(this).attr('data-session-id') + '&instanceId=' + $(this).attr('data-instance-id')
+                        + '&outputOffset=' + $(this).attr('data-output-offset') + '&filter=' + encodeURIComponent($('#viewSessions_searchQuery').val().replace(/^"|"$/g, ''));
+            });
+
             //submit add or edit form
             $(".submit_btn").button().click(function () {
                 $(this).parents('form:first').submit();
@@ -49,6 +102,8 @@
                 }
 
                 $('#viewSessions_sortedSet_orderByField').attr('value', id);
+                $('#viewSessions_sortedSet_cursor').attr('value', '');
+                $('#viewSessions_sortedSet_pageDirection').attr('value', '<s:property value="@com.tethrnet.manage.model.SortedSet@PAGE_NEXT"/>');
                 $("#viewSessions").submit();
 
             });
@@ -81,6 +136,8 @@
                             <s:form id="viewSessions" action="viewSessions" theme="simple">
                                 <s:hidden name="sortedSet.orderByDirection"/>
                                 <s:hidden name="sortedSet.orderByField"/>
+                                <s:hidden name="sortedSet.cursor"/>
+                                <s:hidden name="sortedSet.pageDirection"/>
                                 <table>
                                 <tr>
                                     <s:if test="userList!= null && !userList.isEmpty()">
@@ -101,15 +158,76 @@
                                             headerValue="-Select System-"/>
                                         </td>
                                     </s:if>
+                                    <td class="align_left">
+                                        <s:textfield name="sortedSet.filterMap['%{@com.tethrnet.manage.db.SessionAuditDB@FILTER_BY_START_DT}']" placeholder="From yyyy-mm-dd" size="14"/>
+                                    </td>
+                                    <td class="align_left">
+                                        <s:textfield name="sortedSet.filterMap['%{@com.tethrnet.manage.db.SessionAuditDB@FILTER_BY_END_DT}']" placeholder="To yyyy-mm-dd" size="14"/>
+                                    </td>
                                     <td style="padding:5px 5px 0px 5px;">
                                         <div id="view_btn" class="btn btn-default">Filter</div>
                                     </td>
                                 </tr>
+                                <tr>
+                                    <td class="align_left" colspan="4">
+                                        <s:textfield name="searchQuery" placeholder="Search terminal output, use quotes for a phrase" size="60"/>
+                                    </td>
+                                    <td style="padding:5px 5px 0px 5px;">
+                                        <div id="search_btn" class="btn btn-default">Search</div>
+                                    </td>
+                                </tr>
+                                <tr>
+                                    <td class="align_left" colspan="4">
+                                        <span id="export_status"></span>
+                                    </td>
+                                    <td style="padding:5px 5px 0px 5px;">
+                                        <div id="export_btn" class="btn btn-default">Export</div>
+                                        <div id="stream_export_btn" class="btn btn-default">Download</div>
+                                    </td>
+                                </tr>
                                 </table>
                             </s:form>
                         </td>
                     </tr>
                </table>
+        <s:if test="matchList!= null">
+            <h4>Search Results</h4>
+            <s:if test="!matchList.isEmpty()">
+            <div class="scrollWrapper">
+                <table class="table-striped scrollableTable">
+                    <thead>
+                    <tr>
+                        <th>Username</th>
+                        <th>System</th>
+                        <th>Terminal</th>
+                        <th>Offset</th>
+                        <th>Log Time</th>
+                        <th>&nbsp;</th>
+                    </tr>
+                    </thead>
+                    <tbody>
+                    <s:iterator value="matchList">
+                        <tr>
+                            <td><s:property value="username"/></td>
+                            <td><s:property value="displayNm"/> (<s:property value="host"/>)</td>
+                            <td><s:property value="instanceId"/></td>
+                            <td><s:property value="outputOffset"/></td>
+                            <td><s:date name="logTm"/></td>
+                            <td>
+                                <div class="btn btn-default match_btn" data-session-id="<s:property value='sessionId'/>" data-instance-id="<s:property value='instanceId'/>" data-output-offset="<s:property value='outputOffset'/>">
+                                    Audit
+                                </div>
+                            </td>
+                        </tr>
+                    </s:iterator>
+                    </tbody>
+                </table>
+            </div>
+            </s:if>
+            <s:else>
+                <p class="error">No matching terminal output</p>
+            </s:else>
+        </s:if>
         <s:if test="sortedSet.itemList!= null && !sortedSet.itemList.isEmpty()">
 
     <div class="scrollWrapper">
@@ -118,15 +236,12 @@
                 <tr>
 
 
-                    <th id="<s:property value="@com.tethrnet.manage.db.SessionAuditDB@SORT_BY_USERNAME"/>" class="sort">
+                    <th>
                         Username
                     </th>
 
-                    <th id="<s:property value="@com.tethrnet.manage.db.SessionAuditDB@SORT_BY_LAST_NM"/>" class="sort">
-                        Last Name
-                    </th>
-                    <th id="<s:property value="@com.tethrnet.manage.db.SessionAuditDB@SORT_BY_FIRST_NM"/>" class="sort">
-                        First Name
+                    <th>
+                        Email
                     </th>
                     <th id="<s:property value="@com.tethrnet.manage.db.SessionAuditDB@SORT_BY_SESSION_TM"/>" class="sort">
                         Session Time
@@ -139,9 +254,8 @@
                 <s:iterator var="session" value="sortedSet.itemList" status="stat">
                     <tr>
 
-                        <td><s:property value="user.username"/></td>
-                        <td><s:property value="user.lastNm"/></td>
-                        <td><s:property value="user.firstNm"/></td>
+                        <td><s:if test="user.username!=null"><s:property value="user.username"/></s:if><s:else>Deleted user <s:property value="user.id"/></s:else></td>
+                        <td><s:property value="user.email"/></td>
                         <td><s:date name="sessionTm"/></td>
                         <td>
                             <div id="terminals_btn_<s:property value='id'/>" class="btn btn-default terminals_btn">
@@ -156,6 +270,23 @@
                 </tbody>
             </table>
         </div>
+        <table>
+            <tr>
+                <td class="align_left">
+                    <s:property value="sortedSet.itemCount"/><s:if test="sortedSet.itemCountCapped">+</s:if> sessions
+                </td>
+                <s:if test="sortedSet.prevCursor!= null">
+                    <td style="padding:5px 5px 0px 5px;">
+                        <div id="prev_btn" class="btn btn-default">Previous</div>
+                    </td>
+                </s:if>
+                <s:if test="sortedSet.nextCursor!= null">
+                    <td style="padding:5px 5px 0px 5px;">
+                        <div id="next_btn" class="btn btn-default">Next</div>
+                    </td>
+                </s:if>
+            </tr>
+        </table>
         </s:if>
         <s:else>
             <p class="error">No session audits available</p>
@@ -171,6 +171,29 @@
         </s:if>
 
         <button class="btn btn-default add_btn spacer spacer-bottom" data-toggle="modal" data-target="#add_dialog">Add System</button>
+        <button class="btn btn-default spacer spacer-bottom" data-toggle="modal" data-target="#import_dialog">Import Systems</button>
+        <div id="import_dialog" class="modal fade">
+            <div class="modal-dialog">
+                <div class="modal-content">
+                    <div class="modal-header">
+                        <button type="button" class="close" data-dismiss="modal" aria-hidden="true">x</button>
+                        <h4 class="modal-title">Import Systems</h4>
+                    </div>
+                    <div class="modal-body">
+                        <div class="row">
+                            <p>CSV with a header row or a JSON array with the fields host, user, port, display_nm, authorized_keys, audit_policy and profile. Only host is required and systems already added are skipped.</p>
+                            <s:form action="importSystems" method="post" enctype="multipart/form-data">
+                                <s:file name="upload" label="File"/>
+                            </s:form>
+                        </div>
+                    </div>
+                    <div class="modal-footer">
+                        <button type="button" class="btn btn-default cancel_btn" data-dismiss="modal">Cancel</button>
+                        <button type="button" class="btn btn-default submit_btn">Import</button>
+                    </div>
+                </div>
+            </div>
+        </div>
         <div id="add_dialog" class="modal fade">
             <div class="modal-dialog">
                 <div class="modal-content">
@@ -186,6 +209,7 @@
                                 <s:textfield name="hostSystem.host" label="Host" size="18"/>
                                 <s:textfield name="hostSystem.port" label="Port" size="2"/>
                                 <s:textfield name="hostSystem.authorizedKeys" label="Authorized Keys" size="30"/>
+                                <s:select name="hostSystem.auditPolicy" label="Audit Policy" list="@com.tethrnet.manage.model.AuditPolicy@POLICY_LIST" headerKey="" headerValue="Use profile policy"/>
                                 <s:hidden name="sortedSet.orderByDirection"/>
                                 <s:hidden name="sortedSet.orderByField"/>
                             </s:form>
@@ -216,6 +240,7 @@
                                     <s:textfield name="hostSystem.port" value="%{port}" label="Port" size="2"/>
                                     <s:textfield name="hostSystem.authorizedKeys" value="%{authorizedKeys}"
                                                  label="Authorized Keys" size="30"/>
+                                    <s:select name="hostSystem.auditPolicy" value="%{auditPolicy}" label="Audit Policy" list="@com.tethrnet.manage.model.AuditPolicy@POLICY_LIST" headerKey="" headerValue="Use profile policy"/>
                                     <s:hidden name="hostSystem.id" value="%{id}"/>
                                     <s:hidden name="sortedSet.orderByDirection"/>
                                     <s:hidden name="sortedSet.orderByField"/>
@@ -250,6 +275,7 @@
                                 <s:hidden name="hostSystem.host"/>
                                 <s:hidden name="hostSystem.port"/>
                                 <s:hidden name="hostSystem.authorizedKeys"/>
+                                <s:hidden name="hostSystem.auditPolicy"/>
                                 <s:hidden name="sortedSet.orderByDirection"/>
                                 <s:hidden name="sortedSet.orderByField"/>
                                 <s:password name="password" label="Password" size="15" value="" autocomplete="off"/>
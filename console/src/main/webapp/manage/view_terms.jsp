@@ -66,6 +66,20 @@ $(document).ready(function() {
 
 
 
+  //line of the search match to jump to
+  var matchInstanceId = '<s:property value="instanceId"/>';
+  var matchLine = '<s:property value="matchLine"/>';
+
+  function showMatch(instanceId) {
+        var terminal = $("#output_" + instanceId + "> .terminal");
+        var line = terminal.children("pre").eq(parseInt(matchLine, 10));
+        if (line.length > 0) {
+            line.addClass("match").show();
+            $("html, body").scrollTop($("#run_cmd_" + instanceId).offset().top);
+            terminal.scrollTop(terminal.scrollTop() + line.offset().top - terminal.offset().top);
+        }
+  }
+
   function loadTerms(){
 
         $(".output").each(function (index, value){
@@ -83,6 +97,10 @@ $(document).ready(function() {
                                for(var i=0; i<outputList.length;i++){
                                    $("#output_"+val.instanceId+"> .terminal").append("<pre>"+outputList[i]+"</pre>");;
                                }
+                               filterTerms();
+                               if (matchLine != '' && val.instanceId == matchInstanceId) {
+                                   showMatch(val.instanceId);
+                               }
 
 
                        }
@@ -123,6 +141,9 @@ $(document).ready(function() {
         word-wrap: break-word;
         background-color: #F5F5F5;
     }
+    .terminal pre.match {
+        background-color: #FCF8E3;
+    }
 
     .align-right {
         padding: 10px 2px 10px 10px;
@@ -170,7 +191,7 @@ $(document).ready(function() {
                     </s:form>
                 </div>
                 <div class="align-right" style="padding-top: 15px">
-                    <b>Audit  ( <s:property value="sessionAudit.user.username"/>
+                    <b>Audit  ( <s:if test="sessionAudit.user.username!=null"><s:property value="sessionAudit.user.username"/></s:if><s:else>Deleted user <s:property value="sessionAudit.user.id"/></s:else>
                     <s:if test="sessionAudit.user!=null && sessionAudit.user.lastNm!=null">
                         - <s:property value="sessionAudit.user.lastNm"/>, <s:property value="sessionAudit.user.firstNm"/>
                     </s:if> ) </b>
@@ -192,7 +213,7 @@ $(document).ready(function() {
                 <s:iterator value="sessionAudit.hostSystemList">
                     <div id="run_cmd_<s:property value="instanceId"/>" class="run_cmd_active run_cmd">
 
-                        <h6 class="term-header"><s:property value="displayLabel"/></h6>
+                        <h6 class="term-header"><s:if test="host!=null"><s:property value="displayLabel"/></s:if><s:else>Deleted system <s:property value="id"/></s:else></h6>
 
                         <div id="term" class="term">
                             <div id="output_<s:property value="instanceId"/>" class="output">
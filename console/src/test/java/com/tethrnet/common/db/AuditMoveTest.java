@@ -0,0 +1,130 @@
+package com.tethrnet.common.db;
+
+import org.h2.tools.Server;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Moves audit history from the application DB to an audit DB served by H2. The move is also checked
+ * against PostgreSQL when -Dtest.postgresql.url (and optionally .user and .password) is set, run with
+ * -Ppostgresql for the driver.
+ */
+public class AuditMoveTest {
+
+    private static Server server;
+    private static String serverUrl;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        String port = String.valueOf(socket.getLocalPort());
+        socket.close();
+        server = Server.createTcpServer("-tcpPort", port, "-tcpDaemon").start();
+        serverUrl = "jdbc:h2:tcp://localhost:" + port + "/mem:";
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void moveToH2Server() throws Exception {
+        Connection con = DriverManager.getConnection(serverUrl + "app_h2;DB_CLOSE_DELAY=-1", "sa", "");
+        Connection con2 = DriverManager.getConnection(serverUrl + "app_h2", "sa", "");
+        Connection auditCon = DriverManager.getConnection(serverUrl + "audit_h2;DB_CLOSE_DELAY=-1", "sa", "");
+        Connection auditCon2 = DriverManager.getConnection(serverUrl + "audit_h2", "sa", "");
+        checkMove(con, con2, auditCon, auditCon2);
+        con.close();
+        con2.close();
+        auditCon.close();
+        auditCon2.close();
+    }
+
+    @Test
+    public void moveToPostgreSQL() throws Exception {
+        String url = System.getProperty("test.postgresql.url");
+        Assume.assumeTrue(url != null && !url.isEmpty());
+
+        String user = System.getProperty("test.postgresql.user", "postgres");
+        String password = System.getProperty("test.postgresql.password", "");
+        Connection con = DriverManager.getConnection(serverUrl + "app_pg;DB_CLOSE_DELAY=-1", "sa", "");
+        Connection con2 = DriverManager.getConnection(serverUrl + "app_pg", "sa", "");
+        Connection auditCon = DriverManager.getConnection(url, user, password);
+        Connection auditCon2 = DriverManager.getConnection(url, user, password);
+        Statement statement = auditCon.createStatement();
+        statement.executeUpdate("drop table if exists terminal_log_index, terminal_log_term, terminal_log_meta, terminal_log, session_log, audit_index_state, schema_version, schema_lock cascade");
+        statement.close();
+        checkMove(con, con2, auditCon, auditCon2);
+        con.close();
+        con2.close();
+        auditCon.close();
+        auditCon2.close();
+    }
+
+    /**
+     * writes audit history to the application DB as it was kept before there was an audit DB, moves it
+     * and checks that new sessions and output get ids after the moved ones
+     */
+    private void checkMove(Connection con, Connection con2, Connection auditCon, Connection auditCon2) throws Exception {
+
+        MigrationUtil.migrate(con, con2, MigrationUtil.AUDIT_DB, MigrationUtil.AUDIT_MIGRATIONS);
+        Statement statement = con.createStatement();
+        for (int i = 0; i < 3; i++) {
+            statement.executeUpdate("insert into session_log (user_id) values (1)");
+        }
+        statement.executeUpdate("insert into terminal_log (session_id, instance_id, system_id, output) select id, 1, 1, 'ls -la' from session_log");
+        statement.executeUpdate("insert into terminal_log_meta (session_id, instance_id, system_id, audit_policy, output_size) select id, 1, 1, 'FULL', 6 from session_log");
+        long maxSessionId = max(con, "session_log");
+        long maxLogId = max(con, "terminal_log");
+        statement.close();
+
+        MigrationUtil.migrate(auditCon, auditCon2, MigrationUtil.AUDIT_DB, MigrationUtil.AUDIT_MIGRATIONS);
+        new DBInitServlet().moveAuditData(con, auditCon);
+
+        assertEquals(3, count(auditCon, "session_log"));
+        assertEquals(3, count(auditCon, "terminal_log"));
+        assertEquals(3, count(auditCon, "terminal_log_meta"));
+        ResultSet rs = con.getMetaData().getTables(null, null, "SESSION_LOG", null);
+        assertFalse(rs.next());
+        rs.close();
+
+        statement = auditCon.createStatement();
+        statement.executeUpdate("insert into session_log (user_id) values (2)");
+        long sessionId = max(auditCon, "session_log");
+        assertTrue(sessionId > maxSessionId);
+        statement.executeUpdate("insert into terminal_log (session_id, instance_id, system_id, output) values (" + sessionId + ", 1, 1, 'pwd')");
+        assertTrue(max(auditCon, "terminal_log") > maxLogId);
+        statement.close();
+    }
+
+    private long max(Connection con, String table) throws Exception {
+        Statement statement = con.createStatement();
+        ResultSet rs = statement.executeQuery("select max(id) from " + table);
+        rs.next();
+        long max = rs.getLong(1);
+        statement.close();
+        return max;
+    }
+
+    private long count(Connection con, String table) throws Exception {
+        Statement statement = con.createStatement();
+        ResultSet rs = statement.executeQuery("select count(*) from " + table);
+        rs.next();
+        long count = rs.getLong(1);
+        statement.close();
+        return count;
+    }
+}
@@ -0,0 +1,102 @@
+package com.tethrnet.common.db;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class MigrationUtilTest {
+
+    //inserts a row each time it runs and holds the lock longer than the H2 lock timeout
+    private static final List<Migration> migrations = Arrays.asList(
+            Migration.sql(1, "table", "create table if not exists admin_user (id INTEGER PRIMARY KEY AUTO_INCREMENT, username varchar)"),
+            new Migration(2, "admin user") {
+                @Override
+                public void migrate(Connection con) throws Exception {
+                    Statement statement = con.createStatement();
+                    statement.executeUpdate("insert into admin_user (username) values ('admin')");
+                    statement.close();
+                    Thread.sleep(1500);
+                }
+            });
+
+    @Test
+    public void nodesStartingTogetherMigrateOnce() throws Exception {
+        checkConcurrentMigrate("jdbc:h2:mem:migrate_lock;DB_CLOSE_DELAY=-1", "sa", "");
+    }
+
+    /**
+     * runs with -Ppostgresql -Dtest.postgresql.url=... (and optionally .user and .password)
+     */
+    @Test
+    public void nodesStartingTogetherMigrateOnceOnPostgreSQL() throws Exception {
+        String url = System.getProperty("test.postgresql.url");
+        Assume.assumeTrue(url != null && !url.isEmpty());
+        String user = System.getProperty("test.postgresql.user", "postgres");
+        String password = System.getProperty("test.postgresql.password", "");
+
+        Connection con = DriverManager.getConnection(url, user, password);
+        Statement statement = con.createStatement();
+        statement.executeUpdate("drop table if exists admin_user");
+        statement.executeUpdate("create table if not exists schema_version (db_nm varchar not null, version INTEGER not null, description varchar, applied_tm timestamp default CURRENT_TIMESTAMP, primary key (db_nm, version))");
+        statement.executeUpdate("delete from schema_version where db_nm='test'");
+        statement.close();
+        con.close();
+        checkConcurrentMigrate(url, user, password);
+    }
+
+    /**
+     * migrates from two threads that start together, as nodes sharing a DB do
+     */
+    private void checkConcurrentMigrate(final String url, final String user, final String password) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        List<Future<Void>> futureList = new ArrayList<Future<Void>>();
+        for (int i = 0; i < 2; i++) {
+            futureList.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Connection con = DriverManager.getConnection(url, user, password);
+                    Connection lockCon = DriverManager.getConnection(url, user, password);
+                    latch.await();
+                    MigrationUtil.migrate(con, lockCon, "test", migrations);
+                    con.close();
+                    lockCon.close();
+                    return null;
+                }
+            }));
+        }
+        latch.countDown();
+        for (Future<Void> future : futureList) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Connection con = DriverManager.getConnection(url, user, password);
+        assertEquals(1, count(con, "select count(*) from admin_user"));
+        assertEquals(2, count(con, "select count(*) from schema_version where db_nm='test'"));
+        con.close();
+    }
+
+    private long count(Connection con, String sql) throws Exception {
+        Statement statement = con.createStatement();
+        ResultSet rs = statement.executeQuery(sql);
+        rs.next();
+        long count = rs.getLong(1);
+        statement.close();
+        return count;
+    }
+}
@@ -0,0 +1,82 @@
+package com.tethrnet.manage.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImportUtilTest {
+
+    @Test
+    public void parseCSVLineSplitsOnCommas() {
+        assertEquals(Arrays.asList("a", "b", "", "c"), ImportUtil.parseCSVLine("a,b,,c"));
+        assertEquals(Arrays.asList("a", ""), ImportUtil.parseCSVLine("a,"));
+    }
+
+    @Test
+    public void parseCSVLineKeepsQuotedCommasAndQuotes() {
+        assertEquals(Arrays.asList("ssh-rsa AAAA, key", "web \"01\"", "22"),
+                ImportUtil.parseCSVLine("\"ssh-rsa AAAA, key\",\"web \"\"01\"\"\",22"));
+        assertEquals(Arrays.asList("", "x"), ImportUtil.parseCSVLine("\"\",x"));
+    }
+
+    @Test
+    public void parseRecordsNormalizesCSVHeaders() {
+        List<Map<String, String>> recordList = ImportUtil.parseRecords("systems.csv",
+                "# exported systems\r\nHost, Display_Nm ,authorized_keys\r\n\r\n 10.0.0.1 ,web,\"k1,k2\"\n10.0.0.2\n");
+        assertEquals(2, recordList.size());
+        assertEquals("10.0.0.1", recordList.get(0).get("host"));
+        assertEquals("web", recordList.get(0).get("displaynm"));
+        assertEquals("k1,k2", recordList.get(0).get("authorizedkeys"));
+        assertEquals("10.0.0.2", recordList.get(1).get("host"));
+        assertNull(recordList.get(1).get("displaynm"));
+    }
+
+    @Test
+    public void parseRecordsReadsJson() {
+        List<Map<String, String>> recordList = ImportUtil.parseRecords("systems.txt",
+                " [{\"host\":\"10.0.0.1\",\"displayNm\":\"web\",\"port\":2222,\"auditPolicy\":null}]");
+        assertEquals(1, recordList.size());
+        assertEquals("web", recordList.get(0).get("displaynm"));
+        assertEquals("2222", recordList.get(0).get("port"));
+        assertTrue(recordList.get(0).containsKey("auditpolicy"));
+        assertNull(recordList.get(0).get("auditpolicy"));
+    }
+
+    @Test
+    public void parseRecordsAcceptsNullJson() {
+        assertTrue(ImportUtil.parseRecords("systems.json", "null").isEmpty());
+        assertTrue(ImportUtil.parseRecords("systems.json", " ").isEmpty());
+
+        List<Map<String, String>> recordList = ImportUtil.parseRecords("systems.json", "[null,{\"host\":\"h\"}]");
+        assertEquals(2, recordList.size());
+        assertTrue(recordList.get(0).isEmpty());
+        assertEquals("h", recordList.get(1).get("host"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRecordsRejectsInvalidJson() {
+        ImportUtil.parseRecords("systems.json", "[{\"host\":");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRecordsRejectsJsonObject() {
+        ImportUtil.parseRecords("systems.json", "{\"host\":\"h\"}");
+    }
+
+    @Test
+    public void parsePortChecksRange() {
+        assertEquals(Integer.valueOf(22), ImportUtil.parsePort("22"));
+        assertEquals(Integer.valueOf(65535), ImportUtil.parsePort("65535"));
+        assertNull(ImportUtil.parsePort("0"));
+        assertNull(ImportUtil.parsePort("65536"));
+        assertNull(ImportUtil.parsePort("99999999999"));
+        assertNull(ImportUtil.parsePort("-1"));
+        assertNull(ImportUtil.parsePort("22a"));
+    }
+}
@@ -1,14 +1,119 @@
 package com.dadynet.sa.inventory.factory;
 
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import com.dadynent.sa.inventory.exception.RetrieveInventoryException;
 import com.dadynent.sa.inventory.model.Account;
 import com.dadynent.sa.inventory.model.VirtualMachine;
 
+/**
+ * Inventory provider. The async, bulk and iterator methods default to the
+ * single account methods run on the calling thread, providers override them
+ * when they can answer without blocking.
+ */
 public interface DmsInventory {
 	public List<Account> listAccounts() throws RetrieveInventoryException;
 	public Account getAccountByName(String name) throws RetrieveInventoryException;
 	public List<VirtualMachine> listVmByAccount(Account account) throws RetrieveInventoryException;
 	public void setConnectUrl(String url);
+
+	/**
+	 * true if the provider can currently reach its inventory
+	 */
+	public default boolean isHealthy() {
+		return true;
+	}
+
+	/**
+	 * releases the connection of the provider, it is not used afterwards
+	 */
+	public default void close() {
+	}
+
+	/**
+	 * registers a listener for changes, providers that cannot report changes ignore it
+	 */
+	public default void addListener(InventoryListener listener) {
+	}
+
+	public default void removeListener(InventoryListener listener) {
+	}
+
+	/**
+	 * VMs of several accounts
+	 *
+	 * @return VMs by account in the order of the accounts
+	 */
+	public default Map<Account,List<VirtualMachine>> listVmsByAccounts(Collection<Account> accounts) throws RetrieveInventoryException {
+		Map<Account,List<VirtualMachine>> ret = new LinkedHashMap<Account, List<VirtualMachine>>();
+		for (Account account : accounts)
+		{
+			ret.put(account, listVmByAccount(account));
+		}
+		return ret;
+	}
+
+	/**
+	 * VMs of an account one at a time, for accounts too large to copy at once
+	 */
+	public default Iterator<VirtualMachine> iterateVmByAccount(Account account) throws RetrieveInventoryException {
+		return listVmByAccount(account).iterator();
+	}
+
+	public default CompletableFuture<List<Account>> listAccountsAsync() {
+		CompletableFuture<List<Account>> future = new CompletableFuture<List<Account>>();
+		try
+		{
+			future.complete(listAccounts());
+		}
+		catch(RetrieveInventoryException e)
+		{
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	public default CompletableFuture<Account> getAccountByNameAsync(String name) {
+		CompletableFuture<Account> future = new CompletableFuture<Account>();
+		try
+		{
+			future.complete(getAccountByName(name));
+		}
+		catch(RetrieveInventoryException e)
+		{
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	public default CompletableFuture<List<VirtualMachine>> listVmByAccountAsync(Account account) {
+		CompletableFuture<List<VirtualMachine>> future = new CompletableFuture<List<VirtualMachine>>();
+		try
+		{
+			future.complete(listVmByAccount(account));
+		}
+		catch(RetrieveInventoryException e)
+		{
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	public default CompletableFuture<Map<Account,List<VirtualMachine>>> listVmsByAccountsAsync(Collection<Account> accounts) {
+		CompletableFuture<Map<Account,List<VirtualMachine>>> future = new CompletableFuture<Map<Account,List<VirtualMachine>>>();
+		try
+		{
+			future.complete(listVmsByAccounts(accounts));
+		}
+		catch(RetrieveInventoryException e)
+		{
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
 }
@@ -0,0 +1,51 @@
+package com.dadynet.sa.inventory.factory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Long-lived inventory providers, one per provider class and connect url.
+ * Providers are shared by all callers and closed together on shutdown.
+ */
+public class DmsInventoryRegistry {
+
+	private static final Map<String,DmsInventory> inventories = new ConcurrentHashMap<String, DmsInventory>();
+
+	/**
+	 * returns the provider for a class and connect url, creating it on first use
+	 */
+	public static synchronized DmsInventory getDmsInventoryMgr(String cls,String connect_url)
+	{
+		String key = cls + "@" + connect_url;
+		DmsInventory inventory = inventories.get(key);
+		if (inventory == null)
+		{
+			inventory = DmsInventoryFactory.createDmsInventoryMgr(cls, connect_url);
+			inventories.put(key, inventory);
+		}
+		return inventory;
+	}
+
+	/**
+	 * closes and forgets all providers
+	 */
+	public static synchronized void closeAll()
+	{
+		List<DmsInventory> closing = new ArrayList<DmsInventory>(inventories.values());
+		inventories.clear();
+		for (DmsInventory inventory : closing)
+		{
+			try
+			{
+				inventory.close();
+			}
+			catch(RuntimeException e)
+			{
+				System.err.println(e);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,16 @@
+package com.dadynet.sa.inventory.factory;
+
+import com.dadynent.sa.inventory.model.Account;
+
+/**
+ * Notified by an inventory provider when the VMs of an account may have changed
+ */
+public interface InventoryListener {
+
+	/**
+	 * called after an account or its VMs changed, on a provider thread that should not be blocked
+	 *
+	 * @param account changed, added or removed account
+	 */
+	public void accountChanged(Account account);
+}
@@ -27,7 +27,7 @@ public class NoneDmsInventory implements DmsInventory {
 	
 	public List<VirtualMachine> listVmByAccount(Account account) {
 		// TODO Auto-generated method stub
-		return null;
+		return new ArrayList<VirtualMachine>();
 	}
 
 }
@@ -1,142 +1,189 @@
 package com.dadynet.sa.inventory.zk;
 
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.ZooKeeper;
 
-import com.dadynent.sa.inventory.exception.InvalidObjectProperty;
 import com.dadynent.sa.inventory.exception.RetrieveInventoryException;
 import com.dadynent.sa.inventory.model.Account;
 import com.dadynent.sa.inventory.model.VirtualMachine;
-import com.dadynent.sa.inventory.util.Utils;
 import com.dadynet.sa.inventory.factory.DmsInventory;
 import com.dadynet.sa.inventory.factory.DmsInventoryFactory;
+import com.dadynet.sa.inventory.factory.InventoryListener;
 
-public class ZooKeeperInventory implements DmsInventory {
+public class ZooKeeperInventory implements DmsInventory, Watcher {
+	
+	private static final int SESSION_TIMEOUT = 3000;
 	
 	private ZooKeeper zkclient = null;
 	
+	private String connUrl;
+	
+	private volatile boolean connected = false;
+	
+	private boolean closed = false;
+	
 	private String path = "/dso/accounts";
 	
+	//accounts subtree served from memory, kept current by watches
+	private ZooKeeperMirror mirror = new ZooKeeperMirror(path);
+	
 	public Account getAccountByName(String arg0) throws RetrieveInventoryException {
-		// TODO Auto-generated method stub
-		List<Account> accounts = listAccounts();
-		for (Account account: accounts)
-		{
-			if (account.getAccountName().equals(arg0))
-			{
-				return account;
-			}
-		}
-		return null;
+		return mirror.getAccountByName(arg0);
 	}
 	
 	public List<Account> listAccounts() throws RetrieveInventoryException {
-		// TODO Auto-generated method stub
-		Map<String,String> accountProp = new HashMap<String, String>();
-		accountProp.put("name", "accountName");
-		accountProp.put("id", "accountId");
-		List<Account> ret = new ArrayList<Account>();
-		try
-		{
-			List<String> children = zkclient.getChildren(path, false, null);
-			for(String child : children)
-			{
-				Path child_path = Paths.get(path,child);
-				byte[] data = zkclient.getData(child_path.toString(), false, null);
-				System.out.println(util.toMap(new String(data),accountProp));
-				ret.add(Account.fromMap(util.toMap(new String(data),accountProp)));
+		return mirror.listAccounts();
+	}
+	
+	public List<VirtualMachine> listVmByAccount(Account account) throws RetrieveInventoryException{
+		return mirror.listVmByAccount(account);
+	}
+	
+	public void addListener(InventoryListener listener) {
+		mirror.addListener(listener);
+	}
+	
+	public void removeListener(InventoryListener listener) {
+		mirror.removeListener(listener);
+	}
+	
+	public Iterator<VirtualMachine> iterateVmByAccount(Account account) throws RetrieveInventoryException {
+		return mirror.iterateVmByAccount(account);
+	}
+	
+	public CompletableFuture<List<Account>> listAccountsAsync() {
+		return lookup(new Lookup<List<Account>>() {
+			List<Account> get() throws RetrieveInventoryException {
+				return mirror.listAccounts();
 			}
-			
-		}
-		catch(InterruptedException ie)
-		{
-			throw new RetrieveInventoryException();
-		}
-		catch(KeeperException ke)
-		{
-			throw new RetrieveInventoryException();
-		}
-		catch(InvalidObjectProperty ip)
-		{
-			ip.printStackTrace();
-			throw new RetrieveInventoryException();
-		}
-		return ret;
+		});
+	}
 	
+	public CompletableFuture<Account> getAccountByNameAsync(final String name) {
+		return lookup(new Lookup<Account>() {
+			Account get() throws RetrieveInventoryException {
+				return mirror.getAccountByName(name);
+			}
+		});
 	}
 	
-	public List<VirtualMachine> listVmByAccount(Account account) throws RetrieveInventoryException{
-		// TODO Auto-generated method stub
-		Path svcpath = Paths.get(path,account.getAccountId(),"services");
-		List<VirtualMachine> ret = new ArrayList<VirtualMachine>();
-		Map<String,String> convert = new HashMap<String, String>();
-		convert.put("id", "stackid");
-		convert.put("publicip", "publicip");
-		convert.put("manageip", "manageip");
-		convert.put("serviceip", "serviceip");
-		convert.put("user", "user");
-		try
-		{
-			List<String> services = zkclient.getChildren(svcpath.toString(), false,null);
-			for (String service: services)
-			{
-				Path spath = Paths.get(svcpath.toString(),service,"instances");
-				List<String> vmids = zkclient.getChildren(spath.toString(), false,null);
-				for (String id : vmids)
+	public CompletableFuture<List<VirtualMachine>> listVmByAccountAsync(final Account account) {
+		return lookup(new Lookup<List<VirtualMachine>>() {
+			List<VirtualMachine> get() throws RetrieveInventoryException {
+				return mirror.listVmByAccount(account);
+			}
+		});
+	}
+	
+	public CompletableFuture<Map<Account,List<VirtualMachine>>> listVmsByAccountsAsync(final Collection<Account> accounts) {
+		return lookup(new Lookup<Map<Account,List<VirtualMachine>>>() {
+			Map<Account,List<VirtualMachine>> get() throws RetrieveInventoryException {
+				return listVmsByAccounts(accounts);
+			}
+		});
+	}
+	
+	/**
+	 * completes a lookup from the mirror, the caller does not wait if the mirror is still to be read
+	 */
+	private <T> CompletableFuture<T> lookup(final Lookup<T> lookup) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		mirror.whenLoaded(new Runnable() {
+			public void run() {
+				try
+				{
+					future.complete(lookup.get());
+				}
+				catch(RetrieveInventoryException e)
+				{
+					future.completeExceptionally(e);
+				}
+				catch(RuntimeException e)
 				{
-					Path vpath = Paths.get(spath.toString(),id);
-					byte[] data = zkclient.getData(vpath.toString(), false, null);
-					VirtualMachine vm = VirtualMachine.fromMap(util.toMap(new String(data), convert));
-					vm.setParent(account);
-					vm.setServicetype(service);
-					if (vm.getManageip() != null)
-					{
-						ret.add(vm);
-					}					
+					future.completeExceptionally(e);
 				}
 			}
+		});
+		return future;
+	}
+	
+	private static abstract class Lookup<T> {
+		abstract T get() throws RetrieveInventoryException;
+	}
+	
+	public void setConnectUrl(String connUrl) {
+		this.connUrl = connUrl;
+		connect();
+	}
+	
+	public boolean isHealthy() {
+		return connected;
+	}
+	
+	public synchronized void close() {
+		closed = true;
+		connected = false;
+		mirror.close();
+		if (zkclient != null)
+		{
+			try
+			{
+				zkclient.close();
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
 		}
-		catch(InterruptedException ie)
+	}
+	
+	/**
+	 * tracks the connection state and opens a new session when the current one expires
+	 */
+	public void process(WatchedEvent event) {
+		if (event.getType() != Event.EventType.None)
 		{
-			throw new RetrieveInventoryException();
+			return;
 		}
-		catch(KeeperException ke)
+		if (event.getState() == Event.KeeperState.SyncConnected)
 		{
-			ke.printStackTrace();
-			throw new RetrieveInventoryException();
+			connected = true;
 		}
-		catch(InvalidObjectProperty ip)
+		else if (event.getState() == Event.KeeperState.Expired)
 		{
-			ip.printStackTrace();
-			throw new RetrieveInventoryException();
+			connected = false;
+			System.err.println("ZooKeeper session expired, reconnecting to " + connUrl);
+			connect();
+		}
+		else
+		{
+			connected = false;
 		}
-		return ret;
 	}
 	
-	public void setConnectUrl(String connUrl) {
-		// TODO Auto-generated method stub
+	private synchronized void connect() {
+		if (closed)
+		{
+			return;
+		}
 		try{
-			zkclient = new ZooKeeper(connUrl,3000,null);
+			zkclient = new ZooKeeper(connUrl,SESSION_TIMEOUT,this);
+			mirror.setClient(zkclient);
 		}
 		catch(IOException e)
 		{
 			e.printStackTrace();
 		}
-		
 	}
 	
-	
-
-	
 	public static void main(String[] args) throws Exception{
 		
 		DmsInventory zi = DmsInventoryFactory.createDmsInventoryMgr("com.dadynet.sa.inventory.zk.ZooKeeperInventory", "10.74.113.102:2181");
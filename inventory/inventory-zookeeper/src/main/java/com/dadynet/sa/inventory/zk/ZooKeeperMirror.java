@@ -0,0 +1,743 @@
+package com.dadynet.sa.inventory.zk;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.zookeeper.AsyncCallback;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.ZooKeeper;
+import org.apache.zookeeper.data.Stat;
+
+import com.dadynent.sa.inventory.exception.InvalidObjectProperty;
+import com.dadynent.sa.inventory.exception.RetrieveInventoryException;
+import com.dadynent.sa.inventory.model.Account;
+import com.dadynent.sa.inventory.model.VirtualMachine;
+import com.dadynet.sa.inventory.factory.InventoryListener;
+
+/**
+ * In memory copy of the accounts subtree kept current by ZooKeeper watches.
+ * The tree is read once on first use, after that every account, service and
+ * instance node is re-read only when its watch fires. If a re-read fails or
+ * the session expires the copy is marked stale and read again on next use.
+ * <p>
+ * Nodes are read a tree level at a time with the async API, so all requests
+ * of a level are in flight together. Watch events are handled on a separate
+ * thread as the async results are delivered by the ZooKeeper event thread,
+ * listeners are notified of the accounts a watch event changed.
+ */
+public class ZooKeeperMirror implements Watcher {
+
+	private static final Map<String,String> ACCOUNT_PROP = new HashMap<String, String>();
+	private static final Map<String,String> VM_PROP = new HashMap<String, String>();
+	static
+	{
+		ACCOUNT_PROP.put("name", "accountName");
+		ACCOUNT_PROP.put("id", "accountId");
+		VM_PROP.put("id", "stackid");
+		VM_PROP.put("publicip", "publicip");
+		VM_PROP.put("manageip", "manageip");
+		VM_PROP.put("serviceip", "serviceip");
+		VM_PROP.put("user", "user");
+	}
+
+	private final String root;
+
+	private volatile ZooKeeper zkclient = null;
+
+	//incremented for every new session, a read started on an older session does not mark the copy loaded
+	private volatile int generation = 0;
+
+	//accounts by account node name
+	private final Map<String,AccountNode> accounts = new ConcurrentHashMap<String, AccountNode>();
+
+	//account node name by account name
+	private final Map<String,String> nameIndex = new ConcurrentHashMap<String, String>();
+
+	private volatile boolean loaded = false;
+
+	private final Object lock = new Object();
+
+	private final List<InventoryListener> listeners = new CopyOnWriteArrayList<InventoryListener>();
+
+	private final ExecutorService watchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "inventory-watch");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	public ZooKeeperMirror(String root)
+	{
+		this.root = root;
+	}
+
+	public void setClient(ZooKeeper zkclient)
+	{
+		this.zkclient = zkclient;
+		generation++;
+		loaded = false;
+	}
+
+	public void addListener(InventoryListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	public void removeListener(InventoryListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+	public void close()
+	{
+		watchExecutor.shutdownNow();
+	}
+
+	public List<Account> listAccounts() throws RetrieveInventoryException
+	{
+		ensureLoaded();
+		List<Account> ret = new ArrayList<Account>();
+		for (AccountNode node : accounts.values())
+		{
+			if (node.account != null)
+			{
+				ret.add(node.account);
+			}
+		}
+		return ret;
+	}
+
+	public Account getAccountByName(String name) throws RetrieveInventoryException
+	{
+		ensureLoaded();
+		String id = name == null ? null : nameIndex.get(name);
+		AccountNode node = id == null ? null : accounts.get(id);
+		return node == null ? null : node.account;
+	}
+
+	public List<VirtualMachine> listVmByAccount(Account account) throws RetrieveInventoryException
+	{
+		ensureLoaded();
+		AccountNode node = account == null ? null : accounts.get(account.getAccountId());
+		if (node == null)
+		{
+			throw new RetrieveInventoryException();
+		}
+		List<VirtualMachine> ret = new ArrayList<VirtualMachine>();
+		for (Map.Entry<String, Map<String,VirtualMachine>> service : node.services.entrySet())
+		{
+			for (VirtualMachine cached : service.getValue().values())
+			{
+				VirtualMachine vm = new VirtualMachine(cached.getStackid(), cached.getPublicip(), cached.getServiceip(), cached.getManageip(), cached.getUser());
+				vm.setParent(account);
+				vm.setServicetype(service.getKey());
+				ret.add(vm);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * VMs of an account read from the copy as the iterator advances
+	 */
+	public Iterator<VirtualMachine> iterateVmByAccount(final Account account) throws RetrieveInventoryException
+	{
+		ensureLoaded();
+		AccountNode node = account == null ? null : accounts.get(account.getAccountId());
+		if (node == null)
+		{
+			throw new RetrieveInventoryException();
+		}
+		final Iterator<Map.Entry<String, Map<String,VirtualMachine>>> services = node.services.entrySet().iterator();
+		return new Iterator<VirtualMachine>() {
+			String service;
+			Iterator<VirtualMachine> vms = Collections.<VirtualMachine>emptyList().iterator();
+
+			public boolean hasNext() {
+				while (!vms.hasNext() && services.hasNext())
+				{
+					Map.Entry<String, Map<String,VirtualMachine>> entry = services.next();
+					service = entry.getKey();
+					vms = entry.getValue().values().iterator();
+				}
+				return vms.hasNext();
+			}
+
+			public VirtualMachine next() {
+				if (!hasNext())
+				{
+					throw new NoSuchElementException();
+				}
+				VirtualMachine cached = vms.next();
+				VirtualMachine vm = new VirtualMachine(cached.getStackid(), cached.getPublicip(), cached.getServiceip(), cached.getManageip(), cached.getUser());
+				vm.setParent(account);
+				vm.setServicetype(service);
+				return vm;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * runs a lookup right away if the copy is loaded, otherwise on the watch thread once it is read
+	 */
+	public void whenLoaded(Runnable lookup)
+	{
+		if (!loaded)
+		{
+			try
+			{
+				watchExecutor.execute(lookup);
+				return;
+			}
+			catch(RuntimeException e)
+			{
+				//closed
+			}
+		}
+		lookup.run();
+	}
+
+	/**
+	 * reads the whole subtree if it has not been read or is stale
+	 */
+	private void ensureLoaded() throws RetrieveInventoryException
+	{
+		if (loaded)
+		{
+			return;
+		}
+		synchronized (lock)
+		{
+			if (loaded)
+			{
+				return;
+			}
+			if (zkclient == null)
+			{
+				throw new RetrieveInventoryException();
+			}
+			int started = generation;
+			try
+			{
+				refreshAccounts(true);
+				loaded = started == generation;
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				throw new RetrieveInventoryException();
+			}
+			catch(KeeperException ke)
+			{
+				ke.printStackTrace();
+				throw new RetrieveInventoryException();
+			}
+		}
+	}
+
+	public void process(final WatchedEvent event)
+	{
+		if (event.getType() == Event.EventType.None)
+		{
+			if (event.getState() == Event.KeeperState.Expired)
+			{
+				//all watches are gone with the session
+				loaded = false;
+			}
+			return;
+		}
+		if (event.getPath() == null)
+		{
+			return;
+		}
+		try
+		{
+			watchExecutor.execute(new Runnable() {
+				public void run() {
+					handle(event);
+				}
+			});
+		}
+		catch(RuntimeException e)
+		{
+			//closed
+		}
+	}
+
+	/**
+	 * re-reads the node of a fired watch on the watch thread and notifies the listeners of the changed accounts
+	 */
+	private void handle(WatchedEvent event)
+	{
+		List<Account> changed = new ArrayList<Account>();
+		synchronized (lock)
+		{
+			if (!loaded)
+			{
+				//changes are picked up by the next full read
+				return;
+			}
+			String path = event.getPath();
+			Map<String,AccountNode> before = path.equals(root) ? new HashMap<String, AccountNode>(accounts) : null;
+			try
+			{
+				refresh(path, event.getType());
+			}
+			catch(InterruptedException ie)
+			{
+				loaded = false;
+				Thread.currentThread().interrupt();
+			}
+			catch(KeeperException ke)
+			{
+				//missed changes are picked up by reading everything again
+				System.err.println(ke);
+				loaded = false;
+			}
+			if (before != null)
+			{
+				//accounts added or removed
+				Set<String> ids = new HashSet<String>(before.keySet());
+				ids.addAll(accounts.keySet());
+				for (String id : ids)
+				{
+					AccountNode node = before.get(id);
+					if (node != accounts.get(id))
+					{
+						node = node != null ? node : accounts.get(id);
+						if (node.account != null)
+						{
+							changed.add(node.account);
+						}
+					}
+				}
+			}
+			else if (path.startsWith(root + "/"))
+			{
+				AccountNode node = accounts.get(path.substring(root.length() + 1).split("/")[0]);
+				if (node != null && node.account != null)
+				{
+					changed.add(node.account);
+				}
+			}
+		}
+		for (Account account : changed)
+		{
+			for (InventoryListener listener : listeners)
+			{
+				try
+				{
+					listener.accountChanged(account);
+				}
+				catch(RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * re-reads the node of a fired watch, paths are
+	 * root, root/account, root/account/services, root/account/services/service/instances
+	 * and root/account/services/service/instances/instance
+	 */
+	private void refresh(String path, Event.EventType type) throws KeeperException, InterruptedException
+	{
+		if (path.equals(root))
+		{
+			refreshAccounts(false);
+			return;
+		}
+		if (!path.startsWith(root + "/"))
+		{
+			return;
+		}
+		String[] names = path.substring(root.length() + 1).split("/");
+		AccountNode node = accounts.get(names[0]);
+		if (node == null)
+		{
+			return;
+		}
+		if (names.length == 1)
+		{
+			if (type == Event.EventType.NodeDataChanged)
+			{
+				readAccounts(Collections.singletonList(names[0]), false);
+			}
+		}
+		else if (names.length == 2 && "services".equals(names[1]))
+		{
+			readServices(names[0], node, getChildren(Collections.singletonList(path)).get(path), false);
+		}
+		else if (names.length == 4 && "instances".equals(names[3]) && node.services.containsKey(names[2]))
+		{
+			readInstances(Collections.singletonList(new ServiceRead(names[0], names[2], node.services.get(names[2]))), false);
+		}
+		else if (names.length == 5 && "instances".equals(names[3]) && node.services.containsKey(names[2]))
+		{
+			Map<String,VirtualMachine> vms = node.services.get(names[2]);
+			if (type == Event.EventType.NodeDeleted)
+			{
+				vms.remove(names[4]);
+			}
+			else if (type == Event.EventType.NodeDataChanged)
+			{
+				readVms(Collections.singletonList(new InstanceRead(path, names[4], vms)));
+			}
+		}
+	}
+
+	/**
+	 * reads the account list, new accounts are read with their services and instances.
+	 * A full read also re-reads known nodes to set their watches again
+	 */
+	private void refreshAccounts(boolean full) throws KeeperException, InterruptedException
+	{
+		List<String> children = zkclient.getChildren(root, this);
+		Set<String> ids = new HashSet<String>(children);
+		for (String id : new ArrayList<String>(accounts.keySet()))
+		{
+			if (!ids.contains(id))
+			{
+				removeAccount(id);
+			}
+		}
+		List<String> readList = new ArrayList<String>();
+		for (String id : children)
+		{
+			if (full || !accounts.containsKey(id))
+			{
+				readList.add(id);
+			}
+		}
+		readAccounts(readList, full);
+	}
+
+	/**
+	 * reads account nodes and their service lists, then the services
+	 */
+	private void readAccounts(List<String> ids, boolean full) throws KeeperException, InterruptedException
+	{
+		List<String> dataPaths = new ArrayList<String>();
+		List<String> svcPaths = new ArrayList<String>();
+		for (String id : ids)
+		{
+			dataPaths.add(root + "/" + id);
+			svcPaths.add(root + "/" + id + "/services");
+		}
+		Map<String,byte[]> dataMap = getData(dataPaths);
+		Map<String,List<String>> svcMap = getChildren(svcPaths);
+
+		List<ServiceRead> serviceReads = new ArrayList<ServiceRead>();
+		for (String id : ids)
+		{
+			byte[] data = dataMap.get(root + "/" + id);
+			if (data == null)
+			{
+				removeAccount(id);
+				continue;
+			}
+			AccountNode node = accounts.get(id);
+			if (node == null)
+			{
+				node = new AccountNode();
+				accounts.put(id, node);
+			}
+			if (node.account != null)
+			{
+				nameIndex.remove(node.account.getAccountName());
+			}
+			try
+			{
+				node.account = Account.fromMap(util.toMap(new String(data), ACCOUNT_PROP));
+				nameIndex.put(node.account.getAccountName(), id);
+			}
+			catch(InvalidObjectProperty ip)
+			{
+				System.err.println(ip);
+				node.account = null;
+			}
+			serviceReads.addAll(updateServices(id, node, svcMap.get(root + "/" + id + "/services"), full));
+		}
+		readInstances(serviceReads, full);
+	}
+
+	/**
+	 * applies the service list of an account and reads new services
+	 */
+	private void readServices(String id, AccountNode node, List<String> services, boolean full) throws KeeperException, InterruptedException
+	{
+		readInstances(updateServices(id, node, services, full), full);
+	}
+
+	/**
+	 * applies the service list of an account
+	 *
+	 * @return services to read
+	 */
+	private List<ServiceRead> updateServices(String id, AccountNode node, List<String> services, boolean full)
+	{
+		List<ServiceRead> serviceReads = new ArrayList<ServiceRead>();
+		node.services.keySet().retainAll(services);
+		for (String service : services)
+		{
+			Map<String,VirtualMachine> vms = node.services.get(service);
+			if (vms == null || full)
+			{
+				if (vms == null)
+				{
+					vms = new ConcurrentSkipListMap<String, VirtualMachine>();
+					node.services.put(service, vms);
+				}
+				serviceReads.add(new ServiceRead(id, service, vms));
+			}
+		}
+		return serviceReads;
+	}
+
+	/**
+	 * reads the instance lists of services, then new instances
+	 */
+	private void readInstances(List<ServiceRead> serviceReads, boolean full) throws KeeperException, InterruptedException
+	{
+		List<String> paths = new ArrayList<String>();
+		for (ServiceRead serviceRead : serviceReads)
+		{
+			paths.add(serviceRead.path);
+		}
+		Map<String,List<String>> vmidMap = getChildren(paths);
+
+		List<InstanceRead> instanceReads = new ArrayList<InstanceRead>();
+		for (ServiceRead serviceRead : serviceReads)
+		{
+			List<String> vmids = vmidMap.get(serviceRead.path);
+			serviceRead.vms.keySet().retainAll(vmids);
+			for (String vmid : vmids)
+			{
+				if (full || !serviceRead.vms.containsKey(vmid))
+				{
+					instanceReads.add(new InstanceRead(serviceRead.path + "/" + vmid, vmid, serviceRead.vms));
+				}
+			}
+		}
+		readVms(instanceReads);
+	}
+
+	private void readVms(List<InstanceRead> instanceReads) throws KeeperException, InterruptedException
+	{
+		List<String> paths = new ArrayList<String>();
+		for (InstanceRead instanceRead : instanceReads)
+		{
+			paths.add(instanceRead.path);
+		}
+		Map<String,byte[]> dataMap = getData(paths);
+
+		for (InstanceRead instanceRead : instanceReads)
+		{
+			byte[] data = dataMap.get(instanceRead.path);
+			if (data == null)
+			{
+				instanceRead.vms.remove(instanceRead.vmid);
+				continue;
+			}
+			try
+			{
+				VirtualMachine vm = VirtualMachine.fromMap(util.toMap(new String(data), VM_PROP));
+				if (vm.getManageip() != null)
+				{
+					instanceRead.vms.put(instanceRead.vmid, vm);
+				}
+				else
+				{
+					instanceRead.vms.remove(instanceRead.vmid);
+				}
+			}
+			catch(InvalidObjectProperty ip)
+			{
+				System.err.println(ip);
+				instanceRead.vms.remove(instanceRead.vmid);
+			}
+		}
+	}
+
+	/**
+	 * reads the data of nodes with a watch, all requests are sent before waiting for the results
+	 *
+	 * @return data by path, nodes that do not exist are left out
+	 */
+	private Map<String,byte[]> getData(Collection<String> paths) throws KeeperException, InterruptedException
+	{
+		final Map<String,byte[]> ret = new ConcurrentHashMap<String, byte[]>();
+		final Batch batch = new Batch(paths.size());
+		ZooKeeper zk = zkclient;
+		for (String path : paths)
+		{
+			zk.getData(path, this, new AsyncCallback.DataCallback() {
+				public void processResult(int rc, String path, Object ctx, byte[] data, Stat stat) {
+					if (rc == KeeperException.Code.OK.intValue())
+					{
+						ret.put(path, data == null ? new byte[0] : data);
+					}
+					else if (rc != KeeperException.Code.NONODE.intValue())
+					{
+						batch.fail(rc, path);
+					}
+					batch.done();
+				}
+			}, null);
+		}
+		batch.await();
+		return ret;
+	}
+
+	/**
+	 * reads the children of nodes with a watch, all requests are sent before waiting for the results.
+	 * If a node does not exist yet its creation is watched
+	 *
+	 * @return children by path, empty for nodes that do not exist
+	 */
+	private Map<String,List<String>> getChildren(Collection<String> paths) throws KeeperException, InterruptedException
+	{
+		final Map<String,List<String>> ret = new ConcurrentHashMap<String, List<String>>();
+		final Batch batch = new Batch(paths.size());
+		final ZooKeeper zk = zkclient;
+		for (String path : paths)
+		{
+			zk.getChildren(path, this, new AsyncCallback.ChildrenCallback() {
+				public void processResult(int rc, String path, Object ctx, List<String> children) {
+					if (rc == KeeperException.Code.OK.intValue())
+					{
+						ret.put(path, children);
+					}
+					else if (rc == KeeperException.Code.NONODE.intValue())
+					{
+						ret.put(path, new ArrayList<String>());
+						watchCreation(zk, path);
+					}
+					else
+					{
+						batch.fail(rc, path);
+					}
+					batch.done();
+				}
+			}, null);
+		}
+		batch.await();
+		return ret;
+	}
+
+	/**
+	 * sets a watch for the creation of a node, it is handled as created right away if it was created in between
+	 */
+	private void watchCreation(ZooKeeper zk, String path)
+	{
+		zk.exists(path, this, new AsyncCallback.StatCallback() {
+			public void processResult(int rc, String path, Object ctx, Stat stat) {
+				if (stat != null)
+				{
+					process(new WatchedEvent(Event.EventType.NodeCreated, Event.KeeperState.SyncConnected, path));
+				}
+			}
+		}, null);
+	}
+
+	private void removeAccount(String id)
+	{
+		AccountNode node = accounts.remove(id);
+		if (node != null && node.account != null)
+		{
+			nameIndex.remove(node.account.getAccountName());
+		}
+	}
+
+	private static class AccountNode
+	{
+		volatile Account account;
+		//instances by instance node name by service name
+		final Map<String, Map<String,VirtualMachine>> services = new ConcurrentSkipListMap<String, Map<String,VirtualMachine>>();
+	}
+
+	private class ServiceRead
+	{
+		final String path;
+		final Map<String,VirtualMachine> vms;
+
+		ServiceRead(String id, String service, Map<String,VirtualMachine> vms)
+		{
+			this.path = root + "/" + id + "/services/" + service + "/instances";
+			this.vms = vms;
+		}
+	}
+
+	private static class InstanceRead
+	{
+		final String path;
+		final String vmid;
+		final Map<String,VirtualMachine> vms;
+
+		InstanceRead(String path, String vmid, Map<String,VirtualMachine> vms)
+		{
+			this.path = path;
+			this.vmid = vmid;
+			this.vms = vms;
+		}
+	}
+
+	/**
+	 * outstanding async requests of a read, keeps the first error
+	 */
+	private static class Batch
+	{
+		final CountDownLatch latch;
+		final AtomicReference<KeeperException> error = new AtomicReference<KeeperException>();
+
+		Batch(int count)
+		{
+			latch = new CountDownLatch(count);
+		}
+
+		void fail(int rc, String path)
+		{
+			error.compareAndSet(null, KeeperException.create(KeeperException.Code.get(rc), path));
+		}
+
+		void done()
+		{
+			latch.countDown();
+		}
+
+		void await() throws KeeperException, InterruptedException
+		{
+			latch.await();
+			if (error.get() != null)
+			{
+				throw error.get();
+			}
+		}
+	}
+
+}